@@ -19,4 +19,7 @@ public class PurcConstants {
 	
 	/** The separator between the xforms xml and locale xml in a combined xml document for a form. */
 	public static final String PURCFORMS_FORMDEF_LOCALE_XML_SEPARATOR = " PURCFORMS_FORMDEF_LOCALE_XML_SEPARATOR ";
+
+	/** Marks the start of the xforms xml in a patch to a combined xml document, where it is not simply the leading text. */
+	public static final String PURCFORMS_FORMDEF_XFORM_XML_SEPARATOR = " PURCFORMS_FORMDEF_XFORM_XML_SEPARATOR ";
 }
@@ -20,6 +20,7 @@ import org.openrosa.client.controller.IFormSaveListener;
 import org.openrosa.client.controller.OpenFileDialogEventListener;
 import org.openrosa.client.locale.LocaleText;
 import org.openrosa.client.model.ModelConstants;
+import org.openrosa.client.util.FormDefSections;
 import org.openrosa.client.util.FormDesignerUtil;
 import org.openrosa.client.util.FormUtil;
 import org.openrosa.client.util.Itext;
@@ -63,6 +64,15 @@ public class FormDesignerController implements IFormDesignerListener, OpenFileDi
 	 */
 	private Integer formId;	
 
+	/**
+	 * The content hashes of the form sections which the server last acknowledged saving,
+	 * or null if they are not known, in which case the next save uploads the whole form.
+	 */
+	private String[] savedHashes;
+
+	/** The identifier of the form which savedHashes belong to. */
+	private Integer savedHashesFormId;
+
 	/**
 	 * The listener to form save events.
 	 */
@@ -586,25 +596,41 @@ public class FormDesignerController implements IFormDesignerListener, OpenFileDi
 //	}
 
 	public void saveForm(String xformXml, String layoutXml, String languageXml, String javaScriptSrc){
+		String[] sections = new String[]{xformXml, layoutXml, languageXml, javaScriptSrc};
+
+		if(FormUtil.isFormDefPatchSaves() && savedHashes != null && isSameForm(savedHashesFormId, formId)){
+			String patch = FormDefSections.getPatch(sections, savedHashes);
+			if(patch == null){
+				//Nothing has changed since the last save.
+				FormUtil.dlg.hide();
+				Window.alert(LocaleText.get("formSaveSuccess"));
+			}
+			else
+				saveFormPatch(sections, patch);
+		}
+		else
+			saveFullForm(sections);
+	}
+
+	/**
+	 * Uploads all the sections of a form as one combined document.
+	 */
+	private void saveFullForm(String[] sections){
 		String url = FormUtil.getHostPageBaseURL();
 		url += FormUtil.getFormDefUploadUrlSuffix();
 		url += FormUtil.getFormIdName()+"="+this.formId;
 
 		RequestBuilder builder = new RequestBuilder(RequestBuilder.POST,URL.encode(url));
 
-		try{
-			String xml = xformXml;
-			if(layoutXml != null && layoutXml.trim().length() > 0)
-				xml += PurcConstants.PURCFORMS_FORMDEF_LAYOUT_XML_SEPARATOR + layoutXml;
+		final String[] hashes = FormDefSections.getHashes(sections);
+		savedHashes = null;
 
-			if(languageXml != null && languageXml.trim().length() > 0)
-				xml += PurcConstants.PURCFORMS_FORMDEF_LOCALE_XML_SEPARATOR + languageXml;
-			
-			if(javaScriptSrc != null && javaScriptSrc.trim().length() > 0)
-				xml += PurcConstants.PURCFORMS_FORMDEF_JAVASCRIPT_SRC_SEPARATOR + javaScriptSrc;
-
-			builder.sendRequest(xml, new RequestCallback(){
+		try{
+			builder.sendRequest(FormDefSections.join(sections), new RequestCallback(){
 				public void onResponseReceived(Request request, Response response){
+					if(isStored(response, hashes))
+						setSavedHashes(hashes);
+
 					FormUtil.dlg.hide();
 					Window.alert(LocaleText.get("formSaveSuccess"));
 				}
@@ -621,6 +647,72 @@ public class FormDesignerController implements IFormDesignerListener, OpenFileDi
 		}
 	}
 
+	/**
+	 * Uploads only the sections of a form which have changed since the last acknowledged save,
+	 * falling back to a full upload if the server does not take the patch.
+	 */
+	private void saveFormPatch(final String[] sections, String patch){
+		final String[] hashes = FormDefSections.getHashes(sections);
+
+		String url = FormUtil.getHostPageBaseURL();
+		url += FormUtil.getFormDefUploadUrlSuffix();
+		url += FormUtil.getFormIdName()+"="+this.formId;
+		url += "&patch=true&base=" + FormDefSections.joinHashes(savedHashes);
+		url += "&hash=" + FormDefSections.joinHashes(hashes);
+
+		RequestBuilder builder = new RequestBuilder(RequestBuilder.POST,URL.encode(url));
+
+		try{
+			builder.sendRequest(patch, new RequestCallback(){
+				public void onResponseReceived(Request request, Response response){
+					if(!isStored(response, hashes)){
+						saveFullForm(sections); //eg the server no longer has the version we patched.
+						return;
+					}
+
+					setSavedHashes(hashes);
+					FormUtil.dlg.hide();
+					Window.alert(LocaleText.get("formSaveSuccess"));
+				}
+
+				public void onError(Request request, Throwable exception){
+					saveFullForm(sections);
+				}
+			});
+		}
+		catch(RequestException ex){
+			saveFullForm(sections);
+		}
+	}
+
+	/**
+	 * Checks if the server has confirmed storing a form with the given section hashes.
+	 * Servers which do not know about patches do not send the hashes back, so a plain
+	 * 200 is never taken to mean that a patch was applied.
+	 */
+	private boolean isStored(Response response, String[] hashes){
+		return response.getStatusCode() == Response.SC_OK &&
+			FormDefSections.joinHashes(hashes).equals(response.getHeader(FormDefSections.HASHES_HEADER));
+	}
+
+	private void setSavedHashes(String[] hashes){
+		savedHashes = hashes;
+		savedHashesFormId = formId;
+	}
+
+	private static boolean isSameForm(Integer id1, Integer id2){
+		return id1 == null ? id2 == null : id1.equals(id2);
+	}
+
+	/**
+	 * Called when a form is opened, such that its first save uploads the whole form
+	 * rather than a patch against what was saved for another one.
+	 */
+	public void formOpened(){
+		savedHashes = null;
+		savedHashesFormId = null;
+	}
+
 	public void saveLocaleText(String languageXml){
 		String url = FormUtil.getHostPageBaseURL();
 		url += FormUtil.getFormDefUploadUrlSuffix();
@@ -19,6 +19,7 @@ package org.openrosa.client.jr.core.model;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
@@ -44,6 +45,7 @@ import org.openrosa.client.jr.core.services.locale.Localizable;
 import org.openrosa.client.jr.core.services.locale.Localizer;
 import org.openrosa.client.jr.core.services.storage.IMetaData;
 import org.openrosa.client.jr.core.services.storage.Persistable;
+import org.openrosa.client.jr.core.util.DependencyGraph;
 import org.openrosa.client.jr.core.util.externalizable.DeserializationException;
 import org.openrosa.client.jr.core.util.externalizable.ExtUtil;
 import org.openrosa.client.jr.core.util.externalizable.ExtWrapList;
@@ -78,7 +80,10 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 	private Localizer localizer;
 	public Vector triggerables; // <Triggerable>; this list is topologically ordered, meaning for any tA and tB in
 	//the list, where tA comes before tB, evaluating tA cannot depend on any result from evaluating tB
-	private boolean triggerablesInOrder; //true if triggerables has been ordered topologically (DON'T DELETE ME EVEN THOUGH I'M UNUSED)
+	private boolean triggerablesInOrder; //true if triggerables has been ordered topologically and the dependency graph below is current
+	private IdentityHashMap triggerableRanks; // <Triggerable, Integer>; position of each triggerable in 'triggerables'
+	private int[][] cascadeRanks; // for the triggerable at each rank, the ranks of the triggerables that depend on its targets;
+	//every dependent rank is strictly greater than the rank it cascades from
 	
 	private FormInstance instance;
 	private Vector outputFragments; // <IConditionExpr> contents of <output>
@@ -420,70 +425,70 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 		}
 	}
 
+	/**
+	 * Order the triggerables topologically and precompute the dependency DAG
+	 * used to propagate changes: each triggerable's rank is its position in
+	 * 'triggerables', and every triggerable only cascades into higher ranks.
+	 */
 	public void finalizeTriggerables () {
-		Vector partialOrdering = new Vector();
+		DependencyGraph graph = new DependencyGraph(true);
+		for (int i = 0; i < triggerables.size(); i++) {
+			graph.addVertex(triggerables.elementAt(i));
+		}
 		for (int i = 0; i < triggerables.size(); i++) {
 			Triggerable t = (Triggerable)triggerables.elementAt(i);
-			Vector deps = new Vector();
+			if (!t.canCascade())
+				continue;
 			
-			if (t.canCascade()) {
-				for (int j = 0; j < t.getTargets().size(); j++) {
-					TreeReference target = (TreeReference)t.getTargets().elementAt(j);
-					Vector triggered = (Vector)triggerIndex.get(target);
-					if (triggered != null) {
-						for (int k = 0; k < triggered.size(); k++) {
-							Triggerable u = (Triggerable)triggered.elementAt(k);
-							if (!deps.contains(u))
-								deps.addElement(u);
+			for (int j = 0; j < t.getTargets().size(); j++) {
+				Vector triggered = (Vector)triggerIndex.get(t.getTargets().elementAt(j));
+				if (triggered != null) {
+					for (int k = 0; k < triggered.size(); k++) {
+						int to = graph.indexOf(triggered.elementAt(k));
+						if (to == -1) {
+							throw new RuntimeException("Triggerable [" + triggered.elementAt(k) + "] is triggered by ["
+									+ t.getTargets().elementAt(j) + "] but is not one of the form's triggerables; the trigger index is out of step");
 						}
+						graph.addEdge(i, to);
 					}
 				}
 			}
-			
-			for (int j = 0; j < deps.size(); j++) {
-				Triggerable u = (Triggerable)deps.elementAt(j);
-				Triggerable[] edge = {t, u};
-				partialOrdering.addElement(edge);
-			}
 		}
 		
-		Vector vertices = new Vector();
-		for (int i = 0; i < triggerables.size(); i++)
-			vertices.addElement(triggerables.elementAt(i));
+		int[] order = graph.topologicalOrder();
+		if (order == null) {
+			throw new RuntimeException("Cannot create partial ordering of triggerables due to dependency cycle. Why wasn't this caught during parsing? "
+					+ DependencyGraph.cycleToString(graph.findCycle()));
+		}
+		
+		int n = order.length;
+		int[] rankOf = new int[n];
 		triggerables.removeAllElements();
+		triggerableRanks = new IdentityHashMap();
+		for (int r = 0; r < n; r++) {
+			Object t = graph.getVertex(order[r]);
+			rankOf[order[r]] = r;
+			triggerables.addElement(t);
+			triggerableRanks.put(t, new Integer(r));
+		}
 		
-		while (vertices.size() > 0) {
-			//determine root nodes
-			Vector roots = new Vector();
-			for (int i = 0; i < vertices.size(); i++) {
-				roots.addElement(vertices.elementAt(i));
-			}
-			for (int i = 0; i < partialOrdering.size(); i++) {
-				Triggerable[] edge = (Triggerable[])partialOrdering.elementAt(i);
-				roots.removeElement(edge[1]);
-			}
-			
-			//if no root nodes while graph still has nodes, graph has cycles
-			if (roots.size() == 0) {
-				throw new RuntimeException("Cannot create partial ordering of triggerables due to dependency cycle. Why wasn't this caught during parsing?");
-			}
-
-			//remove root nodes and edges originating from them
-			for (int i = 0; i < roots.size(); i++) {
-				Triggerable root = (Triggerable)roots.elementAt(i);
-				triggerables.addElement(root);
-				vertices.removeElement(root);
-			}			
-			for (int i = partialOrdering.size() - 1; i >= 0; i--) {
-				Triggerable[] edge = (Triggerable[])partialOrdering.elementAt(i);
-				if (roots.contains(edge[0]))
-					partialOrdering.removeElementAt(i);
+		cascadeRanks = new int[n][];
+		for (int r = 0; r < n; r++) {
+			int[] deps = graph.getSuccessors(order[r]);
+			for (int j = 0; j < deps.length; j++) {
+				deps[j] = rankOf[deps[j]];
 			}
+			cascadeRanks[r] = deps;
 		}
 		
 		triggerablesInOrder = true;
 	}
 	
+	private int getTriggerableRank (Triggerable t) {
+		Integer rank = (Integer)triggerableRanks.get(t);
+		return (rank == null ? -1 : rank.intValue());
+	}
+	
 	public void initializeTriggerables() {
 		initializeTriggerables(TreeReference.rootRef());
 	}
@@ -520,38 +525,45 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 		if (triggered == null)
 			return;
 
-		Vector triggeredCopy = new Vector();
-		for (int i = 0; i < triggered.size(); i++)
-			triggeredCopy.addElement(triggered.elementAt(i));
-		evaluateTriggerables(triggeredCopy, ref);
+		evaluateTriggerables(triggered, ref);
 	}
 
+	/**
+	 * Evaluate the given triggerables and everything they cascade into. Each
+	 * triggerable is evaluated at most once, in topological order: the set of
+	 * dirty ranks is swept in increasing order, and since dependents always
+	 * have a higher rank than the triggerable they depend on, marking them
+	 * dirty during the sweep is enough to pick them up later in the same pass.
+	 * 
+	 * @param tv <Triggerable>; not modified
+	 * @param anchorRef
+	 */
 	private void evaluateTriggerables(Vector tv, TreeReference anchorRef) {
-		//add all cascaded triggerables to queue
+		if (!triggerablesInOrder || cascadeRanks == null) {
+			finalizeTriggerables();
+		}
+		
+		int n = triggerables.size();
+		boolean[] dirty = new boolean[n];
+		int first = n;
 		for (int i = 0; i < tv.size(); i++) {
-			Triggerable t = (Triggerable)tv.elementAt(i);
-			if (t.canCascade()) {
-				for (int j = 0; j < t.getTargets().size(); j++) {
-					TreeReference target = (TreeReference)t.getTargets().elementAt(j);
-					Vector triggered = (Vector)triggerIndex.get(target);
-					if (triggered != null) {
-						for (int k = 0; k < triggered.size(); k++) {
-							Triggerable u = (Triggerable)triggered.elementAt(k);
-							if (!tv.contains(u))
-								tv.addElement(u);
-						}
-					}
-				}
+			int r = getTriggerableRank((Triggerable)tv.elementAt(i));
+			if (r >= 0) {
+				dirty[r] = true;
+				if (r < first)
+					first = r;
 			}
 		}
 		
-		//'triggerables' is topologically-ordered by dependencies, so evaluate the triggerables in 'tv'
-		//in the order they appear in 'triggerables'
-		for (int i = 0; i < triggerables.size(); i++) {
-			Triggerable t = (Triggerable)triggerables.elementAt(i);
-			if (tv.contains(t)) {
-				evaluateTriggerable(t, anchorRef);
+		for (int i = first; i < n; i++) {
+			if (!dirty[i])
+				continue;
+			
+			int[] deps = cascadeRanks[i];
+			for (int j = 0; j < deps.length; j++) {
+				dirty[deps[j]] = true;
 			}
+			evaluateTriggerable((Triggerable)triggerables.elementAt(i), anchorRef);
 		}
 	}
 	
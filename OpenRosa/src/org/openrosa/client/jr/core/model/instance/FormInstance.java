@@ -71,6 +71,8 @@ public class FormInstance implements Persistable, Restorable {
 	public String uiVersion;
 	
 	private HashMap namespaces = new HashMap();
+	
+	private HashMap repeatableSteps; // <TreeReference, boolean[]>; memo for getRepeatableSteps(), keyed by generic ref
 
 	public FormInstance() {
 	}
@@ -94,6 +96,7 @@ public class FormInstance implements Persistable, Restorable {
 	 *            The root of the tree for this data model.
 	 */
 	public void setRoot(TreeElement topLevel) {
+		repeatableSteps = null;
 		root = new TreeElement();
 		if (topLevel != null)
 			root.addChild(topLevel);
@@ -316,6 +319,42 @@ public class FormInstance implements Persistable, Restorable {
 		return (node == null ? null : node.repeatable ? node : null);
 	}
 
+	/**
+	 * For each step of an absolute ref, determine whether the node at that step is repeatable
+	 * (i.e., getTemplate() of the ref truncated after that step is not null). This only depends
+	 * on the step names, so the answer is computed once per generic path and then reused.
+	 * 
+	 * The instance's template structure is assumed not to change once expressions are being
+	 * evaluated against it (it is fixed when the form is parsed).
+	 * 
+	 * @param ref absolute reference
+	 * @return one flag per step of ref; must not be modified
+	 */
+	public boolean[] getRepeatableSteps(TreeReference ref) {
+		TreeReference genericRef = ref.genericize();
+		if (repeatableSteps == null) {
+			repeatableSteps = new HashMap();
+		}
+		
+		boolean[] steps = (boolean[])repeatableSteps.get(genericRef);
+		if (steps == null) {
+			steps = new boolean[ref.size()];
+			TreeElement node = root;
+			for (int i = 0; i < ref.size() && node != null; i++) {
+				//same walk as getTemplatePath()
+				String name = ref.getName(i);
+				TreeElement newNode = node.getChild(name, TreeReference.INDEX_TEMPLATE);
+				if (newNode == null)
+					newNode = node.getChild(name, 0);
+				
+				steps[i] = (newNode != null && newNode.repeatable);
+				node = newNode;
+			}
+			repeatableSteps.put(genericRef, steps);
+		}
+		return steps;
+	}
+
 	public TreeElement getTemplatePath(TreeReference ref) {
 		if (!ref.isAbsolute())
 			return null;
@@ -17,6 +17,7 @@ package org.openrosa.client.jr.core.model.instance;
 
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Vector;
 
 import org.openrosa.client.java.io.DataInputStream;
@@ -38,6 +39,7 @@ import org.openrosa.client.jr.core.util.externalizable.ExtWrapNullable;
 import org.openrosa.client.jr.core.util.externalizable.ExtWrapTagged;
 import org.openrosa.client.jr.core.util.externalizable.Externalizable;
 import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
+import org.openrosa.client.jr.core.util.externalizable.SerializationDictionary;
 
 /**
  * An element of a FormInstance.
@@ -59,6 +61,10 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 
 	private IAnswerData value;
 	private Vector children = new Vector();
+	private HashMap childIndex; // <String, Vector<TreeElement>>; children by name, each Vector sorted by multiplicity.
+	//only built (lazily) once a node has at least childIndexThreshold children; null otherwise
+
+	private static int childIndexThreshold = 16;
 
 	/* model properties */
 	public int dataType = Constants.DATATYPE_NULL; //TODO
@@ -113,6 +119,14 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	public TreeElement getChild(String name, int multiplicity) {
 		if (name.equals(TreeReference.NAME_WILDCARD)) {
 			return (TreeElement) this.children.elementAt(multiplicity); //droos: i'm suspicious of this
+		} else if (useChildIndex()) {
+			Vector named = (Vector) childIndex.get(name);
+			if (named != null) {
+				int i = searchMult(named, multiplicity);
+				if (i < named.size() && ((TreeElement) named.elementAt(i)).multiplicity == multiplicity) {
+					return (TreeElement) named.elementAt(i);
+				}
+			}
 		} else {
 			for (int i = 0; i < this.children.size(); i++) {
 				TreeElement child = (TreeElement) this.children.elementAt(i);
@@ -139,6 +153,18 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	private Vector getChildrenWithName(String name, boolean includeTemplate) {
 		Vector v = new Vector();
 
+		if (!name.equals(TreeReference.NAME_WILDCARD) && useChildIndex()) {
+			Vector named = (Vector) childIndex.get(name);
+			if (named != null) {
+				for (int i = 0; i < named.size(); i++) {
+					TreeElement child = (TreeElement) named.elementAt(i);
+					if (includeTemplate || child.multiplicity != TreeReference.INDEX_TEMPLATE)
+						v.addElement(child);
+				}
+			}
+			return v;
+		}
+
 		for (int i = 0; i < this.children.size(); i++) {
 			TreeElement child = (TreeElement) this.children.elementAt(i);
 			if ((child.getName().equals(name) || name.equals(TreeReference.NAME_WILDCARD))
@@ -183,18 +209,19 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 		}
 
 		// try to keep things in order
+		// (repeats are usually appended at the end of their siblings, so search for the anchor from the back)
 		int i = children.size();
 		if (child.getMult() == TreeReference.INDEX_TEMPLATE) {
 			TreeElement anchor = getChild(child.getName(), 0);
 			if (anchor != null)
-				i = children.indexOf(anchor);
+				i = children.lastIndexOf(anchor);
 		} else {
 			TreeElement anchor = getChild(child.getName(),
 					(child.getMult() == 0 ? TreeReference.INDEX_TEMPLATE : child.getMult() - 1));
 			if (anchor != null)
-				i = children.indexOf(anchor) + 1;
+				i = children.lastIndexOf(anchor) + 1;
 		}
-		children.insertElementAt(child, i);
+		insertChildAt(child, i);
 		child.setParent(this);
 		
 		child.setRelevant(isRelevant(), true);
@@ -202,7 +229,9 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	}
 
 	public void removeChild(TreeElement child) {
-		children.removeElement(child);
+		if (children.removeElement(child) && childIndex != null) {
+			unindexChild(child);
+		}
 	}
 
 	public void removeChild(String name, int multiplicity) {
@@ -224,14 +253,118 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	}
 
 	public void removeChildAt(int i) {
+		TreeElement child = (TreeElement) children.elementAt(i);
 		children.removeElementAt(i);
-
+		if (childIndex != null) {
+			unindexChild(child);
+		}
 	}
 
 	public int getChildMultiplicity(String name) {
+		if (!name.equals(TreeReference.NAME_WILDCARD) && useChildIndex()) {
+			Vector named = (Vector) childIndex.get(name);
+			if (named == null) {
+				return 0;
+			}
+			//the template, if any, sorts first
+			int count = named.size();
+			if (count > 0 && ((TreeElement) named.elementAt(0)).multiplicity == TreeReference.INDEX_TEMPLATE) {
+				count--;
+			}
+			return count;
+		}
+
 		return getChildrenWithName(name, false).size();
 	}
 
+	/* ==== CHILD INDEX ==== */
+
+	/**
+	 * Set the number of children a node must have before name lookups on its
+	 * children (getChild, getChildrenWithName, getChildMultiplicity) go
+	 * through a hash index instead of scanning the child list. Nodes below the
+	 * threshold, the common case, carry no extra memory.
+	 * 
+	 * @param threshold minimum child count; Integer.MAX_VALUE disables indexing
+	 */
+	public static void setChildIndexThreshold(int threshold) {
+		childIndexThreshold = threshold;
+	}
+
+	public static int getChildIndexThreshold() {
+		return childIndexThreshold;
+	}
+
+	//build the child index if this node has grown past the threshold; returns whether the index can be used
+	private boolean useChildIndex() {
+		if (childIndex == null && children != null && children.size() >= childIndexThreshold) {
+			childIndex = new HashMap();
+			for (int i = 0; i < children.size(); i++) {
+				indexChild((TreeElement) children.elementAt(i));
+			}
+		}
+		return childIndex != null;
+	}
+
+	private void insertChildAt(TreeElement child, int i) {
+		children.insertElementAt(child, i);
+		if (childIndex != null) {
+			indexChild(child);
+		}
+	}
+
+	private void indexChild(TreeElement child) {
+		Vector named = (Vector) childIndex.get(child.name);
+		if (named == null) {
+			named = new Vector();
+			childIndex.put(child.name, named);
+		}
+
+		//insert after any children with the same multiplicity, to mirror document order
+		int i = searchMult(named, child.multiplicity);
+		while (i < named.size() && ((TreeElement) named.elementAt(i)).multiplicity == child.multiplicity) {
+			i++;
+		}
+		named.insertElementAt(child, i);
+	}
+
+	//returns false if the child was not indexed under this node
+	private boolean unindexChild(TreeElement child) {
+		Vector named = (Vector) childIndex.get(child.name);
+		if (named == null) {
+			return false;
+		}
+
+		for (int i = searchMult(named, child.multiplicity); i < named.size(); i++) {
+			TreeElement e = (TreeElement) named.elementAt(i);
+			if (e == child) {
+				named.removeElementAt(i);
+				if (named.size() == 0) {
+					childIndex.remove(child.name);
+				}
+				return true;
+			} else if (e.multiplicity != child.multiplicity) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	//index of the first element of 'named' with a multiplicity >= mult
+	private static int searchMult(Vector named, int mult) {
+		int lo = 0;
+		int hi = named.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (((TreeElement) named.elementAt(mid)).multiplicity < mult) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
 	public TreeElement shallowCopy() {
 		TreeElement newNode = new TreeElement(name, multiplicity);
 		newNode.parent = parent;
@@ -249,7 +382,8 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 			newNode.value = value.clone();
 		}
 
-		newNode.children = children;
+		//the kids are shared, but not the list of them, as each node keeps its own child index over its own list
+		newNode.children = new Vector(children);
 		return newNode;
 	}
 
@@ -581,6 +715,7 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 		// directly.
 		// 3.2 if read boolean false then create tagged element and deserialize
 		// child
+		childIndex = null;
 		if (!ExtUtil.readBool(in)) {
 			// 1.
 			children = null;
@@ -688,6 +823,110 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 		ExtUtil.write(out, new ExtWrapList(ExtUtil.emptyIfNull(attStrings)));
 	}
 
+	/**
+	 * Same as readExternal(DataInputStream, PrototypeFactory), for elements written by
+	 * writeExternal(DataOutputStream, SerializationDictionary)
+	 */
+	public void readExternal(DataInputStream in, PrototypeFactory pf, SerializationDictionary dict) throws IOException, DeserializationException {
+		name = dict.readString(in);
+		multiplicity = ExtUtil.readInt(in);
+		repeatable = ExtUtil.readBool(in);
+		value = (IAnswerData) ExtUtil.read(in, new ExtWrapNullable(new ExtWrapTagged()), pf);
+
+		childIndex = null;
+		if (!ExtUtil.readBool(in)) {
+			children = null;
+		} else {
+			children = new Vector();
+			int numChildren = (int) ExtUtil.readNumeric(in);
+			for (int i = 0; i < numChildren; ++i) {
+				boolean normal = ExtUtil.readBool(in);
+				TreeElement child;
+				
+				if (normal) {
+					child = new TreeElement();
+					child.readExternal(in, pf, dict);
+				} else {
+					child = (TreeElement) ExtUtil.read(in, new ExtWrapTagged(), pf);
+				}
+				child.setParent(this);
+				children.addElement(child);
+			}
+		}
+
+		dataType = ExtUtil.readInt(in);
+		relevant = ExtUtil.readBool(in);
+		required = ExtUtil.readBool(in);
+		enabled = ExtUtil.readBool(in);
+		relevantInherited = ExtUtil.readBool(in);
+		enabledInherited = ExtUtil.readBool(in);
+		constraint = (Constraint) dict.readShared(in, Constraint.class, pf);
+		preloadHandler = dict.readString(in);
+		preloadParams = dict.readString(in);
+
+		int numAttributes = ExtUtil.readInt(in);
+		Vector attStrings = null;
+		if (numAttributes > 0) {
+			attStrings = new Vector();
+			for (int i = 0; i < numAttributes; i++) {
+				attStrings.addElement(dict.readString(in));
+			}
+		}
+		setAttributesFromSingleStringVector(attStrings);
+	}
+
+	/**
+	 * Serialize this element (and its subtree) in the same layout as writeExternal(DataOutputStream),
+	 * except that the name, preload settings and attributes of each node go through the string
+	 * table of the dictionary, and constraints are written once and then referred to. Repeat
+	 * instances share their constraints with the repeat template, so a large repeated instance
+	 * shrinks to little more than its values and multiplicities.
+	 * 
+	 * @param dict the dictionary of the stream being written; see SerializationDictionary
+	 */
+	public void writeExternal(DataOutputStream out, SerializationDictionary dict) throws IOException {
+		dict.writeString(out, name);
+		ExtUtil.writeNumeric(out, multiplicity);
+		ExtUtil.writeBool(out, repeatable);
+		ExtUtil.write(out, new ExtWrapNullable(value == null ? null : new ExtWrapTagged(value)));
+
+		if (children == null) {
+			ExtUtil.writeBool(out, false);
+		} else {
+			ExtUtil.writeBool(out, true);
+			ExtUtil.writeNumeric(out, children.size());
+			Enumeration en = children.elements();
+			while (en.hasMoreElements()) {
+				TreeElement child = (TreeElement) en.nextElement();
+				if (child.getClass() == TreeElement.class) {
+					ExtUtil.writeBool(out, true);
+					child.writeExternal(out, dict);
+				} else {
+					ExtUtil.writeBool(out, false);
+					ExtUtil.write(out, new ExtWrapTagged(child));
+				}
+			}
+		}
+
+		ExtUtil.writeNumeric(out, dataType);
+		ExtUtil.writeBool(out, relevant);
+		ExtUtil.writeBool(out, required);
+		ExtUtil.writeBool(out, enabled);
+		ExtUtil.writeBool(out, relevantInherited);
+		ExtUtil.writeBool(out, enabledInherited);
+		dict.writeShared(out, constraint);
+		dict.writeString(out, preloadHandler);
+		dict.writeString(out, preloadParams);
+
+		Vector attStrings = getSingleStringAttributeVector();
+		ExtUtil.writeNumeric(out, attStrings == null ? 0 : attStrings.size());
+		if (attStrings != null) {
+			for (int i = 0; i < attStrings.size(); i++) {
+				dict.writeString(out, (String) attStrings.elementAt(i));
+			}
+		}
+	}
+
 	//rebuilding a node from an imported instance
 	//  there's a lot of error checking we could do on the received instance, but it's
 	//  easier to just ignore the parts that are incorrect
@@ -748,7 +987,7 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 					}
 
 					this.removeChildAt(j);
-					this.children.insertElementAt(child2, i);
+					this.insertChildAt(child2, i);
 				}
 			}
 			// java i hate you so much
@@ -761,7 +1000,7 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 				    for (int k = 0; k < newChildren.size(); k++) {
 				        TreeElement newChild = child.deepCopy(true);
 				        newChild.setMult(k);
-				        this.children.insertElementAt(newChild, i + k + 1);
+				        this.insertChildAt(newChild, i + k + 1);
 				        newChild.populate((TreeElement)newChildren.elementAt(k), f);
 				    }
 				    i += newChildren.size();
@@ -810,7 +1049,7 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 				    	TreeElement template = f.getInstance().getTemplate(child.getRef());
 				        TreeElement newChild = template.deepCopy(false);
 				        newChild.setMult(k);
-				        this.children.insertElementAt(newChild, i + k + 1);
+				        this.insertChildAt(newChild, i + k + 1);
 				        newChild.populateTemplate((TreeElement)newChildren.elementAt(k), f);
 				    }
 				    i += newChildren.size();
@@ -884,7 +1123,14 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	}
 
 	public void setName(String name) {
-		this.name = name;
+		// keep the parent's child index (if any) in sync
+		if (parent != null && parent.childIndex != null && !(name == null ? this.name == null : name.equals(this.name))
+				&& parent.unindexChild(this)) {
+			this.name = name;
+			parent.indexChild(this);
+		} else {
+			this.name = name;
+		}
 	}
 
 	public int getMult() {
@@ -892,7 +1138,13 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 	}
 
 	public void setMult(int multiplicity) {
-		this.multiplicity = multiplicity;
+		// keep the parent's child index (if any) in sync
+		if (parent != null && parent.childIndex != null && multiplicity != this.multiplicity && parent.unindexChild(this)) {
+			this.multiplicity = multiplicity;
+			parent.indexChild(this);
+		} else {
+			this.multiplicity = multiplicity;
+		}
 	}
 
 	public void setParent (TreeElement parent) {
@@ -17,6 +17,7 @@
 package org.openrosa.client.jr.core.model.instance;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Vector;
 
 import org.openrosa.client.java.io.DataInputStream;
@@ -27,6 +28,15 @@ import org.openrosa.client.jr.core.util.externalizable.ExtWrapList;
 import org.openrosa.client.jr.core.util.externalizable.Externalizable;
 import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 
+/**
+ * A reference to a node (or, when ambiguous, a set of nodes) in a FormInstance.
+ * 
+ * References are created on nearly every evaluation and used as hash keys, so
+ * steps are kept in plain arrays with interned names and the hash is cached.
+ * clone(), getParentRef(), genericize() and friends share the step arrays with
+ * the reference they were derived from; the arrays are copied only when one of
+ * the sharing references is modified.
+ */
 public class TreeReference implements Externalizable {
 	public static final int DEFAULT_MUTLIPLICITY = 0;//multiplicity
 	public static final int INDEX_UNBOUND = -1;//multiplicity
@@ -35,9 +45,23 @@ public class TreeReference implements Externalizable {
 	
 	public static final String NAME_WILDCARD = "*";
 	
+	private static final String[] NO_NAMES = new String[0];
+	private static final int[] NO_MULTS = new int[0];
+	private static volatile int[] unboundMults = new int[16]; //all INDEX_UNBOUND; shared by generic refs, never written to
+	private static final HashMap internedNames = new HashMap(); //<String, String>
+	private static final int MAX_INTERNED_NAMES = 4096; //the table is emptied when it gets this big
+	
+	static {
+		for (int i = 0; i < unboundMults.length; i++)
+			unboundMults[i] = INDEX_UNBOUND;
+	}
+	
 	private int refLevel; //0 = context node, 1 = parent, 2 = grandparent ...
-	private Vector names; //Vector<String>
-	private Vector multiplicity; //Vector<Integer>
+	private String[] names; //only the first 'size' entries are meaningful
+	private int[] multiplicity;
+	private int size;
+	private boolean shared; //true if the arrays may be referenced by another TreeReference; copy before writing
+	private int hash; //cached hashCode(); 0 = not computed yet
 	
 	public static TreeReference rootRef () {
 		TreeReference root = new TreeReference();
@@ -52,37 +76,107 @@ public class TreeReference implements Externalizable {
 	}
 	
 	public TreeReference () {
-		names = new Vector();
-		multiplicity = new Vector();		
+		names = NO_NAMES;
+		multiplicity = NO_MULTS;
+		size = 0;
+		shared = true;
+	}
+	
+	//create a reference that shares the given step arrays
+	private TreeReference (int refLevel, String[] names, int[] multiplicity, int size) {
+		this.refLevel = refLevel;
+		this.names = names;
+		this.multiplicity = multiplicity;
+		this.size = size;
+		this.shared = true;
+	}
+	
+	/**
+	 * Step names are interned so that references built independently (by the
+	 * parser, by the evaluator, from serialized forms) share their strings and
+	 * can usually be compared by identity.
+	 * 
+	 * Names are never compared by identity alone, so once the table is full it is
+	 * simply emptied rather than left to grow with every form ever loaded.
+	 */
+	private static String intern (String name) {
+		synchronized (internedNames) {
+			String interned = (String)internedNames.get(name);
+			if (interned == null) {
+				if (internedNames.size() >= MAX_INTERNED_NAMES) {
+					internedNames.clear();
+				}
+				internedNames.put(name, name);
+				interned = name;
+			}
+			return interned;
+		}
+	}
+	
+	private static int[] unboundMults (int size) {
+		int[] mults = unboundMults;
+		if (mults.length < size) {
+			mults = new int[Math.max(size, mults.length * 2)];
+			for (int i = 0; i < mults.length; i++)
+				mults[i] = INDEX_UNBOUND;
+			unboundMults = mults;
+		}
+		return mults;
+	}
+	
+	//make the step arrays private to this reference and able to hold 'capacity' steps; must precede any write
+	private void prepareWrite (int capacity) {
+		if (shared || capacity > names.length) {
+			int length = (capacity > names.length ? Math.max(capacity, names.length * 2) : names.length);
+			String[] newNames = new String[length];
+			int[] newMults = new int[length];
+			System.arraycopy(names, 0, newNames, 0, size);
+			System.arraycopy(multiplicity, 0, newMults, 0, size);
+			names = newNames;
+			multiplicity = newMults;
+			shared = false;
+		}
+		hash = 0;
 	}
 	
 	public int getMultiplicity(int index) {
-		return ((Integer)multiplicity.elementAt(index)).intValue();
+		if (index >= size)
+			throw new ArrayIndexOutOfBoundsException(index + " >= " + size);
+		return multiplicity[index];
 	}
 	
 	public String getName(int index) {
-		return (String)names.elementAt(index);
+		if (index >= size)
+			throw new ArrayIndexOutOfBoundsException(index + " >= " + size);
+		return names[index];
 	}
 
 	public int getMultLast () {
-		return ((Integer)multiplicity.lastElement()).intValue();
+		return getMultiplicity(size - 1);
 	}
 	
 	public String getNameLast () {
-		return (String)names.lastElement();
+		return getName(size - 1);
 	}
 	
 	public void setMultiplicity (int i, int mult) {
-		multiplicity.setElementAt(new Integer(mult), i);
+		if (i >= size)
+			throw new ArrayIndexOutOfBoundsException(i + " >= " + size);
+		if (multiplicity[i] != mult) {
+			prepareWrite(size);
+			multiplicity[i] = mult;
+		}
 	}
 	
 	public int size () {
-		return names.size();
+		return size;
 	}
 	
 	public void add (String name, int index) {
-		names.addElement(name);
-		multiplicity.addElement(new Integer(index));
+		prepareWrite(size + 1);
+		names[size] = intern(name);
+		multiplicity[size] = index;
+		size++;
 	}
 	
 	public int getRefLevel () {
@@ -91,11 +185,12 @@ public class TreeReference implements Externalizable {
 	
 	public void setRefLevel (int refLevel) {
 		this.refLevel = refLevel;
+		hash = 0;
 	}
 	
 	public void incrementRefLevel () {
 		if (!isAbsolute()) {
-			refLevel++;
+			setRefLevel(refLevel + 1);
 		}
 	}
 	
@@ -115,16 +210,25 @@ public class TreeReference implements Externalizable {
 		return false;
 	}
 	
-	//return a copy of the ref
+	//return a copy of the ref (the step arrays are shared until either ref is modified)
 	public TreeReference clone () {
-		TreeReference newRef = new TreeReference();
-		newRef.setRefLevel(this.refLevel);
-		for (int i = 0; i < this.size(); i++) {
-			newRef.add(this.getName(i), this.getMultiplicity(i));
-		}
+		shared = true;
+		TreeReference newRef = new TreeReference(refLevel, names, multiplicity, size);
+		newRef.hash = hash;
 		return newRef;
 	}
 	
+	//append the steps of 'ref' to this ref
+	private void addAll (TreeReference ref) {
+		if (ref.size == 0)
+			return;
+		
+		prepareWrite(size + ref.size);
+		System.arraycopy(ref.names, 0, names, size, ref.size);
+		System.arraycopy(ref.multiplicity, 0, multiplicity, size, ref.size);
+		size += ref.size;
+	}
+	
 	/*
 	 * chop the lowest level off the ref so that the ref now represents the parent of the original ref
 	 * return true if we successfully got the parent, false if there were no higher levels
@@ -135,12 +239,13 @@ public class TreeReference implements Externalizable {
 			if (isAbsolute()) {
 				return false;
 			} else {
-				refLevel++;
+				setRefLevel(refLevel + 1);
 				return true;
 			}
 		} else {
-			names.removeElementAt(size - 1);
-			multiplicity.removeElementAt(size - 1);
+			//dropping the last step leaves the (possibly shared) arrays untouched
+			this.size--;
+			hash = 0;
 			return true;
 		}
 	}
@@ -166,15 +271,13 @@ public class TreeReference implements Externalizable {
 
 			if (refLevel > 0) {
 				if (!parentRef.isAbsolute() && parentRef.size() == 0) {
-					parentRef.refLevel += refLevel;
+					parentRef.setRefLevel(parentRef.refLevel + refLevel);
 				} else {
 					return null;
 				}
 			}
 			
-			for (int i = 0; i < names.size(); i++) {
-				newRef.add(this.getName(i), this.getMultiplicity(i));
-			}
+			newRef.addAll(this);
 
 			return newRef;			
 		}
@@ -200,9 +303,7 @@ public class TreeReference implements Externalizable {
 				for (int i = 0; i < refLevel; i++) {
 					newRef.removeLastLevel();
 				}
-				for (int i = 0; i < size(); i++) {
-					newRef.add(this.getName(i), this.getMultiplicity(i));
-				}		
+				newRef.addAll(this);
 				return newRef;
 			}
 		}
@@ -217,7 +318,7 @@ public class TreeReference implements Externalizable {
 		TreeReference newRef = anchor(contextRef);
 		
 		for (int i = 0; i < contextRef.size() && i < newRef.size(); i++) {
-			if (contextRef.getName(i).equals(newRef.getName(i))) {
+			if (sameName(contextRef.names[i], newRef.names[i])) {
 				newRef.setMultiplicity(i, contextRef.getMultiplicity(i));
 			} else {
 				break;
@@ -240,12 +341,10 @@ public class TreeReference implements Externalizable {
 	}
 	
 	//turn unambiguous ref into a generic ref
-	public TreeReference genericize () {	
-		TreeReference genericRef = clone();
-		for (int i = 0; i < genericRef.size(); i++) {
-			genericRef.setMultiplicity(i, INDEX_UNBOUND);
-		}
-		return genericRef;
+	//generic refs share this ref's names and a common all-unbound multiplicity array, so this does not copy any steps
+	public TreeReference genericize () {
+		shared = true;
+		return new TreeReference(refLevel, names, unboundMults(size), size);
 	}
 	
 	//returns true if 'this' is parent of 'child'
@@ -256,13 +355,13 @@ public class TreeReference implements Externalizable {
 		if (child.size() < size() + (properParent ? 1 : 0))
 			return false;
 		
-		for (int i = 0; i < size(); i++) {
-			if (!this.getName(i).equals(child.getName(i))) {
+		for (int i = 0; i < size; i++) {
+			if (!sameName(this.names[i], child.names[i])) {
 				return false;
 			}
 			
-			int parMult = this.getMultiplicity(i);
-			int childMult = child.getMultiplicity(i);
+			int parMult = this.multiplicity[i];
+			int childMult = child.multiplicity[i];
 			if (parMult != INDEX_UNBOUND && parMult != childMult && !(i == 0 && parMult == 0 && childMult == INDEX_UNBOUND)) {
 				return false;
 			}
@@ -290,14 +389,12 @@ public class TreeReference implements Externalizable {
 		} else if (o instanceof TreeReference) {
 			TreeReference ref = (TreeReference)o;
 			
-			if (this.refLevel == ref.refLevel && this.size() == ref.size()) {
-				for (int i = 0; i < this.size(); i++) {
-					String nameA = this.getName(i);
-					String nameB = ref.getName(i);
-					int multA = this.getMultiplicity(i);
-					int multB = ref.getMultiplicity(i);
+			if (this.refLevel == ref.refLevel && this.size == ref.size && (this.hash == 0 || ref.hash == 0 || this.hash == ref.hash)) {
+				for (int i = 0; i < this.size; i++) {
+					int multA = this.multiplicity[i];
+					int multB = ref.multiplicity[i];
 					
-					if (!nameA.equals(nameB)) {
+					if (!sameName(this.names[i], ref.names[i])) {
 						return false;
 					} else if (multA != multB) {
 						if (i == 0 && (multA == 0 || multA == INDEX_UNBOUND) && (multB == 0 || multB == INDEX_UNBOUND)) {
@@ -316,21 +413,25 @@ public class TreeReference implements Externalizable {
 		}
 	}
 	
+	private static boolean sameName (String a, String b) {
+		return a == b || a.equals(b);
+	}
+	
 	public int hashCode () {
-		int hash = (new Integer(refLevel)).hashCode();
-		for (int i = 0; i < size(); i++) {
-			//NOTE(ctsims): It looks like this is only using Integer to
-			//get the hashcode method, but that method
-			//is just returning the int value, I think, so
-			//this should potentially just be replaced by
-			//an int.
-			Integer mult = new Integer(getMultiplicity(i));
-			if (i == 0 && mult.intValue() == INDEX_UNBOUND)
-				mult = new Integer(0);
+		if (hash != 0)
+			return hash;
+		
+		int h = refLevel;
+		for (int i = 0; i < size; i++) {
+			int mult = multiplicity[i];
+			if (i == 0 && mult == INDEX_UNBOUND)
+				mult = 0; // /data and /data[0] are functionally the same
 			
-			hash ^= getName(i).hashCode();
-			hash ^= mult.hashCode();
+			h = 31 * h + names[i].hashCode();
+			h = 31 * h + mult;
 		}
+		
+		hash = (h == 0 ? 1 : h);
 		return hash;
 	}
 	
@@ -373,13 +474,29 @@ public class TreeReference implements Externalizable {
 	public void readExternal(DataInputStream in, PrototypeFactory pf)
 			throws IOException, DeserializationException {
 		refLevel = ExtUtil.readInt(in);
-		names = (Vector)ExtUtil.read(in, new ExtWrapList(String.class), pf);
-		multiplicity = (Vector)ExtUtil.read(in, new ExtWrapList(Integer.class), pf);
+		Vector vnames = (Vector)ExtUtil.read(in, new ExtWrapList(String.class), pf);
+		Vector vmults = (Vector)ExtUtil.read(in, new ExtWrapList(Integer.class), pf);
+		
+		names = NO_NAMES;
+		multiplicity = NO_MULTS;
+		size = 0;
+		shared = true;
+		for (int i = 0; i < vnames.size(); i++) {
+			add((String)vnames.elementAt(i), ((Integer)vmults.elementAt(i)).intValue());
+		}
+		hash = 0;
 	}
 
 	public void writeExternal(DataOutputStream out) throws IOException {
+		Vector vnames = new Vector(size);
+		Vector vmults = new Vector(size);
+		for (int i = 0; i < size; i++) {
+			vnames.addElement(names[i]);
+			vmults.addElement(new Integer(multiplicity[i]));
+		}
+		
 		ExtUtil.writeNumeric(out, refLevel);
-		ExtUtil.write(out, new ExtWrapList(names));
-		ExtUtil.write(out, new ExtWrapList(multiplicity));
+		ExtUtil.write(out, new ExtWrapList(vnames));
+		ExtUtil.write(out, new ExtWrapList(vmults));
 	}
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2009 JavaRosa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openrosa.client.jr.core.model.instance.utils;
+
+import java.io.IOException;
+
+import org.openrosa.client.java.io.DataInputStream;
+import org.openrosa.client.java.io.DataOutputStream;
+import org.openrosa.client.jr.core.model.instance.TreeElement;
+import org.openrosa.client.jr.core.util.externalizable.DeserializationException;
+import org.openrosa.client.jr.core.util.externalizable.ExternalizableWrapper;
+import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
+import org.openrosa.client.jr.core.util.externalizable.SerializationDictionary;
+
+/**
+ * An optional, more compact serialization format for a tree of TreeElements. Element names,
+ * preload settings and attributes are written through a string dictionary, so each distinct
+ * string is only written once per stream, and constraints (shared by all the instances of a
+ * repeat) are written once and then referred to by index.
+ * 
+ * The dictionary belongs to a single write or read, so this format must be read back with
+ * this wrapper as well:
+ * 
+ *   ExtUtil.write(out, new DictionaryTreeWrapper(root));
+ *   TreeElement root = (TreeElement)ExtUtil.read(in, new DictionaryTreeWrapper(), pf);
+ */
+public class DictionaryTreeWrapper extends ExternalizableWrapper {
+	
+	/* serialization */
+	
+	public DictionaryTreeWrapper (TreeElement root) {
+		if (root == null) {
+			throw new NullPointerException();
+		}
+		
+		this.val = root;
+	}
+	
+	/* deserialization */
+	
+	public DictionaryTreeWrapper () {
+		
+	}
+	
+	public ExternalizableWrapper clone (Object val) {
+		return new DictionaryTreeWrapper((TreeElement)val);
+	}
+	
+	public void readExternal (DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
+		TreeElement root = new TreeElement();
+		root.readExternal(in, pf, new SerializationDictionary());
+		val = root;
+	}
+	
+	public void writeExternal (DataOutputStream out) throws IOException {
+		((TreeElement)val).writeExternal(out, new SerializationDictionary());
+	}
+	
+	public void metaReadExternal (DataInputStream in, PrototypeFactory pf) {
+		throw new RuntimeException("Dictionary tree wrapper should never be tagged");
+	}
+	
+	public void metaWriteExternal (DataOutputStream out) {
+		throw new RuntimeException("Dictionary tree wrapper should never be tagged");
+	}
+}
@@ -1,8 +1,60 @@
 package org.openrosa.client.jr.core.services;
 
+import org.openrosa.client.jr.core.model.DataBinding;
+import org.openrosa.client.jr.core.model.FormDef;
+import org.openrosa.client.jr.core.model.GroupDef;
+import org.openrosa.client.jr.core.model.ItemsetBinding;
+import org.openrosa.client.jr.core.model.QuestionDef;
+import org.openrosa.client.jr.core.model.SelectChoice;
+import org.openrosa.client.jr.core.model.condition.Condition;
+import org.openrosa.client.jr.core.model.condition.Constraint;
+import org.openrosa.client.jr.core.model.condition.Recalculate;
+import org.openrosa.client.jr.core.model.data.BooleanData;
+import org.openrosa.client.jr.core.model.data.DateData;
+import org.openrosa.client.jr.core.model.data.DateTimeData;
+import org.openrosa.client.jr.core.model.data.DecimalData;
+import org.openrosa.client.jr.core.model.data.GeoPointData;
+import org.openrosa.client.jr.core.model.data.IntegerData;
+import org.openrosa.client.jr.core.model.data.MultiPointerAnswerData;
+import org.openrosa.client.jr.core.model.data.PointerAnswerData;
+import org.openrosa.client.jr.core.model.data.SelectMultiData;
+import org.openrosa.client.jr.core.model.data.SelectOneData;
+import org.openrosa.client.jr.core.model.data.StringData;
+import org.openrosa.client.jr.core.model.data.TimeData;
+import org.openrosa.client.jr.core.model.data.helper.BasicDataPointer;
+import org.openrosa.client.jr.core.model.data.helper.Selection;
+import org.openrosa.client.jr.core.model.instance.FormInstance;
+import org.openrosa.client.jr.core.model.instance.TreeElement;
+import org.openrosa.client.jr.core.model.instance.TreeReference;
+import org.openrosa.client.jr.core.model.instance.utils.CompactInstanceWrapper;
+import org.openrosa.client.jr.core.reference.ReferenceDataSource;
+import org.openrosa.client.jr.core.reference.RootTranslator;
+import org.openrosa.client.jr.core.services.locale.Localizer;
+import org.openrosa.client.jr.core.services.locale.ResourceFileDataSource;
+import org.openrosa.client.jr.core.services.locale.TableLocaleSource;
+import org.openrosa.client.jr.core.services.transport.payload.ByteArrayPayload;
+import org.openrosa.client.jr.core.services.transport.payload.DataPointerPayload;
+import org.openrosa.client.jr.core.services.transport.payload.MultiMessagePayload;
 import org.openrosa.client.jr.core.util.PrefixTree;
 import org.openrosa.client.jr.core.util.externalizable.CannotCreateObjectException;
+import org.openrosa.client.jr.core.util.externalizable.Prototype;
 import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
+import org.openrosa.client.jr.model.xform.XPathReference;
+import org.openrosa.client.jr.xpath.XPathConditional;
+import org.openrosa.client.jr.xpath.expr.XPathArithExpr;
+import org.openrosa.client.jr.xpath.expr.XPathBoolExpr;
+import org.openrosa.client.jr.xpath.expr.XPathCmpExpr;
+import org.openrosa.client.jr.xpath.expr.XPathEqExpr;
+import org.openrosa.client.jr.xpath.expr.XPathFilterExpr;
+import org.openrosa.client.jr.xpath.expr.XPathFuncExpr;
+import org.openrosa.client.jr.xpath.expr.XPathNumNegExpr;
+import org.openrosa.client.jr.xpath.expr.XPathNumericLiteral;
+import org.openrosa.client.jr.xpath.expr.XPathPathExpr;
+import org.openrosa.client.jr.xpath.expr.XPathQName;
+import org.openrosa.client.jr.xpath.expr.XPathStep;
+import org.openrosa.client.jr.xpath.expr.XPathStringLiteral;
+import org.openrosa.client.jr.xpath.expr.XPathUnionExpr;
+import org.openrosa.client.jr.xpath.expr.XPathVariableReference;
 
 public class PrototypeManager {
 	private static PrefixTree prototypes;
@@ -22,6 +74,120 @@ public class PrototypeManager {
 			registerPrototype(classNames[i]);
 	}*/
 	
+	/**
+	 * Registers the serializable classes of javarosa with PrototypeFactory, each under
+	 * a fixed serialization code and with a prototype creating its empty instances.
+	 * 
+	 * The codes are written into serialized data: only ever append to this list, and
+	 * never renumber or reuse a code. Codes below 32 are kept for base types.
+	 * PrototypeManagerTest fails if a jr Externalizable is missing from this list, or if
+	 * a prototype creates some other class than the one it is registered for.
+	 */
+	public static void registerDefaultPrototypes () {
+		PrototypeFactory.registerClass(32, FormDef.class, new Prototype() {
+			public Object newInstance () { return new FormDef(); } });
+		PrototypeFactory.registerClass(33, GroupDef.class, new Prototype() {
+			public Object newInstance () { return new GroupDef(); } });
+		PrototypeFactory.registerClass(34, QuestionDef.class, new Prototype() {
+			public Object newInstance () { return new QuestionDef(); } });
+		PrototypeFactory.registerClass(35, SelectChoice.class, new Prototype() {
+			public Object newInstance () { return new SelectChoice(); } });
+		PrototypeFactory.registerClass(36, DataBinding.class, new Prototype() {
+			public Object newInstance () { return new DataBinding(); } });
+		PrototypeFactory.registerClass(37, ItemsetBinding.class, new Prototype() {
+			public Object newInstance () { return new ItemsetBinding(); } });
+		PrototypeFactory.registerClass(38, Condition.class, new Prototype() {
+			public Object newInstance () { return new Condition(); } });
+		PrototypeFactory.registerClass(39, Constraint.class, new Prototype() {
+			public Object newInstance () { return new Constraint(); } });
+		PrototypeFactory.registerClass(40, Recalculate.class, new Prototype() {
+			public Object newInstance () { return new Recalculate(); } });
+		PrototypeFactory.registerClass(41, FormInstance.class, new Prototype() {
+			public Object newInstance () { return new FormInstance(); } });
+		PrototypeFactory.registerClass(42, TreeElement.class, new Prototype() {
+			public Object newInstance () { return new TreeElement(); } });
+		PrototypeFactory.registerClass(43, TreeReference.class, new Prototype() {
+			public Object newInstance () { return new TreeReference(); } });
+		PrototypeFactory.registerClass(44, CompactInstanceWrapper.class, new Prototype() {
+			public Object newInstance () { return new CompactInstanceWrapper(); } });
+		PrototypeFactory.registerClass(45, BooleanData.class, new Prototype() {
+			public Object newInstance () { return new BooleanData(); } });
+		PrototypeFactory.registerClass(46, DateData.class, new Prototype() {
+			public Object newInstance () { return new DateData(); } });
+		PrototypeFactory.registerClass(47, DateTimeData.class, new Prototype() {
+			public Object newInstance () { return new DateTimeData(); } });
+		PrototypeFactory.registerClass(48, DecimalData.class, new Prototype() {
+			public Object newInstance () { return new DecimalData(); } });
+		PrototypeFactory.registerClass(49, GeoPointData.class, new Prototype() {
+			public Object newInstance () { return new GeoPointData(); } });
+		PrototypeFactory.registerClass(50, IntegerData.class, new Prototype() {
+			public Object newInstance () { return new IntegerData(); } });
+		PrototypeFactory.registerClass(51, MultiPointerAnswerData.class, new Prototype() {
+			public Object newInstance () { return new MultiPointerAnswerData(); } });
+		PrototypeFactory.registerClass(52, PointerAnswerData.class, new Prototype() {
+			public Object newInstance () { return new PointerAnswerData(); } });
+		PrototypeFactory.registerClass(53, SelectMultiData.class, new Prototype() {
+			public Object newInstance () { return new SelectMultiData(); } });
+		PrototypeFactory.registerClass(54, SelectOneData.class, new Prototype() {
+			public Object newInstance () { return new SelectOneData(); } });
+		PrototypeFactory.registerClass(55, StringData.class, new Prototype() {
+			public Object newInstance () { return new StringData(); } });
+		PrototypeFactory.registerClass(56, TimeData.class, new Prototype() {
+			public Object newInstance () { return new TimeData(); } });
+		PrototypeFactory.registerClass(57, BasicDataPointer.class, new Prototype() {
+			public Object newInstance () { return new BasicDataPointer(); } });
+		PrototypeFactory.registerClass(58, Selection.class, new Prototype() {
+			public Object newInstance () { return new Selection(); } });
+		PrototypeFactory.registerClass(59, ReferenceDataSource.class, new Prototype() {
+			public Object newInstance () { return new ReferenceDataSource(); } });
+		PrototypeFactory.registerClass(60, RootTranslator.class, new Prototype() {
+			public Object newInstance () { return new RootTranslator(); } });
+		PrototypeFactory.registerClass(61, Localizer.class, new Prototype() {
+			public Object newInstance () { return new Localizer(); } });
+		PrototypeFactory.registerClass(62, ResourceFileDataSource.class, new Prototype() {
+			public Object newInstance () { return new ResourceFileDataSource(); } });
+		PrototypeFactory.registerClass(63, TableLocaleSource.class, new Prototype() {
+			public Object newInstance () { return new TableLocaleSource(); } });
+		PrototypeFactory.registerClass(64, ByteArrayPayload.class, new Prototype() {
+			public Object newInstance () { return new ByteArrayPayload(); } });
+		PrototypeFactory.registerClass(65, DataPointerPayload.class, new Prototype() {
+			public Object newInstance () { return new DataPointerPayload(); } });
+		PrototypeFactory.registerClass(66, MultiMessagePayload.class, new Prototype() {
+			public Object newInstance () { return new MultiMessagePayload(); } });
+		PrototypeFactory.registerClass(67, XPathReference.class, new Prototype() {
+			public Object newInstance () { return new XPathReference(); } });
+		PrototypeFactory.registerClass(68, XPathConditional.class, new Prototype() {
+			public Object newInstance () { return new XPathConditional(); } });
+		PrototypeFactory.registerClass(69, XPathArithExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathArithExpr(); } });
+		PrototypeFactory.registerClass(70, XPathBoolExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathBoolExpr(); } });
+		PrototypeFactory.registerClass(71, XPathCmpExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathCmpExpr(); } });
+		PrototypeFactory.registerClass(72, XPathEqExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathEqExpr(); } });
+		PrototypeFactory.registerClass(73, XPathFilterExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathFilterExpr(); } });
+		PrototypeFactory.registerClass(74, XPathFuncExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathFuncExpr(); } });
+		PrototypeFactory.registerClass(75, XPathNumNegExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathNumNegExpr(); } });
+		PrototypeFactory.registerClass(76, XPathNumericLiteral.class, new Prototype() {
+			public Object newInstance () { return new XPathNumericLiteral(); } });
+		PrototypeFactory.registerClass(77, XPathPathExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathPathExpr(); } });
+		PrototypeFactory.registerClass(78, XPathQName.class, new Prototype() {
+			public Object newInstance () { return new XPathQName(); } });
+		PrototypeFactory.registerClass(79, XPathStep.class, new Prototype() {
+			public Object newInstance () { return new XPathStep(); } });
+		PrototypeFactory.registerClass(80, XPathStringLiteral.class, new Prototype() {
+			public Object newInstance () { return new XPathStringLiteral(); } });
+		PrototypeFactory.registerClass(81, XPathUnionExpr.class, new Prototype() {
+			public Object newInstance () { return new XPathUnionExpr(); } });
+		PrototypeFactory.registerClass(82, XPathVariableReference.class, new Prototype() {
+			public Object newInstance () { return new XPathVariableReference(); } });
+	}
+	
 	public static PrefixTree getPrototypes () {
 		if (prototypes == null) {
 			prototypes = new PrefixTree();
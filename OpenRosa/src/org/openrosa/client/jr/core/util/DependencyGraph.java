@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2009 JavaRosa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openrosa.client.jr.core.util;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * A directed graph over arbitrary vertex objects, stored as integer adjacency
+ * lists so that ordering and cycle detection run in O(V + E).
+ *
+ * Vertices are numbered in the order they are first added. Depending on how
+ * the graph is constructed, vertices are matched either by identity (for
+ * objects like Triggerables whose equals() is expensive or too loose) or by
+ * equals()/hashCode() (for value objects like TreeReferences).
+ */
+public class DependencyGraph {
+	private Map index; // <Object, Integer>
+	private Vector vertices;
+	private int[][] successors;
+	private int[] numSuccessors;
+	private boolean compacted;
+
+	/**
+	 * @param identity if true, vertices are matched by reference rather than by equals()
+	 */
+	public DependencyGraph (boolean identity) {
+		index = (identity ? (Map)new IdentityHashMap() : (Map)new HashMap());
+		vertices = new Vector();
+		successors = new int[16][];
+		numSuccessors = new int[16];
+		compacted = true;
+	}
+
+	/**
+	 * Add a vertex to the graph if it is not already present
+	 *
+	 * @param v
+	 * @return the index of the vertex
+	 */
+	public int addVertex (Object v) {
+		Integer ix = (Integer)index.get(v);
+		if (ix != null) {
+			return ix.intValue();
+		}
+
+		int i = vertices.size();
+		if (i == successors.length) {
+			int[][] grownSuccessors = new int[i * 2][];
+			System.arraycopy(successors, 0, grownSuccessors, 0, i);
+			successors = grownSuccessors;
+			int[] grownCounts = new int[i * 2];
+			System.arraycopy(numSuccessors, 0, grownCounts, 0, i);
+			numSuccessors = grownCounts;
+		}
+		vertices.addElement(v);
+		index.put(v, new Integer(i));
+		return i;
+	}
+
+	/**
+	 * @param v
+	 * @return the index of the vertex, or -1 if it is not in the graph
+	 */
+	public int indexOf (Object v) {
+		Integer ix = (Integer)index.get(v);
+		return (ix == null ? -1 : ix.intValue());
+	}
+
+	public Object getVertex (int i) {
+		return vertices.elementAt(i);
+	}
+
+	public int size () {
+		return vertices.size();
+	}
+
+	/**
+	 * Add an edge 'from -> to', adding either vertex if necessary
+	 */
+	public void addEdge (Object from, Object to) {
+		addEdge(addVertex(from), addVertex(to));
+	}
+
+	/**
+	 * Add an edge between two vertices already in the graph. Duplicate edges
+	 * are tolerated and collapsed the first time the graph is queried.
+	 */
+	public void addEdge (int from, int to) {
+		int[] adj = successors[from];
+		int n = numSuccessors[from];
+		if (adj == null) {
+			adj = new int[4];
+			successors[from] = adj;
+		} else if (n == adj.length) {
+			int[] grown = new int[n * 2];
+			System.arraycopy(adj, 0, grown, 0, n);
+			adj = grown;
+			successors[from] = adj;
+		}
+		adj[n] = to;
+		numSuccessors[from] = n + 1;
+		compacted = false;
+	}
+
+	/**
+	 * @param i
+	 * @return the distinct indexes of the vertices that vertex i has an edge to
+	 */
+	public int[] getSuccessors (int i) {
+		compact();
+		int n = numSuccessors[i];
+		int[] succ = new int[n];
+		if (n > 0) {
+			System.arraycopy(successors[i], 0, succ, 0, n);
+		}
+		return succ;
+	}
+
+	/**
+	 * Order the vertices such that every edge points from an earlier vertex to
+	 * a later one (Kahn's algorithm). Among vertices with no ordering
+	 * constraint between them, the order they were added in is preserved as
+	 * far as possible.
+	 *
+	 * @return vertex indexes in topological order, or null if the graph has a cycle
+	 */
+	public int[] topologicalOrder () {
+		compact();
+		int n = size();
+		int[] inDegree = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < numSuccessors[i]; j++) {
+				inDegree[successors[i][j]]++;
+			}
+		}
+
+		int[] order = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (inDegree[i] == 0) {
+				order[tail++] = i;
+			}
+		}
+		while (head < tail) {
+			int v = order[head++];
+			for (int j = 0; j < numSuccessors[v]; j++) {
+				int w = successors[v][j];
+				if (--inDegree[w] == 0) {
+					order[tail++] = w;
+				}
+			}
+		}
+
+		return (tail == n ? order : null);
+	}
+
+	/**
+	 * Find a cycle in the graph using an iterative depth-first search.
+	 *
+	 * @return the vertices along the cycle, with the first vertex repeated at
+	 * the end (e.g. [a, b, c, a] for a -> b -> c -> a); null if the graph is
+	 * acyclic
+	 */
+	public Vector findCycle () {
+		compact();
+		int n = size();
+		byte[] state = new byte[n]; //0 = unvisited, 1 = on the current path, 2 = done
+		int[] path = new int[n];
+		int[] nextEdge = new int[n];
+
+		for (int start = 0; start < n; start++) {
+			if (state[start] != 0)
+				continue;
+
+			int depth = 0;
+			path[0] = start;
+			nextEdge[0] = 0;
+			state[start] = 1;
+			while (depth >= 0) {
+				int v = path[depth];
+				if (nextEdge[depth] < numSuccessors[v]) {
+					int w = successors[v][nextEdge[depth]++];
+					if (state[w] == 1) {
+						Vector cycle = new Vector();
+						int from = depth;
+						while (path[from] != w) {
+							from--;
+						}
+						for (int i = from; i <= depth; i++) {
+							cycle.addElement(getVertex(path[i]));
+						}
+						cycle.addElement(getVertex(w));
+						return cycle;
+					} else if (state[w] == 0) {
+						state[w] = 1;
+						depth++;
+						path[depth] = w;
+						nextEdge[depth] = 0;
+					}
+				} else {
+					state[v] = 2;
+					depth--;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Render a cycle returned by findCycle() as 'a => b => c => a'
+	 */
+	public static String cycleToString (Vector cycle) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < cycle.size(); i++) {
+			if (i > 0) {
+				sb.append(" => ");
+			}
+			sb.append(cycle.elementAt(i).toString());
+		}
+		return sb.toString();
+	}
+
+	//remove duplicate edges
+	private void compact () {
+		if (compacted)
+			return;
+
+		int n = size();
+		int[] seen = new int[n];
+		for (int i = 0; i < n; i++) {
+			int[] adj = successors[i];
+			int count = 0;
+			for (int j = 0; j < numSuccessors[i]; j++) {
+				int w = adj[j];
+				if (seen[w] != i + 1) {
+					seen[w] = i + 1;
+					adj[count++] = w;
+				}
+			}
+			numSuccessors[i] = count;
+		}
+		compacted = true;
+	}
+}
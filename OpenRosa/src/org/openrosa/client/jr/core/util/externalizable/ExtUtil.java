@@ -62,11 +62,39 @@ public class ExtUtil {
 	}
 	
 	public static void writeNumeric (DataOutputStream out, long val) throws IOException {
-		writeNumeric(out, val, new ExtWrapIntEncodingUniform());
+		writeVarLong(out, val);
 	}
 	
 	public static void writeNumeric (DataOutputStream out, long val, ExtWrapIntEncoding encoding) throws IOException {
-		write(out, encoding.clone(new Long(val)));
+		//the built-in encodings are written directly, without boxing the value into a wrapper
+		if (encoding instanceof ExtWrapIntEncodingUniform) {
+			writeVarLong(out, val);
+		} else if (encoding instanceof ExtWrapIntEncodingSmall) {
+			ExtWrapIntEncodingSmall.writeSmall(out, val, ((ExtWrapIntEncodingSmall)encoding).bias);
+		} else {
+			write(out, encoding.clone(new Long(val)));
+		}
+	}
+	
+	/**
+	 * serialize a numeric value, only using as many bytes as needed. splits up the value into
+	 * chunks of 7 bits, using as many chunks as needed to unambiguously represent the value. each
+	 * chunk is serialized as a single byte, where the most-significant bit is set to 1 to indicate
+	 * there are more bytes to follow, or 0 to indicate the last byte. this is the encoding of
+	 * ExtWrapIntEncodingUniform, and does not allocate anything.
+	 **/
+	public static void writeVarLong (DataOutputStream out, long l) throws IOException {
+		int sig = -1;
+		long k;
+		do {
+			sig++;
+			k = l >> (sig * 7);
+		} while (k < (-1 << 6) || k > (1 << 6) - 1); //[-64,63] -- the range we can fit into one byte
+
+		for (int i = sig; i >= 0; i--) {
+			byte chunk = (byte)((l >> (i * 7)) & 0x7f);
+			out.writeByte((i > 0 ? 0x80 : 0x00) | chunk);
+		}
 	}
 	
 	public static void writeChar (DataOutputStream out, char val) throws IOException {
@@ -108,8 +136,8 @@ public class ExtUtil {
 	}
 	
 	public static Object read (DataInputStream in, Class type, PrototypeFactory pf) throws IOException, DeserializationException {
-		if (true /*Externalizable.class.isAssignableFrom(type)*/) {
-			Externalizable ext = null; //(Externalizable)PrototypeFactory.getInstance(type);
+		if (PrototypeFactory.hasPrototype(type)) {
+			Externalizable ext = (Externalizable)PrototypeFactory.getInstance(type);
 			ext.readExternal(in, pf == null ? defaultPrototypes() : pf);
 			return ext;
 		} else if (type == Byte.class) {
@@ -147,10 +175,16 @@ public class ExtUtil {
 	}
 	
 	public static long readNumeric (DataInputStream in) throws IOException {
-		return readNumeric(in, new ExtWrapIntEncodingUniform());
+		return readVarLong(in);
 	}
 
 	public static long readNumeric (DataInputStream in, ExtWrapIntEncoding encoding) throws IOException {
+		if (encoding instanceof ExtWrapIntEncodingUniform) {
+			return readVarLong(in);
+		} else if (encoding instanceof ExtWrapIntEncodingSmall) {
+			return ExtWrapIntEncodingSmall.readSmall(in, ((ExtWrapIntEncodingSmall)encoding).bias);
+		}
+		
 		try {
 			return ((Long)read(in, encoding)).longValue();
 		} catch (DeserializationException de) {
@@ -158,6 +192,28 @@ public class ExtUtil {
 		}
 	}	
 	
+	/**
+	 * read a numeric value written by writeVarLong, without allocating anything
+	 */
+	public static long readVarLong (DataInputStream in) throws IOException {
+		long l = 0;
+		byte b;
+		boolean firstByte = true;
+		
+		do {
+			b = in.readByte();
+			
+			if (firstByte) {
+				firstByte = false;
+				l = (((b >> 6) & 0x01) == 0 ? 0 : -1); //set initial sign
+			}
+			
+			l = (l << 7) | (b & 0x7f);
+		} while (((b >> 7) & 0x01) == 1);
+		
+		return l;
+	}
+	
 	public static int readInt (DataInputStream in) throws IOException {
 		return toInt(readNumeric(in));
 	}
@@ -60,16 +60,17 @@ public class ExtWrapIntEncodingSmall extends ExtWrapIntEncoding {
 	}
 
 	public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException {
+		val = new Long(readSmall(in, bias));
+	}
+	
+	static long readSmall(DataInputStream in, int bias) throws IOException {
 		byte b = in.readByte();
-		long l;
 		
 		if (b == (byte)0xff) {
-			l = in.readInt();
+			return in.readInt();
 		} else {
-			l = (b < 0 ? b + 256 : b) - bias;
+			return (b < 0 ? b + 256 : b) - bias;
 		}
-		
-		val = new Long(l);
 	}
 		
 	/**
@@ -79,7 +80,11 @@ public class ExtWrapIntEncodingSmall extends ExtWrapIntEncoding {
 	 * there are more bytes to follow, or 0 to indicate the last byte
 	 **/
 	public void writeExternal(DataOutputStream out) throws IOException {
-		int n = ExtUtil.toInt(((Long)val).longValue());
+		writeSmall(out, ((Long)val).longValue(), bias);
+	}
+	
+	static void writeSmall(DataOutputStream out, long l, int bias) throws IOException {
+		int n = ExtUtil.toInt(l);
 				
 		if (n >= -bias && n < 255 - bias) {
 			n += bias;
@@ -18,14 +18,18 @@ package org.openrosa.client.jr.core.util.externalizable;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Iterator;
 
 import org.openrosa.client.java.io.DataInputStream;
 import org.openrosa.client.java.io.DataOutputStream;
 
+/**
+ * Wraps a value whose type is not known up front. The value is preceded by a tag:
+ * the serialization code of its class (see PrototypeFactory.registerClass), or
+ * PrototypeFactory.WRAPPER_CODE followed by the wrapper code and meta data of an
+ * ExternalizableWrapper. Codes are written with ExtUtil.writeNumeric, so the
+ * usual types take a single byte.
+ */
 public class ExtWrapTagged extends ExternalizableWrapper {
-	public final static byte[] WRAPPER_TAG = {(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff}; //must be same length as PrototypeFactory.CLASS_HASH_SIZE
-	
 	public static HashMap WRAPPER_CODES;
 	
 	static {
@@ -72,24 +76,13 @@ public class ExtWrapTagged extends ExternalizableWrapper {
 	}
 
 	public static ExternalizableWrapper readTag (DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
-		byte[] tag = new byte[PrototypeFactory.CLASS_HASH_SIZE];
-		in.read(tag, 0, tag.length);
+		int code = ExtUtil.readInt(in);
 		
-		if (PrototypeFactory.compareHash(tag, WRAPPER_TAG)) {
+		if (code == PrototypeFactory.WRAPPER_CODE) {
 			int wrapperCode = ExtUtil.readInt(in);
 			
-			//find wrapper indicated by code
-			ExternalizableWrapper type = null;
-			for (Iterator e = WRAPPER_CODES.keySet().iterator(); e.hasNext(); ) {
-				Class t = (Class)e.next();
-				if (((Integer)WRAPPER_CODES.get(t)).intValue() == wrapperCode) {
-					try {
-						type = null; //(ExternalizableWrapper)PrototypeFactory.getInstance(t);
-					} catch (CannotCreateObjectException ccoe) {
-						throw new CannotCreateObjectException("Serious problem: cannot create built-in ExternalizableWrapper [" + t.getName() + "]");
-					}
-				}
-			}
+			//create wrapper indicated by code
+			ExternalizableWrapper type = newWrapper(wrapperCode);
 			if (type == null) {
 				throw new DeserializationException("Unrecognized ExternalizableWrapper type [" + wrapperCode + "]");
 			}
@@ -97,18 +90,32 @@ public class ExtWrapTagged extends ExternalizableWrapper {
 			type.metaReadExternal(in, pf);
 			return type;
 		} else {
-			Class type = null; //pf.getClass(tag);
+			Class type = PrototypeFactory.getClassForCode(code);
 			if (type == null) {
-				throw new DeserializationException("No datatype registered to serialization code " + ExtUtil.printBytes(tag));
+				throw new DeserializationException("No datatype registered to serialization code " + code);
 			}
 			
 			return new ExtWrapBase(type);
 		}		
 	}
 	
+	//must be kept in line with WRAPPER_CODES
+	private static ExternalizableWrapper newWrapper (int wrapperCode) {
+		switch (wrapperCode) {
+		case 0x00: return new ExtWrapNullable();
+		case 0x20: return new ExtWrapList();
+		case 0x21: return new ExtWrapListPoly();
+		case 0x22: return new ExtWrapMap();
+		case 0x23: return new ExtWrapMapPoly();
+		case 0x40: return new ExtWrapIntEncodingUniform();
+		case 0x41: return new ExtWrapIntEncodingSmall();
+		default: return null;
+		}
+	}
+	
 	public static void writeTag (DataOutputStream out, Object o) throws IOException {
 		if (o instanceof ExternalizableWrapper && !(o instanceof ExtWrapBase)) {
-			out.write(WRAPPER_TAG, 0, PrototypeFactory.CLASS_HASH_SIZE);
+			ExtUtil.writeNumeric(out, PrototypeFactory.WRAPPER_CODE);
 			ExtUtil.writeNumeric(out, ((Integer)WRAPPER_CODES.get(o.getClass())).intValue());
 			((ExternalizableWrapper)o).metaWriteExternal(out);
 		} else {
@@ -126,8 +133,12 @@ public class ExtWrapTagged extends ExternalizableWrapper {
 				type = o.getClass();
 			}
 				
-			byte[] tag = null; //PrototypeFactory.getClassHash(type); //cache this?
-			out.write(tag, 0, tag.length);
+			int code = PrototypeFactory.getClassCode(type);
+			if (code == -1) {
+				throw new ClassCastException("No serialization code registered for datatype: " + type.getName()
+						+ "; add it to PrototypeManager.registerDefaultPrototypes()");
+			}
+			ExtUtil.writeNumeric(out, code);
 		}
 	}
 
@@ -16,14 +16,32 @@
 
 package org.openrosa.client.jr.core.util.externalizable;
 
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Vector;
 
+import org.openrosa.client.jr.core.services.PrototypeManager;
 import org.openrosa.client.jr.core.util.MD5;
 import org.openrosa.client.jr.core.util.PrefixTree;
 
+/**
+ * Creates the objects read back by deserialization. The serializable classes, their codes and
+ * their prototypes are kept in one static registry, filled in by registerClass(), and every
+ * lookup is static. An instance only stands for that registry where the readExternal() methods
+ * pass a factory along; it holds no classes of its own.
+ */
 public class PrototypeFactory {
 	public final static int CLASS_HASH_SIZE = 4;
 	
+	/** The serialization code marking an ExternalizableWrapper in a tag, see ExtWrapTagged */
+	public final static int WRAPPER_CODE = 0;
+	
+	//registry of serializable classes, shared by all factories. codes index straight into the arrays
+	private static HashMap classCodes = new HashMap(); //Class -> Integer
+	private static Class[] classesByCode = new Class[64];
+	private static Prototype[] prototypesByCode = new Prototype[64];
+	private static boolean defaultsRegistered = false;
+	
 	private Vector classes;
 	private Vector hashes;
 	
@@ -141,6 +159,108 @@ public class PrototypeFactory {
 		return hash;
 	}*/
 	
+	/**
+	 * Registers a serializable class under a serialization code. Codes end up in
+	 * serialized data, so once given out a code must never be reused for another class.
+	 * 
+	 * @param code the serialization code; small codes serialize to fewer bytes
+	 * @param c the class
+	 * @param prototype creates empty instances of the class for deserialization; null for
+	 * base types which ExtUtil reads itself
+	 */
+	public static void registerClass (int code, Class c, Prototype prototype) {
+		if (code <= WRAPPER_CODE) {
+			throw new IllegalArgumentException("Serialization code " + code + " is reserved");
+		}
+		
+		Integer oldCode = (Integer)classCodes.get(c);
+		if (oldCode != null && oldCode.intValue() != code) {
+			throw new Error(c.getName() + " is already registered under serialization code " + oldCode);
+		}
+		
+		if (code >= classesByCode.length) {
+			int size = Math.max(code + 1, classesByCode.length * 2);
+			Class[] classes = new Class[size];
+			System.arraycopy(classesByCode, 0, classes, 0, classesByCode.length);
+			classesByCode = classes;
+			Prototype[] prototypes = new Prototype[size];
+			System.arraycopy(prototypesByCode, 0, prototypes, 0, prototypesByCode.length);
+			prototypesByCode = prototypes;
+		}
+		
+		if (classesByCode[code] != null && classesByCode[code] != c) {
+			throw new Error("Serialization code collision! " + c.getName() + " and " + classesByCode[code].getName());
+		}
+		
+		classesByCode[code] = c;
+		prototypesByCode[code] = prototype;
+		classCodes.put(c, new Integer(code));
+	}
+	
+	/**
+	 * @return the serialization code of the class, or -1 if it is not registered
+	 */
+	public static int getClassCode (Class c) {
+		registerDefaults();
+		Integer code = (Integer)classCodes.get(c);
+		return (code == null ? -1 : code.intValue());
+	}
+	
+	/**
+	 * @return the class registered under the serialization code, or null if there is none
+	 */
+	public static Class getClassForCode (int code) {
+		registerDefaults();
+		return (code > WRAPPER_CODE && code < classesByCode.length ? classesByCode[code] : null);
+	}
+	
+	public static Object getInstance (int code) {
+		return getInstance(getClassForCode(code));
+	}
+	
+	/**
+	 * @return true if instances of the class can be created for deserialization
+	 */
+	public static boolean hasPrototype (Class c) {
+		int code = getClassCode(c);
+		return (code != -1 && prototypesByCode[code] != null);
+	}
+	
+	public static Object getInstance (Class c) {
+		int code = (c == null ? -1 : getClassCode(c));
+		if (code == -1 || prototypesByCode[code] == null) {
+			throw new CannotCreateObjectException((c == null ? "null" : c.getName()) + ": no prototype registered");
+		}
+		return prototypesByCode[code].newInstance();
+	}
+	
+	private static void registerDefaults () {
+		if (defaultsRegistered) {
+			return;
+		}
+		defaultsRegistered = true;
+		
+		Class[] baseTypes = {
+				Object.class,
+				Integer.class,
+				Long.class,
+				Short.class,
+				Byte.class,
+				Character.class,
+				Boolean.class,
+				Float.class,
+				Double.class,
+				String.class,
+				Date.class
+		};
+		
+		for (int i = 0; i < baseTypes.length; i++) {
+			registerClass(i + 1, baseTypes[i], null);
+		}
+		
+		PrototypeManager.registerDefaultPrototypes();
+	}
+	
 	public static boolean compareHash (byte[] a, byte[] b) {
 		if (a.length != b.length) {
 			return false;
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2009 JavaRosa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.openrosa.client.jr.core.util.externalizable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+import org.openrosa.client.java.io.DataInputStream;
+import org.openrosa.client.java.io.DataOutputStream;
+
+/**
+ * A dictionary built up while (de)serializing a single stream, such that strings and
+ * immutable objects which occur many times (element names, constraints, etc.) are only
+ * written out the first time, and referred to by index afterwards.
+ * 
+ * The dictionary is not written up front: each entry is written inline where it first
+ * occurs, and the reading side rebuilds it in the same order. Use a new dictionary for
+ * each stream, and the same one for all the values of that stream.
+ * 
+ * format, for both strings and objects: a numeric code; 0 for null, 1 for a new entry
+ * (followed by its value), or the index of an earlier entry plus 2
+ */
+public class SerializationDictionary {
+	private static final int NULL_ENTRY = 0;
+	private static final int NEW_ENTRY = 1;
+	private static final int FIRST_INDEX = 2;
+	
+	private HashMap stringIndexes; //String -> Integer
+	private Vector strings;
+	
+	private IdentityHashMap objectIndexes; //Object -> Integer
+	private Vector objects;
+	
+	public SerializationDictionary () {
+		stringIndexes = new HashMap();
+		strings = new Vector();
+		objectIndexes = new IdentityHashMap();
+		objects = new Vector();
+	}
+	
+	public void writeString (DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			ExtUtil.writeNumeric(out, NULL_ENTRY);
+			return;
+		}
+		
+		Integer index = (Integer)stringIndexes.get(s);
+		if (index != null) {
+			ExtUtil.writeNumeric(out, index.intValue() + FIRST_INDEX);
+		} else {
+			ExtUtil.writeNumeric(out, NEW_ENTRY);
+			ExtUtil.writeString(out, s);
+			stringIndexes.put(s, new Integer(stringIndexes.size()));
+		}
+	}
+	
+	public String readString (DataInputStream in) throws IOException {
+		int code = ExtUtil.readInt(in);
+		if (code == NULL_ENTRY) {
+			return null;
+		} else if (code == NEW_ENTRY) {
+			String s = ExtUtil.readString(in);
+			strings.addElement(s);
+			return s;
+		} else {
+			return (String)lookup(strings, code);
+		}
+	}
+	
+	/**
+	 * Write an object which may be shared by many places in the stream. Objects are
+	 * matched by identity, and must not be changed while the stream is being written.
+	 */
+	public void writeShared (DataOutputStream out, Externalizable o) throws IOException {
+		if (o == null) {
+			ExtUtil.writeNumeric(out, NULL_ENTRY);
+			return;
+		}
+		
+		Integer index = (Integer)objectIndexes.get(o);
+		if (index != null) {
+			ExtUtil.writeNumeric(out, index.intValue() + FIRST_INDEX);
+		} else {
+			ExtUtil.writeNumeric(out, NEW_ENTRY);
+			ExtUtil.write(out, o);
+			objectIndexes.put(o, new Integer(objectIndexes.size()));
+		}
+	}
+	
+	/**
+	 * Read an object written by writeShared. Every reference to the same object
+	 * in the stream gets the same (shared) instance back.
+	 */
+	public Object readShared (DataInputStream in, Class type, PrototypeFactory pf) throws IOException, DeserializationException {
+		int code = ExtUtil.readInt(in);
+		if (code == NULL_ENTRY) {
+			return null;
+		} else if (code == NEW_ENTRY) {
+			Object o = ExtUtil.read(in, type, pf);
+			objects.addElement(o);
+			return o;
+		} else {
+			return lookup(objects, code);
+		}
+	}
+	
+	private static Object lookup (Vector entries, int code) throws IOException {
+		int index = code - FIRST_INDEX;
+		if (index >= entries.size()) {
+			throw new IOException("Dictionary reference [" + index + "] to an entry which has not been read yet");
+		}
+		return entries.elementAt(index);
+	}
+}
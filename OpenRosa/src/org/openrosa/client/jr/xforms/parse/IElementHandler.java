@@ -22,11 +22,12 @@ import com.google.gwt.xml.client.Element;
 
 /**
  * An IElementHandler is responsible for handling the parsing of a particular
- * XForms node.
+ * XForms node. Handlers are shared by all parses, so any state of the parse
+ * should be kept in the given XFormParser rather than in the handler.
  *  
  * @author Drew Roos
  *
  */
 public interface IElementHandler {
-	/*Object*/ void handle (FormDef f, Element e, Object parent);
+	/*Object*/ void handle (XFormParser p, FormDef f, Element e, Object parent);
 }
@@ -40,6 +40,7 @@ import org.openrosa.client.jr.core.model.instance.TreeElement;
 import org.openrosa.client.jr.core.model.instance.TreeReference;
 import org.openrosa.client.jr.core.services.locale.Localizer;
 import org.openrosa.client.jr.core.services.locale.TableLocaleSource;
+import org.openrosa.client.jr.core.util.DependencyGraph;
 import org.openrosa.client.jr.core.util.externalizable.PrototypeFactoryDeprecated;
 import org.openrosa.client.jr.model.xform.XPathReference;
 import org.openrosa.client.jr.xforms.util.IXFormBindHandler;
@@ -73,62 +74,81 @@ public class XFormParser {
 	private static HashMap typeMappings;
 	private static PrototypeFactoryDeprecated modelPrototypes;
 
-	/** IXFormBindHandler */
-	private static Vector bindHandlers;
-
-	/* THIS CLASS IS NOT THREAD-SAFE */
-	//state variables -- not a good idea since this class is static, but that's not really a good idea either, now is it
-	private static boolean modelFound;
-	private static HashMap bindingsByID;
-	private static Vector bindings; //DataBinding
-	private static Vector repeats; //TreeReference
-	private static Vector itemsets; //ItemsetBinding
-	private static Vector selectOnes; //TreeReference
-	private static Vector selectMultis; //TreeReference
-	private static Element instanceNode; //top-level data node of the instance; saved off so it can be processed after the <bind>s
-	private static String defaultNamespace;
+	/** IXFormBindHandler, given to every parser made with the default constructor */
+	private static Vector registeredBindHandlers;
+
+	//state variables of a single parse. each parse gets its own XFormParser, so a form can be parsed
+	//from within the parse of another as long as the handler registries above are left alone meanwhile
+	private Vector bindHandlers; //IXFormBindHandler; init()ed and postProcess()ed by this parse only
+	private boolean modelFound;
+	private HashMap bindingsByID;
+	private Vector bindings; //DataBinding
+	private Vector repeats; //TreeReference
+	private Vector itemsets; //ItemsetBinding
+	private Vector selectOnes; //TreeReference
+	private Vector selectMultis; //TreeReference
+	private Element instanceNode; //top-level data node of the instance; saved off so it can be processed after the <bind>s
+	private String defaultNamespace;
 	
-	private static FormInstance repeatTree; //pseudo-data model tree that describes the repeat structure of the instance;
+	private FormInstance repeatTree; //pseudo-data model tree that describes the repeat structure of the instance;
 										     //useful during instance processing and validation
 	
+	private int serialQuestionID = 1;
+	
 	static {
 		initProcessingRules();
 		initTypeMappings();
 		modelPrototypes = new PrototypeFactoryDeprecated();
-		bindHandlers = new Vector();
+		registeredBindHandlers = new Vector();
 	}
 
 	/**
-	 * Default Constructor
+	 * Default Constructor. The parser uses the registered bind handlers, which are
+	 * shared with every other parser made this way.
 	 *
 	 */
 	public XFormParser(){
+		this(registeredBindHandlers);
+	}
 
+	/**
+	 * Creates a parser with its own bind handlers. Bind handlers keep state between their
+	 * init() and postProcess() calls, so a parse started from within another one should
+	 * be given handler instances of its own.
+	 * 
+	 * @param bindHandlers the IXFormBindHandlers for this parser
+	 */
+	public XFormParser(Vector bindHandlers){
+		this.bindHandlers = new Vector();
+		for (Enumeration en = bindHandlers.elements(); en.hasMoreElements(); ) {
+			this.bindHandlers.addElement(en.nextElement());
+		}
+		initStateVars();
 	}
 
 	private static void initProcessingRules () {
 		IElementHandler title = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseTitle(f, e); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { parseTitle(f, e); } };
 		IElementHandler meta = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseMeta(f, e); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { parseMeta(f, e); } };
 		IElementHandler model = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseModel(f, e); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseModel(f, e); } };
 		IElementHandler input = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseControl((IFormElement)parent, e, f, Constants.CONTROL_INPUT); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseControl((IFormElement)parent, e, f, Constants.CONTROL_INPUT); } };
 		IElementHandler select = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseControl((IFormElement)parent, e, f, Constants.CONTROL_SELECT_MULTI); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseControl((IFormElement)parent, e, f, Constants.CONTROL_SELECT_MULTI); } };
 		IElementHandler select1 = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseControl((IFormElement)parent, e, f, Constants.CONTROL_SELECT_ONE); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseControl((IFormElement)parent, e, f, Constants.CONTROL_SELECT_ONE); } };
 		IElementHandler group = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseGroup((IFormElement)parent, e, f, CONTAINER_GROUP); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseGroup((IFormElement)parent, e, f, CONTAINER_GROUP); } };
 		IElementHandler repeat = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseGroup((IFormElement)parent, e, f, CONTAINER_REPEAT); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseGroup((IFormElement)parent, e, f, CONTAINER_REPEAT); } };
 		IElementHandler groupLabel = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseGroupLabel(f, (GroupDef)parent, e); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { parseGroupLabel(f, (GroupDef)parent, e); } };
 		IElementHandler trigger = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseControl((IFormElement)parent, e, f, Constants.CONTROL_TRIGGER); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseControl((IFormElement)parent, e, f, Constants.CONTROL_TRIGGER); } };
 		IElementHandler upload = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseUpload((IFormElement)parent, e, f, Constants.CONTROL_UPLOAD); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseUpload((IFormElement)parent, e, f, Constants.CONTROL_UPLOAD); } };
 
 		groupLevelHandlers = new HashMap();
 		groupLevelHandlers.put("input", input);
@@ -181,7 +201,7 @@ public class XFormParser {
 	    
 	}
 	
-	private static void initBindHandlers() {
+	private void initBindHandlers() {
 		Enumeration en = bindHandlers.elements();
 		while(en.hasMoreElements()) {
 			IXFormBindHandler handler = (IXFormBindHandler)en.nextElement();
@@ -189,7 +209,7 @@ public class XFormParser {
 			
 		}
 	}
-	private static void processBindHandlers(FormDef formDef) {
+	private void processBindHandlers(FormDef formDef) {
 		Enumeration en = bindHandlers.elements();
 		while(en.hasMoreElements()) {
 			IXFormBindHandler handler = (IXFormBindHandler)en.nextElement();
@@ -198,7 +218,7 @@ public class XFormParser {
 		}
 	}
 
-	private static void initStateVars () {
+	private void initStateVars () {
 		modelFound = false;
 		bindingsByID = new HashMap();
 		bindings = new Vector();
@@ -253,10 +273,20 @@ public class XFormParser {
 	}*/
 
 	public static FormDef getFormDef(Document doc){
+		return new XFormParser().parse(doc);
+	}
+
+	/**
+	 * Parses an xform document. A parser holds the state of a single parse, so this
+	 * should be called only once per XFormParser.
+	 * 
+	 * @param doc the xform document
+	 * @return the parsed form
+	 */
+	public FormDef parse(Document doc){
 		FormDef formDef = new FormDef();
 		
 		initBindHandlers();
-		initStateVars();
 
 		defaultNamespace = doc.getDocumentElement().getNamespaceURI(); //getNamespaceUri(null); ???????????????
 		
@@ -277,13 +307,13 @@ public class XFormParser {
 	private static final int CONTAINER_GROUP = 1;
 	private static final int CONTAINER_REPEAT = 2;
 
-	private static void parseElement (FormDef f, Element e, Object parent, HashMap handlers) { //,
+	private void parseElement (FormDef f, Element e, Object parent, HashMap handlers) { //,
 //			boolean allowUnknownElements, boolean allowText, boolean recurseUnknown) {
 		String name = e.getNodeName();
 
 		IElementHandler eh = (IElementHandler)handlers.get(name);
 		if (eh != null) {
-			eh.handle(f, e, parent);
+			eh.handle(this, f, e, parent);
 		} else {
 			if (!name.equals("html") && !name.equals("head") && !name.equals("body")) {
 				//#if debug.output==verbose
@@ -340,7 +370,7 @@ public class XFormParser {
 	}
 
 	//for ease of parsing, we assume a model comes before the controls, which isn't necessarily mandated by the xforms spec
-	private static void parseModel (FormDef f, Element e) {
+	private void parseModel (FormDef f, Element e) {
 		Vector usedAtts = new Vector(); //no attributes parsed in title.
 		
 		
@@ -395,7 +425,7 @@ public class XFormParser {
 		
 	}
 
-	private static void saveInstanceNode (Element instance) {
+	private void saveInstanceNode (Element instance) {
 		if (instanceNode != null) {
 			System.err.println("Multiple instances not supported. Ignoring subsequent instances." + getVagueLocation(instance));
 			return;
@@ -415,9 +445,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static int serialQuestionID = 1;
-	
-	protected static QuestionDef parseUpload(IFormElement parent, Element e, FormDef f,
+	protected QuestionDef parseUpload(IFormElement parent, Element e, FormDef f,
 			int controlUpload) {
 		Vector usedAtts = new Vector();
 		QuestionDef question = parseControl(parent, e, f, controlUpload);
@@ -443,7 +471,7 @@ public class XFormParser {
         return question;
     }
 	
-	protected static QuestionDef parseControl (IFormElement parent, Element e, FormDef f, int controlType) {
+	protected QuestionDef parseControl (IFormElement parent, Element e, FormDef f, int controlType) {
 		QuestionDef question = new QuestionDef();
 		question.setID(serialQuestionID++); //until we come up with a better scheme
 		
@@ -833,7 +861,7 @@ public class XFormParser {
 		}
 	}
 
-	private static void parseItemset (FormDef f, QuestionDef q, Element e, IFormElement qparent) {
+	private void parseItemset (FormDef f, QuestionDef q, Element e, IFormElement qparent) {
 		ItemsetBinding itemset = new ItemsetBinding();
 		
 		////////////////USED FOR PARSER WARNING OUTPUT ONLY
@@ -941,7 +969,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void parseGroup (IFormElement parent, Element e, FormDef f, int groupType) {
+	private void parseGroup (IFormElement parent, Element e, FormDef f, int groupType) {
 		GroupDef group = new GroupDef();
 		group.setID(serialQuestionID++); //until we come up with a better scheme
 		IDataReference dataRef = null;
@@ -1019,7 +1047,7 @@ public class XFormParser {
 		parent.addChild(group);
 	}
 
-	private static TreeReference getFormElementRef (IFormElement fe) {
+	private TreeReference getFormElementRef (IFormElement fe) {
 		if (fe instanceof FormDef) {
 			TreeReference ref = TreeReference.rootRef();
 			ref.add(instanceNode.getNodeName(), 0);
@@ -1029,7 +1057,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static IDataReference getAbsRef (IDataReference ref, IFormElement parent) {
+	private IDataReference getAbsRef (IDataReference ref, IFormElement parent) {
 		return getAbsRef(ref, getFormElementRef(parent));
 	}
 	
@@ -1239,7 +1267,7 @@ public class XFormParser {
 		}
 	}
 
-	private static void parseBind (FormDef f, Element e) {
+	private void parseBind (FormDef f, Element e) {
 		DataBinding binding  = new DataBinding();
 		
 		Vector usedAtts = new Vector();
@@ -1386,7 +1414,7 @@ public class XFormParser {
 		return r;
 	}
 	
-	private static void addBinding (DataBinding binding) {
+	private void addBinding (DataBinding binding) {
 		bindings.addElement(binding);
 		
 		if (binding.getId() != null) {
@@ -1397,7 +1425,7 @@ public class XFormParser {
 	}
 		
 	//e is the top-level _data_ node of the instance (immediate (and only) child of <instance>)
-	private static void parseInstance (FormDef f, Element e) {
+	private void parseInstance (FormDef f, Element e) {
 		TreeElement root = buildInstanceStructure(e, null);
 		FormInstance instanceModel = new FormInstance(root);
 		instanceModel.setName(f.getTitle());
@@ -1523,7 +1551,7 @@ public class XFormParser {
 		return element;
 	}
 	
-	private static Vector<TreeReference> getRepeatableRefs () {
+	private Vector<TreeReference> getRepeatableRefs () {
 		Vector<TreeReference> refs = new Vector<TreeReference>();
 
 		for (int i = 0; i < repeats.size(); i++) {
@@ -1555,7 +1583,7 @@ public class XFormParser {
 	// 4) generate template nodes for repeat bindings that do not have one defined explicitly
 	// 5) give a stern warning for any repeated instance nodes that do not correspond to a repeat binding
 	// 6) verify that all sets of repeated nodes are homogeneous
-	private static void processRepeats (FormInstance instance) {
+	private void processRepeats (FormInstance instance) {
 		flagRepeatables(instance);
 		processTemplates(instance);
 		checkDuplicateNodesAreRepeatable(instance.getRoot());	
@@ -1563,7 +1591,7 @@ public class XFormParser {
 	}
 
 	//flag all nodes identified by repeat bindings as repeatable
-	private static void flagRepeatables (FormInstance instance) {
+	private void flagRepeatables (FormInstance instance) {
 		Vector refs = getRepeatableRefs();
 		for (int i = 0; i < refs.size(); i++) {
 			TreeReference ref = (TreeReference)refs.elementAt(i);
@@ -1577,7 +1605,7 @@ public class XFormParser {
 		}		
 	}
 	
-	private static void processTemplates (FormInstance instance) {
+	private void processTemplates (FormInstance instance) {
 		repeatTree = buildRepeatTree(getRepeatableRefs(), instance.getRoot().getName());
 		
 		Vector missingTemplates = new Vector(); //Vector<TreeReference>
@@ -1742,7 +1770,7 @@ public class XFormParser {
 	}
 	
 	//check repeat sets for homogeneity
-	private static void checkHomogeneity (FormInstance instance) {
+	private void checkHomogeneity (FormInstance instance) {
 		Vector refs = getRepeatableRefs();
 		for (int i = 0; i < refs.size(); i++) {
 			TreeReference ref = (TreeReference)refs.elementAt(i);
@@ -1764,7 +1792,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void verifyBindings (FormDef f, FormInstance instance) {
+	private void verifyBindings (FormDef f, FormInstance instance) {
 		//check <bind>s (can't bind to '/', bound nodes actually exist)
 		for (int i = 0; i < bindings.size(); i++) {
 			DataBinding bind = (DataBinding)bindings.elementAt(i);
@@ -1837,7 +1865,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void verifyRepeatMemberBindings (IFormElement fe, FormInstance instance, GroupDef parentRepeat) {
+	private void verifyRepeatMemberBindings (IFormElement fe, FormInstance instance, GroupDef parentRepeat) {
 		if (fe.getChildren() == null)
 			return;
 		
@@ -1888,7 +1916,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void verifyItemsetBindings (FormInstance instance) {
+	private void verifyItemsetBindings (FormInstance instance) {
 		for (int i = 0; i < itemsets.size(); i++) {
 			ItemsetBinding itemset = (ItemsetBinding)itemsets.elementAt(i);
 			
@@ -1912,7 +1940,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void verifyItemsetSrcDstCompatibility (FormInstance instance) {
+	private void verifyItemsetSrcDstCompatibility (FormInstance instance) {
 		for (int i = 0; i < itemsets.size(); i++) {
 			ItemsetBinding itemset = (ItemsetBinding)itemsets.elementAt(i);
 
@@ -1942,7 +1970,7 @@ public class XFormParser {
 		}
 	}
 	
-	private static void applyInstanceProperties (FormInstance instance) {
+	private void applyInstanceProperties (FormInstance instance) {
 		for (int i = 0; i < bindings.size(); i++) {
 			DataBinding bind = (DataBinding)bindings.elementAt(i);
 			TreeReference ref = FormInstance.unpackReference(bind.getReference());
@@ -2000,7 +2028,7 @@ public class XFormParser {
 	//apply properties to instance nodes that are determined by controls bound to those nodes
 	//this should make you feel slightly dirty, but it allows us to be somewhat forgiving with the form
 	//(e.g., a select question bound to a 'text' type node) 
-	private static void applyControlProperties (FormInstance instance) {
+	private void applyControlProperties (FormInstance instance) {
 		for (int h = 0; h < 2; h++) {
 			Vector selectRefs = (h == 0 ? selectOnes : selectMultis);
 			int type = (h == 0 ? Constants.DATATYPE_CHOICE : Constants.DATATYPE_CHOICE_LIST);
@@ -2078,74 +2106,29 @@ public class XFormParser {
 	}
 	
 	private static void checkDependencyCycles (FormDef f) {
-		Vector vertices = new Vector();
-		Vector edges = new Vector();
+		DependencyGraph graph = new DependencyGraph(false);
 		
 		//build graph
 		for (Iterator e = f.triggerIndex.keySet().iterator(); e.hasNext(); ) {
 			TreeReference trigger = (TreeReference)e.next();
-			if (!vertices.contains(trigger))
-				vertices.addElement(trigger);
+			int from = graph.addVertex(trigger);
 			
 			Vector triggered = (Vector)f.triggerIndex.get(trigger);
-			Vector targets = new Vector();
 			for (int i = 0; i < triggered.size(); i++) {
 				Triggerable t = (Triggerable)triggered.elementAt(i);
 				for (int j = 0; j < t.getTargets().size(); j++) {
-					TreeReference target = (TreeReference)t.getTargets().elementAt(j);
-					if (!targets.contains(target))
-						targets.addElement(target);
+					graph.addEdge(from, graph.addVertex(t.getTargets().elementAt(j)));
 				}
 			}
-			
-			for (int i = 0; i < targets.size(); i++) {
-				TreeReference target = (TreeReference)targets.elementAt(i);
-				if (!vertices.contains(target))
-					vertices.addElement(target);
-				
-				TreeReference[] edge = {trigger, target};
-				edges.addElement(edge);
-			}
 		}
 		
 		//find cycles
-		boolean acyclic = true;
-		while (vertices.size() > 0) {
-			//determine leaf nodes
-			Vector leaves = new Vector();
-			for (int i = 0; i < vertices.size(); i++) {
-				leaves.addElement(vertices.elementAt(i));
-			}
-			for (int i = 0; i < edges.size(); i++) {
-				TreeReference[] edge = (TreeReference[])edges.elementAt(i);
-				leaves.removeElement(edge[0]);
-			}
-			
-			//if no leaf nodes while graph still has nodes, graph has cycles
-			if (leaves.size() == 0) {
-				acyclic = false;
-				break;
-			}
-
-			//remove leaf nodes and edges pointing to them
-			for (int i = 0; i < leaves.size(); i++) {
-				TreeReference leaf = (TreeReference)leaves.elementAt(i);
-				vertices.removeElement(leaf);
-			}			
-			for (int i = edges.size() - 1; i >= 0; i--) {
-				TreeReference[] edge = (TreeReference[])edges.elementAt(i);
-				if (leaves.contains(edge[1]))
-					edges.removeElementAt(i);
-			}
-		}
-		
-		if (!acyclic) {
+		Vector cycle = graph.findCycle();
+		if (cycle != null) {
+			String path = DependencyGraph.cycleToString(cycle);
 			System.err.println("XPath Dependency Cycle:");
-			for (int i = 0; i < edges.size(); i++) {
-				TreeReference[] edge = (TreeReference[])edges.elementAt(i);
-				System.err.println(edge[0].toString() + " => " + edge[1].toString());
-			}
-			throw new RuntimeException("Dependency cycles amongst the xpath expressions in relevant/calculate");
+			System.err.println(path);
+			throw new RuntimeException("Dependency cycles amongst the xpath expressions in relevant/calculate: " + path);
 		}
 	}
 	
@@ -2212,7 +2195,7 @@ public class XFormParser {
 	}
 	public static void registerControlType(String type, final int typeId) {
 		IElementHandler newHandler = new IElementHandler () {
-			public void handle (FormDef f, Element e, Object parent) { parseControl((IFormElement)parent, e, f, typeId); } };
+			public void handle (XFormParser p, FormDef f, Element e, Object parent) { p.parseControl((IFormElement)parent, e, f, typeId); } };
 		topLevelHandlers.put(type, newHandler);
 		groupLevelHandlers.put(type, newHandler);
 	}
@@ -2223,7 +2206,7 @@ public class XFormParser {
 	}
 
 	public static void registerBindHandler(IXFormBindHandler handler) {
-		bindHandlers.addElement(handler);
+		registeredBindHandlers.addElement(handler);
 	}
 
 	public static String getXMLText (Node n, boolean trim) {
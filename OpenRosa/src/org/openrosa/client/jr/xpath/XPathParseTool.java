@@ -16,6 +16,9 @@
 
 package org.openrosa.client.jr.xpath;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.openrosa.client.jr.xpath.expr.XPathExpression;
 import org.openrosa.client.jr.xpath.parser.Lexer;
 import org.openrosa.client.jr.xpath.parser.Parser;
@@ -39,8 +42,69 @@ public class XPathParseTool {
 			"org.javarosa.xpath.expr.XPathVariableReference"
 	};
 
+	private static int cacheCapacity = 512;
+	private static int cacheHits = 0;
+	private static int cacheMisses = 0;
+	
+	//<String, XPathExpression>; least-recently-used expressions are evicted once the cache is full
+	private static final LinkedHashMap parseCache = new LinkedHashMap(64, 0.75f, true) {
+		protected boolean removeEldestEntry (Map.Entry eldest) {
+			return size() > cacheCapacity;
+		}
+	};
+	
+	/**
+	 * Parse an xpath expression. Parsed expressions are cached by their source
+	 * text, since forms repeat the same relevant/constraint/calculate strings on
+	 * many binds; the returned tree is shared between callers and must not be
+	 * modified. Syntax errors are not cached.
+	 */
 	public static XPathExpression parseXPath (String xpath) throws XPathSyntaxException {
-		return Parser.parse(Lexer.lex(xpath));
+		synchronized (parseCache) {
+			XPathExpression cached = (XPathExpression)parseCache.get(xpath);
+			if (cached != null) {
+				cacheHits++;
+				return cached;
+			}
+			cacheMisses++;
+		}
+		
+		XPathExpression expr = Parser.parse(Lexer.lex(xpath));
+		
+		synchronized (parseCache) {
+			if (cacheCapacity > 0) {
+				parseCache.put(xpath, expr);
+			}
+		}
+		return expr;
+	}
+	
+	/**
+	 * @param capacity maximum number of parsed expressions to keep; 0 disables caching
+	 */
+	public static void setCacheCapacity (int capacity) {
+		synchronized (parseCache) {
+			cacheCapacity = capacity;
+			if (parseCache.size() > capacity) {
+				parseCache.clear();
+			}
+		}
+	}
+	
+	public static void clearCache () {
+		synchronized (parseCache) {
+			parseCache.clear();
+			cacheHits = 0;
+			cacheMisses = 0;
+		}
+	}
+	
+	public static int getCacheHits () {
+		return cacheHits;
+	}
+	
+	public static int getCacheMisses () {
+		return cacheMisses;
 	}
 	
 	//for running from command line
@@ -37,6 +37,7 @@ import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
 import org.openrosa.client.jr.xpath.IExprDataType;
 import org.openrosa.client.jr.xpath.XPathTypeMismatchException;
 import org.openrosa.client.jr.xpath.XPathUnhandledException;
+import org.openrosa.client.jr.xpath.parser.XPathSyntaxException;
 
 
 /**
@@ -51,14 +52,112 @@ import org.openrosa.client.jr.xpath.XPathUnhandledException;
  *
  */
 public class XPathFuncExpr extends XPathExpression {
+	/* opcodes for the built-in function suite */
+	private static final int OP_CUSTOM = -1;		//not a built-in; resolved against the custom handlers at eval time
+	private static final int OP_BAD_ARITY = -2;	//name of a built-in, but with the wrong number of arguments; rejected when the node is built
+	private static final int OP_TRUE = 0;
+	private static final int OP_FALSE = 1;
+	private static final int OP_BOOLEAN = 2;
+	private static final int OP_NUMBER = 3;
+	private static final int OP_INT = 4;
+	private static final int OP_STRING = 5;
+	private static final int OP_DATE = 6;
+	private static final int OP_NOT = 7;
+	private static final int OP_BOOLEAN_FROM_STRING = 8;
+	private static final int OP_IF = 9;
+	private static final int OP_SELECTED = 10;
+	private static final int OP_COUNT_SELECTED = 11;
+	private static final int OP_COUNT = 12;
+	private static final int OP_SUM = 13;
+	private static final int OP_TODAY = 14;
+	private static final int OP_NOW = 15;
+	private static final int OP_CONCAT = 16;
+	private static final int OP_JOIN = 17;
+	private static final int OP_CHECKLIST = 18;
+	private static final int OP_WEIGHTED_CHECKLIST = 19;
+	private static final int OP_REGEX = 20;
+	
+	private static final HashMap builtins = new HashMap(); //<String, Integer>
+	
+	static {
+		builtins.put("true", new Integer(OP_TRUE));
+		builtins.put("false", new Integer(OP_FALSE));
+		builtins.put("boolean", new Integer(OP_BOOLEAN));
+		builtins.put("number", new Integer(OP_NUMBER));
+		builtins.put("int", new Integer(OP_INT)); //non-standard
+		builtins.put("string", new Integer(OP_STRING));
+		builtins.put("date", new Integer(OP_DATE)); //non-standard
+		builtins.put("not", new Integer(OP_NOT));
+		builtins.put("boolean-from-string", new Integer(OP_BOOLEAN_FROM_STRING));
+		builtins.put("if", new Integer(OP_IF)); //non-standard
+		builtins.put("selected", new Integer(OP_SELECTED)); //non-standard
+		builtins.put("is-selected", new Integer(OP_SELECTED)); //non-standard
+		builtins.put("count-selected", new Integer(OP_COUNT_SELECTED)); //non-standard
+		builtins.put("count", new Integer(OP_COUNT));
+		builtins.put("sum", new Integer(OP_SUM));
+		builtins.put("today", new Integer(OP_TODAY));
+		builtins.put("now", new Integer(OP_NOW));
+		builtins.put("concat", new Integer(OP_CONCAT));
+		builtins.put("join", new Integer(OP_JOIN));
+		builtins.put("checklist", new Integer(OP_CHECKLIST)); //non-standard
+		builtins.put("weighted-checklist", new Integer(OP_WEIGHTED_CHECKLIST)); //non-standard
+		builtins.put("regex", new Integer(OP_REGEX)); //non-standard
+	}
+	
 	public XPathQName id;			//name of the function
 	public XPathExpression[] args;	//argument list
+	
+	private int opcode;				//resolved from id and the argument count when the node is built
+	private Class[] argTypes;		//static types of the arguments, or null if any is only known at eval time
 
 	public XPathFuncExpr () { } //for deserialization
 	
-	public XPathFuncExpr (XPathQName id, XPathExpression[] args) {
+	/**
+	 * @throws XPathSyntaxException if the function is a built-in and is given the wrong number of arguments
+	 */
+	public XPathFuncExpr (XPathQName id, XPathExpression[] args) throws XPathSyntaxException {
 		this.id = id;
 		this.args = args;
+		this.opcode = resolveOpcode(id.toString(), args.length);
+		this.argTypes = staticArgTypes(args);
+		
+		if (opcode == OP_BAD_ARITY) {
+			throw new XPathSyntaxException(badArityMessage());
+		}
+	}
+	
+	/**
+	 * Map a function name and argument count onto a built-in opcode
+	 * 
+	 * @return the opcode; OP_BAD_ARITY if the name is a built-in but the argument count is
+	 * not one it accepts; OP_CUSTOM if the name is not a built-in
+	 */
+	private static int resolveOpcode (String name, int argc) {
+		Integer op = (Integer)builtins.get(name);
+		if (op == null) {
+			return OP_CUSTOM;
+		}
+		
+		boolean arityOk;
+		switch (op.intValue()) {
+		case OP_TRUE: case OP_FALSE: case OP_TODAY: case OP_NOW:
+			arityOk = (argc == 0); break;
+		case OP_IF:
+			arityOk = (argc == 3); break;
+		case OP_SELECTED: case OP_REGEX:
+			arityOk = (argc == 2); break;
+		case OP_CONCAT:
+			arityOk = true; break;
+		case OP_JOIN:
+			arityOk = (argc >= 1); break;
+		case OP_CHECKLIST:
+			arityOk = (argc >= 2); break;
+		case OP_WEIGHTED_CHECKLIST:
+			arityOk = (argc >= 2 && argc % 2 == 0); break;
+		default:
+			arityOk = (argc == 1); break;
+		}
+		return (arityOk ? op.intValue() : OP_BAD_ARITY);
 	}
 	
 	public String toString () {
@@ -98,7 +197,18 @@ public class XPathFuncExpr extends XPathExpression {
 		
 		args = new XPathExpression[v.size()];
 		for (int i = 0; i < args.length; i++)
-			args[i] = (XPathExpression)v.elementAt(i);		
+			args[i] = (XPathExpression)v.elementAt(i);
+		
+		opcode = resolveOpcode(id.toString(), args.length);
+		argTypes = staticArgTypes(args);
+		
+		if (opcode == OP_BAD_ARITY) {
+			throw new DeserializationException(badArityMessage());
+		}
+	}
+	
+	private String badArityMessage () {
+		return "function \'" + id.toString() + "\' does not take " + args.length + " argument(s)";
 	}
 
 	public void writeExternal(DataOutputStream out) throws IOException {
@@ -113,8 +223,8 @@ public class XPathFuncExpr extends XPathExpression {
 	/**
 	 * Evaluate the function call.
 	 * 
-	 * First check if the function is a member of the built-in function suite. If not, then check
-	 * for any custom handlers registered to handler the function. If not, throw and exception.
+	 * Built-in functions are dispatched on the opcode resolved when this node was built. Any
+	 * other function is looked up among the custom handlers registered in the evaluation context.
 	 * 
 	 * Both function name and appropriate arguments are taken into account when finding a suitable
 	 * handler. For built-in functions, the number of arguments must match; for custom functions,
@@ -122,67 +232,47 @@ public class XPathFuncExpr extends XPathExpression {
 	 * 
 	 */
 	public Object eval (FormInstance model, EvaluationContext evalContext) {
-		String name = id.toString();
 		Object[] argVals = new Object[args.length];
-		
-		HashMap funcHandlers = evalContext.getFunctionHandlers();
-		
 		for (int i = 0; i < args.length; i++) {
 			argVals[i] = args[i].eval(model, evalContext);
 		}
 		
-		//check built-in functions
-		if (name.equals("true") && args.length == 0) {
-			return Boolean.TRUE;
-		} else if (name.equals("false") && args.length == 0) {
-			return Boolean.FALSE;
-		} else if (name.equals("boolean") && args.length == 1) {
-			return toBoolean(argVals[0]);
-		} else if (name.equals("number") && args.length == 1) {
-			return toNumeric(argVals[0]);
-		} else if (name.equals("int") && args.length == 1) { //non-standard
-			return toInt(argVals[0]);
-		} else if (name.equals("string") && args.length == 1) {
-			return toString(argVals[0]);			
-		} else if (name.equals("date") && args.length == 1) { //non-standard
-			return toDate(argVals[0]);				
-		} else if (name.equals("not") && args.length == 1) {
-			return boolNot(argVals[0]);
-		} else if (name.equals("boolean-from-string") && args.length == 1) {
-			return boolStr(argVals[0]);
-		} else if (name.equals("if") && args.length == 3) { //non-standard
-			return ifThenElse(argVals[0], argVals[1], argVals[2]);	
-		} else if ((name.equals("selected") || name.equals("is-selected")) && args.length == 2) { //non-standard
-			return multiSelected(argVals[0], argVals[1]);
-		} else if (name.equals("count-selected") && args.length == 1) { //non-standard
-			return countSelected(argVals[0]);		
-		} else if (name.equals("count") && args.length == 1) {
-			return count(argVals[0]);
-		} else if (name.equals("sum") && args.length == 1) {
-			return sum(model, argVals[0]);
-		} else if (name.equals("today") && args.length == 0) {
-			return DateUtils.roundDate(new Date());
-		} else if (name.equals("now") && args.length == 0) {
-			return new Date();
-		} else if (name.equals("concat")) {
+		switch (opcode) {
+		case OP_TRUE: return Boolean.TRUE;
+		case OP_FALSE: return Boolean.FALSE;
+		case OP_BOOLEAN: return toBoolean(argVals[0]);
+		case OP_NUMBER: return toNumeric(argVals[0]);
+		case OP_INT: return toInt(argVals[0]);
+		case OP_STRING: return toString(argVals[0]);
+		case OP_DATE: return toDate(argVals[0]);
+		case OP_NOT: return boolNot(argVals[0]);
+		case OP_BOOLEAN_FROM_STRING: return boolStr(argVals[0]);
+		case OP_IF: return ifThenElse(argVals[0], argVals[1], argVals[2]);
+		case OP_SELECTED: return multiSelected(argVals[0], argVals[1]);
+		case OP_COUNT_SELECTED: return countSelected(argVals[0]);
+		case OP_COUNT: return count(argVals[0]);
+		case OP_SUM: return sum(model, argVals[0]);
+		case OP_TODAY: return DateUtils.roundDate(new Date());
+		case OP_NOW: return new Date();
+		case OP_CONCAT:
 			if (args.length == 1 && argVals[0] instanceof Vector) {
 				return join("", nodesetToArgList(model, (Vector)argVals[0]));
 			} else {
 				return join("", argVals);
 			}
-		} else if (name.equals("join") && args.length >= 1) {
+		case OP_JOIN:
 			if (args.length == 2 && argVals[1] instanceof Vector) {
 				return join(argVals[0], nodesetToArgList(model, (Vector)argVals[1]));
 			} else {
 				return join(argVals[0], subsetArgList(argVals, 1));
 			}
-		} else if (name.equals("checklist") && args.length >= 2) { //non-standard
+		case OP_CHECKLIST:
 			if (args.length == 3 && argVals[2] instanceof Vector) {
 				return checklist(argVals[0], argVals[1], nodesetToArgList(model, (Vector)argVals[2]));
 			} else {
 				return checklist(argVals[0], argVals[1], subsetArgList(argVals, 2));
 			}
-		} else if (name.equals("weighted-checklist") && args.length >= 2 && args.length % 2 == 0) { //non-standard
+		case OP_WEIGHTED_CHECKLIST:
 			if (args.length == 4 && argVals[2] instanceof Vector && argVals[3] instanceof Vector) {
 				Object[] factors = nodesetToArgList(model, (Vector)argVals[2]);
 				Object[] weights = nodesetToArgList(model, (Vector)argVals[3]);
@@ -193,17 +283,105 @@ public class XPathFuncExpr extends XPathExpression {
 			} else {
 				return checklistWeighted(argVals[0], argVals[1], subsetArgList(argVals, 2, 2), subsetArgList(argVals, 3, 2));
 			}
-		} else if (name.equals("regex") && args.length == 2) { //non-standard
-			return regex(argVals[0], argVals[1]);
-		} else {
-			//check for custom handler
-			IFunctionHandler handler = (IFunctionHandler)funcHandlers.get(name);
-			if (handler != null) {
-				return evalCustomFunction(handler, argVals);
+		case OP_REGEX: return regex(argVals[0], argVals[1]);
+		default:
+			IFunctionHandler handler = getCustomHandler(evalContext.getFunctionHandlers());
+			Class[] prototype = prematchPrototype(handler);
+			if (prototype != null) {
+				return handler.eval(coerceArgs(argVals, prototype));
 			} else {
-				throw new XPathUnhandledException("function \'" + name + "\'");
+				return evalCustomFunction(handler, argVals);
+			}
+		}
+	}
+	
+	/**
+	 * Look up the custom handler registered for the name of this call in the evaluation context.
+	 * Nothing about the handler is kept on this node, since parse trees are shared between forms
+	 * through the parse cache and each form may register its own handlers.
+	 * 
+	 * Fails if there is no handler.
+	 */
+	private IFunctionHandler getCustomHandler (HashMap funcHandlers) {
+		String name = id.toString();
+		IFunctionHandler handler = (IFunctionHandler)funcHandlers.get(name);
+		
+		if (handler == null) {
+			throw new XPathUnhandledException("function \'" + name + "\'");
+		}
+		return handler;
+	}
+	
+	/**
+	 * If the types of all the arguments are known from the expression tree, pick the handler
+	 * prototype they will match, so that evaluation can skip the prototype search.
+	 * 
+	 * Prototypes are tried in order at run time, so the search stops as soon as an earlier
+	 * prototype of the same arity takes a type other than Boolean, Double or String. Whether
+	 * such a prototype matches (eg. a string which may or may not parse as a date) is only
+	 * known from the argument values.
+	 * 
+	 * @return the prototype, or null if it has to be chosen from the actual argument values
+	 */
+	private Class[] prematchPrototype (IFunctionHandler handler) {
+		if (argTypes == null) {
+			return null;
+		}
+		
+		for (Enumeration e = handler.getPrototypes().elements(); e.hasMoreElements(); ) {
+			Class[] prototype = (Class[])e.nextElement();
+			if (prototype.length != argTypes.length) {
+				continue;
+			}
+			
+			for (int i = 0; i < prototype.length; i++) {
+				//conversions to boolean, number and string always succeed for these argument types
+				if (prototype[i] != Boolean.class && prototype[i] != Double.class && prototype[i] != String.class) {
+					return null;
+				}
+			}
+			return prototype;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the static types of all the arguments, or null if any of them is not known
+	 */
+	private static Class[] staticArgTypes (XPathExpression[] args) {
+		Class[] types = new Class[args.length];
+		for (int i = 0; i < args.length; i++) {
+			types[i] = staticType(args[i]);
+			if (types[i] == null) {
+				return null;
 			}
 		}
+		return types;
+	}
+	
+	/**
+	 * @return the type the expression always evaluates to (Boolean, Double or String), or null
+	 * if it can't be known without evaluating it
+	 */
+	private static Class staticType (XPathExpression x) {
+		if (x instanceof XPathStringLiteral) {
+			return String.class;
+		} else if (x instanceof XPathNumericLiteral || x instanceof XPathArithExpr || x instanceof XPathNumNegExpr) {
+			return Double.class;
+		} else if (x instanceof XPathBoolExpr || x instanceof XPathCmpExpr || x instanceof XPathEqExpr) {
+			return Boolean.class;
+		} else if (x instanceof XPathFuncExpr) {
+			switch (((XPathFuncExpr)x).opcode) {
+			case OP_TRUE: case OP_FALSE: case OP_BOOLEAN: case OP_NOT: case OP_BOOLEAN_FROM_STRING:
+			case OP_SELECTED: case OP_CHECKLIST: case OP_WEIGHTED_CHECKLIST: case OP_REGEX:
+				return Boolean.class;
+			case OP_NUMBER: case OP_INT: case OP_COUNT_SELECTED: case OP_COUNT: case OP_SUM:
+				return Double.class;
+			case OP_STRING: case OP_CONCAT: case OP_JOIN:
+				return String.class;
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -224,7 +402,7 @@ public class XPathFuncExpr extends XPathExpression {
 		Object[] typedArgs = null;
 
 		while (typedArgs == null && e.hasMoreElements()) {
-			typedArgs = null; //matchPrototype(args, (Class[])e.nextElement());
+			typedArgs = matchPrototype(args, (Class[])e.nextElement());
 		}
 
 		if (typedArgs != null) {
@@ -236,6 +414,47 @@ public class XPathFuncExpr extends XPathExpression {
 		}
 	}
 	
+	/**
+	 * Coerce the arguments to the types of a prototype
+	 * 
+	 * @return the typed arguments, or null if they don't fit the prototype
+	 */
+	private static Object[] matchPrototype (Object[] args, Class[] prototype) {
+		if (prototype.length != args.length) {
+			return null;
+		}
+		
+		try {
+			return coerceArgs(args, prototype);
+		} catch (XPathTypeMismatchException xptme) {
+			return null;
+		}
+	}
+	
+	//no Class.isAssignableFrom() under GWT, so only exact classes and the xpath conversions are considered
+	private static Object[] coerceArgs (Object[] args, Class[] prototype) {
+		Object[] typed = new Object[args.length];
+		for (int i = 0; i < prototype.length; i++) {
+			if (args[i] != null && args[i].getClass() == prototype[i]) {
+				typed[i] = args[i];
+			} else if (prototype[i] == Boolean.class) {
+				typed[i] = toBoolean(args[i]);
+			} else if (prototype[i] == Double.class) {
+				typed[i] = toNumeric(args[i]);
+			} else if (prototype[i] == String.class) {
+				typed[i] = toString(args[i]);
+			} else if (prototype[i] == Date.class) {
+				typed[i] = toDate(args[i]);
+				if (!(typed[i] instanceof Date)) {
+					throw new XPathTypeMismatchException("converting to date");
+				}
+			} else {
+				throw new XPathTypeMismatchException("converting to " + prototype[i].getName());
+			}
+		}
+		return typed;
+	}
+	
 	
 	/******** HANDLERS FOR BUILT-IN FUNCTIONS ********
 	 * 
@@ -142,15 +142,11 @@ public class XPathPathExpr extends XPathExpression {
 		boolean nodeset = forceNodeset;
 		if (!nodeset) {
 			//is this a nodeset? it is if the ref contains any unbound multiplicities AND the unbound nodes are repeatable
-			//the way i'm calculating this sucks; there has got to be an easier way to find out if a node is repeatable
-			TreeReference repeatTestRef = TreeReference.rootRef();
+			boolean[] repeatable = m.getRepeatableSteps(ref);
 			for (int i = 0; i < ref.size(); i++) {
-				repeatTestRef.add(ref.getName(i), ref.getMultiplicity(i));
-				if (ref.getMultiplicity(i) == TreeReference.INDEX_UNBOUND) {
-					if (m.getTemplate(repeatTestRef) != null) {
-						nodeset = true;
-						break;
-					}
+				if (ref.getMultiplicity(i) == TreeReference.INDEX_UNBOUND && repeatable[i]) {
+					nodeset = true;
+					break;
 				}
 			}
 		}
@@ -159,12 +155,14 @@ public class XPathPathExpr extends XPathExpression {
 			Vector nodesetRefs = m.expandReference(ref);
 			
 			//to fix conditions based on non-relevant data, filter the nodeset by relevancy
+			int kept = 0;
 			for (int i = 0; i < nodesetRefs.size(); i++) {
-				if (!m.resolveReference((TreeReference)nodesetRefs.elementAt(i)).isRelevant()) {
-					nodesetRefs.removeElementAt(i);
-					i--;
+				Object nodeRef = nodesetRefs.elementAt(i);
+				if (m.resolveReference((TreeReference)nodeRef).isRelevant()) {
+					nodesetRefs.setElementAt(nodeRef, kept++);
 				}
 			}
+			nodesetRefs.setSize(kept);
 			
 			return nodesetRefs;
 		} else {
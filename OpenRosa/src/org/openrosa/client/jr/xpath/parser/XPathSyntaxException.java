@@ -18,4 +18,11 @@ package org.openrosa.client.jr.xpath.parser;
 
 public class XPathSyntaxException extends Exception {
 
+	public XPathSyntaxException () {
+		super();
+	}
+	
+	public XPathSyntaxException (String message) {
+		super(message);
+	}
 }
@@ -15,6 +15,9 @@ import com.google.gwt.xml.client.Element;
  */
 public class Calculation implements Serializable{
 
+	/** Restamped whenever the question or expression of this calculation changes. */
+	private int changeStamp = FormDef.nextChangeStamp();
+
 	/** The unique identifier of the question whose value to calculate. */
 	private int questionId = ModelConstants.NULL_ID;
 	
@@ -37,6 +40,7 @@ public class Calculation implements Serializable{
 	}
 
 	public void setQuestionId(int questionId) {
+		markChanged();
 		this.questionId = questionId;
 	}
 
@@ -45,6 +49,7 @@ public class Calculation implements Serializable{
 	}
 
 	public void setCalculateExpression(String calculateExpression) {
+		markChanged();
 		this.calculateExpression = calculateExpression;
 	}
 	
@@ -66,4 +71,15 @@ public class Calculation implements Serializable{
 			node.setAttribute(XformConstants.ATTRIBUTE_NAME_CALCULATE,expr);
 		}
 	}
+
+	/**
+	 * Gets the stamp of the last change to this rule which its xforms nodes need updating for.
+	 */
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
@@ -16,6 +16,9 @@ import com.google.gwt.i18n.client.DateTimeFormat;
  */
 public class Condition implements Serializable{
 
+	/** Restamped whenever this condition changes, marking the rule which owns it as changed too. */
+	private int changeStamp = FormDef.nextChangeStamp();
+
 	/** The unique identifier of the question referenced by this condition. */
 	private int questionId = ModelConstants.NULL_ID;
 
@@ -77,6 +80,7 @@ public class Condition implements Serializable{
 		return operator;
 	}
 	public void setOperator(int operator) {
+		markChanged();
 		this.operator = operator;
 	}
 	public int getFunction() {
@@ -84,6 +88,7 @@ public class Condition implements Serializable{
 	}
 
 	public void setFunction(int function) {
+		markChanged();
 		this.function = function;
 	}
 
@@ -91,12 +96,14 @@ public class Condition implements Serializable{
 		return questionId;
 	}
 	public void setQuestionId(int questionId) {
+		markChanged();
 		this.questionId = questionId;
 	}
 	public String getValue() {
 		return value;
 	}
 	public void setValue(String value) {
+		markChanged();
 		this.value = value;
 	}
 	public int getId() {
@@ -111,6 +118,7 @@ public class Condition implements Serializable{
 	}
 
 	public void setSecondValue(String secondValue) {
+		markChanged();
 		this.secondValue = secondValue;
 	}
 
@@ -575,11 +583,13 @@ public class Condition implements Serializable{
 	 * @param newValue the new value.
 	 */
 	public void updateValue(String origValue, String newValue){
+		markChanged();
 		if(origValue.equals(value))
 			value = newValue;
 	}
 
 	public void setValueQtnDef(QuestionDef valueQtnDef){
+		markChanged();
 		this.valueQtnDef = valueQtnDef;
 	}
 
@@ -621,4 +631,15 @@ public class Condition implements Serializable{
 
 		return null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Gets the stamp of the last change to this condition which its xforms nodes need updating for.
+	 */
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
+}
@@ -0,0 +1,68 @@
+package org.openrosa.client.model;
+
+
+/**
+ * A summary of what FormDef.updateDoc() has written into the xforms document.
+ *
+ * @author daniel
+ *
+ */
+public class DocChanges {
+
+	/** True if every element and rule was written, as opposed to only the changed ones. */
+	private boolean full;
+
+	/** The number of questions and groups whose nodes were updated, including those of their kids. */
+	private int elementCount = 0;
+
+	/** The number of skip, validation, dynamic option and calculation rules written. */
+	private int ruleCount = 0;
+
+	/** True if the itext references of the labels were refreshed without updating their elements. */
+	private boolean itextRefsRefreshed = false;
+
+
+	public DocChanges(boolean full){
+		this.full = full;
+	}
+
+	public boolean isFull(){
+		return full;
+	}
+
+	public int getElementCount(){
+		return elementCount;
+	}
+
+	public int getRuleCount(){
+		return ruleCount;
+	}
+
+	public boolean isItextRefsRefreshed(){
+		return itextRefsRefreshed;
+	}
+
+	/**
+	 * Checks if nothing was written at all.
+	 */
+	public boolean isEmpty(){
+		return !full && elementCount == 0 && ruleCount == 0 && !itextRefsRefreshed;
+	}
+
+	void elementUpdated(){
+		elementCount++;
+	}
+
+	void ruleUpdated(){
+		ruleCount++;
+	}
+
+	void itextRefsRefreshed(){
+		itextRefsRefreshed = true;
+	}
+
+	public String toString(){
+		return (full ? "full" : "incremental") + " update: " + elementCount + " elements, " + ruleCount + " rules"
+			+ (itextRefsRefreshed ? ", itext refs refreshed" : "");
+	}
+}
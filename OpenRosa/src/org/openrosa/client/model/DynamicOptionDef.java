@@ -25,6 +25,9 @@ import com.google.gwt.xml.client.Element;
  */
 public class DynamicOptionDef  implements Serializable{
 
+	/** Restamped whenever the question or option lists of this definition change. */
+	private int changeStamp = FormDef.nextChangeStamp();
+
 	/** The question whose values are determined by or dependent on the answer of another 
 	 * (parent) question. In other wards this question must be of type Single Select Dynamic.
 	 *  This is the question we refer to as the child in this relationship.
@@ -83,6 +86,7 @@ public class DynamicOptionDef  implements Serializable{
 	}
 
 	public void setQuestionId(int questionId) {
+		markChanged();
 		this.questionId = questionId;
 	}
 
@@ -91,6 +95,7 @@ public class DynamicOptionDef  implements Serializable{
 	}
 
 	public void setParentToChildOptions(HashMap<Integer, List<OptionDef>> parentToChildOptions) {
+		markChanged();
 		this.parentToChildOptions = parentToChildOptions;
 	}
 
@@ -135,6 +140,7 @@ public class DynamicOptionDef  implements Serializable{
 	 * @param list the option list.
 	 */
 	public void setOptionList(Integer optionId, List<OptionDef> list){
+		markChanged();
 		if(parentToChildOptions == null)
 			parentToChildOptions = new HashMap<Integer, List<OptionDef>>();
 		parentToChildOptions.put(optionId, list);
@@ -146,6 +152,7 @@ public class DynamicOptionDef  implements Serializable{
 	 * @param optionId the identifier of the parent question option.
 	 */
 	public void removeOptionList(Integer optionId){
+		markChanged();
 		parentToChildOptions.remove(optionId);
 	}
 
@@ -194,6 +201,7 @@ public class DynamicOptionDef  implements Serializable{
 	 * @param node the xforms node.
 	 */
 	public void setDataNode(Element node){
+		markChanged();
 		this.dataNode = node;
 	}
 
@@ -419,6 +427,7 @@ public class DynamicOptionDef  implements Serializable{
 	 * 
 	 */
 	public void refresh(FormDef dstFormDef, FormDef srcFormDef,DynamicOptionDef newDynOptionDef, DynamicOptionDef srcDynOptionDef, QuestionDef newParentQtnDef, QuestionDef oldParentQtnDef, QuestionDef oldChildQtnDef, QuestionDef newChildQtnDef){
+		markChanged();
 		parentToChildOptions = new HashMap<Integer,List<OptionDef>>();
 
 		Iterator<Entry<Integer,List<OptionDef>>> iterator = srcDynOptionDef.getParentToChildOptions().entrySet().iterator();
@@ -462,4 +471,20 @@ public class DynamicOptionDef  implements Serializable{
 		
 		return newList;
 	}
+
+	/**
+	 * Gets the stamp of the last change to this definition which its xforms nodes need updating for.
+	 * Changes to the text or binding of its options are stamped on the options themselves.
+	 */
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	/**
+	 * Records that an option list got from getOptionList() has had options added, removed
+	 * or moved in place.
+	 */
+	public void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
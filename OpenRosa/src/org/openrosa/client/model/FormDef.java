@@ -3,8 +3,11 @@ package org.openrosa.client.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 import java.util.Map.Entry;
 
@@ -12,6 +15,8 @@ import org.openrosa.client.OpenRosaConstants;
 import org.openrosa.client.model.ModelConstants;
 import org.openrosa.client.util.FormUtil;
 import org.openrosa.client.util.Itext;
+import org.openrosa.client.util.ItextLocale;
+import org.openrosa.client.xforms.UiElementBuilder;
 import org.openrosa.client.xforms.XformConstants;
 import org.openrosa.client.xforms.XformUtil;
 
@@ -105,6 +110,53 @@ public class FormDef implements IFormElement, Serializable{
 	public static final int INSERT_BEFORE = 0;
 	public static final int INSERT_AFTER = 1;
 
+	/** 
+	 * Bumped whenever the element tree of this form is changed in a way which the element
+	 * indexes are not updated for as it happens (e.g removals), making the form rebuild
+	 * its indexes on the next lookup. Changes which are not reported are caught by
+	 * checking each element found in the indexes before returning it.
+	 */
+	private int elementsVersion = 0;
+
+	/** The elements of this form keyed by their question ids, as found by getElement(String). */
+	private HashMap<String,IFormElement> elementsByQuestionID;
+
+	/** The elements of this form keyed by their numeric ids, as found by getElement(int). */
+	private HashMap<Integer,IFormElement> elementsById;
+
+	/** The value of elementsVersion when the element indexes were built. */
+	private int elementsIndexVersion = -1;
+
+	/** True if some question ids or numeric ids were found more than once when building the element indexes. */
+	private boolean elementsClash = false;
+
+	/** 
+	 * The last change stamp handed out. Stamps only ever grow, such that anything stamped
+	 * after updateDoc ran has a stamp greater than the one current at that time.
+	 */
+	private static int lastChangeStamp = 0;
+
+	/** 
+	 * The stamp of the last change to an element tree which only a full updateDoc deals with,
+	 * like elements being added, removed, moved or renamed.
+	 */
+	private static int structureChangeStamp = 0;
+
+	/** The value of lastChangeStamp when updateDoc last ran, or -1 if it has not. */
+	private int docUpdateStamp = -1;
+
+	/** The document which updateDoc last wrote to. */
+	private Document updatedDoc;
+
+	/** The itext modification count when updateDoc last ran. */
+	private int docUpdateItextModCount = -1;
+
+	/** True if updateDoc last ran with question answers, which the next update has to clear again. */
+	private boolean docUpdatedWithData = false;
+
+	/** The stamp of the last change to the form's own name or description template. */
+	private int changeStamp = nextChangeStamp();
+
 
 	List<IFormElement> children;
 	
@@ -177,16 +229,32 @@ public class FormDef implements IFormElement, Serializable{
 	}
 	
 	public List<String> getAllChildrenItextIDs(){
-		ArrayList<String> list = new ArrayList<String>();
 		if(children == null){ return null; }
+		Set<String> itextIDs = new LinkedHashSet<String>();
+		addAllChildrenItextIDs(itextIDs);
+		return new ArrayList<String>(itextIDs);
+	}
+	
+	public void addAllChildrenItextIDs(Set<String> itextIDs){
+		if(children == null){ return; }
 		//add self ItextID(s) for this edge case
-		list.addAll(Itext.getFullAvailableTextForms(this.getItextId()));
+		itextIDs.addAll(Itext.getFullAvailableTextForms(this.getItextId()));
 		
 		for(IFormElement child : children){
-			list.addAll(Itext.getFullAvailableTextForms(child.getItextId()));
-			list.addAll(child.getAllChildrenItextIDs()); //recurse down to children
+			itextIDs.addAll(Itext.getFullAvailableTextForms(child.getItextId()));
+			child.addAllChildrenItextIDs(itextIDs); //recurse down to children
 		}
-		return list;
+	}
+	
+	/**
+	 * Gets the itext IDs used anywhere in this form (including special forms),
+	 * collected in a single walk of the form tree.
+	 * @return the set of full itext IDs.
+	 */
+	public Set<String> getUsedItextIDs(){
+		Set<String> itextIDs = new HashSet<String>();
+		addAllChildrenItextIDs(itextIDs);
+		return itextIDs;
 	}
 
 	public SkipRule getSkipRuleAt(int index) {
@@ -212,6 +280,7 @@ public class FormDef implements IFormElement, Serializable{
 	}
 
 	public void setName(String name) {
+		changeStamp = nextChangeStamp(); //written to the data node by updateDoc.
 		this.name = name;
 	}
 
@@ -285,6 +354,7 @@ public class FormDef implements IFormElement, Serializable{
 	}
 
 	public void setDescriptionTemplate(String descriptionTemplate) {
+		changeStamp = nextChangeStamp();
 		this.descriptionTemplate = descriptionTemplate;
 	}
 
@@ -392,9 +462,18 @@ public class FormDef implements IFormElement, Serializable{
 	/**
 	 * Updates the xforms document with the current changes in the form.
 	 * 
+	 * Only the elements and rules which have changed since the last update are written,
+	 * unless elements have been added, removed, moved or renamed since then, the form is
+	 * now in a different document, or answers are to be saved too or were on the last
+	 * update. In those cases everything is written.
+	 * 
 	 * @param withData set to true if you want question answers to also be saved as part of the xform.
+	 * @return a summary of what has been written.
 	 */
-	public void updateDoc(boolean withData){
+	public DocChanges updateDoc(boolean withData){
+		int since = docUpdateStamp;
+		boolean full = withData || docUpdatedWithData || since < 0 || doc != updatedDoc || structureChangeStamp > since || changeStamp > since;
+
 		dataNode.setAttribute(XformConstants.ATTRIBUTE_NAME_NAME, name);
 
 		String sid = dataNode.getAttribute(XformConstants.ATTRIBUTE_NAME_ID);
@@ -403,12 +482,16 @@ public class FormDef implements IFormElement, Serializable{
 		if(!dataNodeName.equalsIgnoreCase(questionID)){
 			dataNode = XformUtil.renameNode(dataNode,questionID);
 			updateDataNodes();
+			full = true; //every nodeset path has changed.
 		}
 
 		if(dataNode != null){
 			if(descriptionTemplate == null || descriptionTemplate.trim().length() == 0)
 				dataNode.removeAttribute(XformConstants.ATTRIBUTE_NAME_DESCRIPTION_TEMPLATE);
 		}
+
+		DocChanges changes = new DocChanges(full);
+		boolean itextChanged = ItextLocale.getModCount() != docUpdateItextModCount;
 		
 		if(children != null){
 			if(bodyNode == null && children.size() > 0){
@@ -417,24 +500,44 @@ public class FormDef implements IFormElement, Serializable{
 			
 			for(int i=0; i<children.size(); i++){
 				IFormElement element = children.get(i);
-				if(element instanceof GroupDef)
-					((GroupDef)element).updateDoc(doc,bodyNode,this,dataNode,modelNode,withData,dataNodeName);
-				else
-					((QuestionDef)element).updateDoc(doc,xformsNode,this,dataNode,modelNode,bodyNode,true,withData, dataNodeName);;
+				if(element instanceof GroupDef){
+					if(full || element.getChangeStamp() > since){
+						((GroupDef)element).updateDoc(doc,bodyNode,this,dataNode,modelNode,withData,dataNodeName);
+						changes.elementUpdated();
+					}
+					else
+						((GroupDef)element).updateChangedDoc(doc,bodyNode,this,dataNode,modelNode,dataNodeName,since,changes);
+				}
+				else if(full || isChangedSince(element, since)){
+					((QuestionDef)element).updateDoc(doc,xformsNode,this,dataNode,modelNode,bodyNode,true,withData, dataNodeName);
+					changes.elementUpdated();
+				}
 			}
 		}
 
+		if(!full && itextChanged){
+			//Labels only get itext refs for ids which have translations, and those may have just been added.
+			refreshItextRefs(children);
+			changes.itextRefsRefreshed();
+		}
+
 		if(skipRules != null){
 			for(int i=0; i<skipRules.size(); i++){
 				SkipRule skipRule = (SkipRule)skipRules.elementAt(i);
-				skipRule.updateDoc(this, this.getDoc());
+				if(full || isSkipRuleChanged(skipRule, since)){
+					skipRule.updateDoc(this, this.getDoc());
+					changes.ruleUpdated();
+				}
 			}
 		}
 
 		if(validationRules != null){
 			for(int i=0; i<validationRules.size(); i++){
 				ValidationRule validationRule = (ValidationRule)validationRules.elementAt(i);
-				validationRule.updateDoc(this);
+				if(full || itextChanged || isValidationRuleChanged(validationRule, since)){
+					validationRule.updateDoc(this);
+					changes.ruleUpdated();
+				}
 			}
 		}
 
@@ -447,7 +550,10 @@ public class FormDef implements IFormElement, Serializable{
 				if(questionDef == null)
 					continue;
 
-				dynamicOptionDef.updateDoc(this,questionDef);
+				if(full || isDynamicOptionDefChanged(questionDef, dynamicOptionDef, since)){
+					dynamicOptionDef.updateDoc(this,questionDef);
+					changes.ruleUpdated();
+				}
 			}
 		}
 
@@ -456,10 +562,117 @@ public class FormDef implements IFormElement, Serializable{
 				Calculation calculation = (Calculation)calculations.elementAt(i);
 				if(getElement(calculation.getQuestionId()) == null) //possibly question deleted
 					calculations.remove(i);
-				else
+				else if(full || calculation.getChangeStamp() > since || isElementChanged(calculation.getQuestionId(), since)){
 					calculation.updateDoc(this);
+					changes.ruleUpdated();
+				}
+			}
+		}
+
+		docUpdateStamp = lastChangeStamp;
+		docUpdateItextModCount = ItextLocale.getModCount();
+		docUpdatedWithData = withData;
+		updatedDoc = doc;
+
+		return changes;
+	}
+
+	/**
+	 * Checks if an element, or any of its kids or options, has changed since a given stamp.
+	 * 
+	 * @param element the element to check.
+	 * @param since the change stamp.
+	 * @return true if it has changed, else false.
+	 */
+	static boolean isChangedSince(IFormElement element, int since){
+		if(element.getChangeStamp() > since)
+			return true;
+
+		if(element instanceof QuestionDef && element.getDataType() == QuestionDef.QTN_TYPE_REPEAT){
+			RepeatQtnsDef repeatQtnsDef = ((QuestionDef)element).getRepeatQtnsDef();
+			if(repeatQtnsDef != null && repeatQtnsDef.getChangeStamp() > since)
+				return true;
+		}
+
+		List<IFormElement> kids = element.getChildren();
+		if(kids != null){
+			for(int i=0; i<kids.size(); i++){
+				if(isChangedSince(kids.get(i), since))
+					return true;
 			}
 		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if the element with a given numeric id, or any of its kids, has changed since a given stamp.
+	 */
+	private boolean isElementChanged(int id, int since){
+		IFormElement element = getElement(id);
+		return element != null && isChangedSince(element, since);
+	}
+
+	private boolean isConditionsChanged(Vector conditions, int since){
+		if(conditions == null)
+			return false;
+
+		for(int i=0; i<conditions.size(); i++){
+			Condition condition = (Condition)conditions.elementAt(i);
+			if(condition.getChangeStamp() > since || isElementChanged(condition.getQuestionId(), since))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean isSkipRuleChanged(SkipRule skipRule, int since){
+		if(skipRule.getChangeStamp() > since || isConditionsChanged(skipRule.getConditions(), since))
+			return true;
+
+		for(int i=0; i<skipRule.getActionTargetCount(); i++){
+			if(isElementChanged(skipRule.getActionTargetAt(i).intValue(), since))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a dynamic option list, one of its options, or its parent or child question
+	 * has changed since a given stamp.
+	 */
+	private boolean isDynamicOptionDefChanged(QuestionDef parentQuestionDef, DynamicOptionDef dynamicOptionDef, int since){
+		if(dynamicOptionDef.getChangeStamp() > since || isChangedSince(parentQuestionDef, since) || isElementChanged(dynamicOptionDef.getQuestionId(), since))
+			return true;
+
+		List<OptionDef> options = dynamicOptionDef.getOptions();
+		if(options != null){
+			for(int i=0; i<options.size(); i++){
+				if(options.get(i).getChangeStamp() > since)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isValidationRuleChanged(ValidationRule validationRule, int since){
+		return validationRule.getChangeStamp() > since
+			|| isElementChanged(validationRule.getQuestionId(), since)
+			|| isConditionsChanged(validationRule.getConditions(), since);
+	}
+
+	/**
+	 * Adds itext refs to the labels of a list of elements and all their kids and options.
+	 */
+	private static void refreshItextRefs(List<IFormElement> elements){
+		if(elements == null)
+			return;
+
+		for(int i=0; i<elements.size(); i++){
+			IFormElement element = elements.get(i);
+			if(element.getLabelNode() != null)
+				UiElementBuilder.addItextRefs(element.getLabelNode(), element);
+			refreshItextRefs(element.getChildren());
+		}
 	}
 
 	private void updateDataNodes(){
@@ -511,6 +724,24 @@ public class FormDef implements IFormElement, Serializable{
 		if(varName == null || children == null){
 			return null;
 		}
+
+		IFormElement element = getElementsByQuestionID().get(varName);
+		if(element != null && !elementsClash && varName.equals(element.getQuestionID()) && isIndexedElementCurrent(element, false))
+			return element;
+
+		//The index may be out of date because of changes made straight to some children list,
+		//or can not tell which of two clashing elements comes first, so go through the tree.
+		IFormElement found = findElement(varName);
+		if(found != element)
+			buildElementIndexes();
+		
+		return found;
+	}
+
+	/**
+	 * Finds an element by its question id by going through the whole tree of children.
+	 */
+	private IFormElement findElement(String varName){
 		IFormElement retElement;
 		for(int i=0;i<children.size();i++){
 			IFormElement def = children.get(i);
@@ -541,6 +772,22 @@ public class FormDef implements IFormElement, Serializable{
 		if(children == null)
 			return null;
 
+		IFormElement element = getElementsById().get(id);
+		if(element != null && !elementsClash && element.getId() == id && isIndexedElementCurrent(element, true))
+			return element;
+
+		//Not to be trusted, so go through the tree like getElement(String) does.
+		IFormElement found = findElement(id);
+		if(found != element)
+			buildElementIndexes();
+
+		return found;
+	}
+
+	/**
+	 * Finds an element by its numeric id by going through the whole tree of children.
+	 */
+	private IFormElement findElement(int id){
 		for(int i=0; i<children.size(); i++){
 			IFormElement def = children.get(i);
 			if(id == def.getId())
@@ -556,6 +803,276 @@ public class FormDef implements IFormElement, Serializable{
 		return null;
 	}
 
+	/**
+	 * Checks that an element found in the element indexes is still in this form, in case it
+	 * has been removed or moved straight through some children list since it was indexed.
+	 * 
+	 * @param element the element found.
+	 * @param byId true if it was found by numeric id.
+	 * @return true if the element can be returned, else false.
+	 */
+	private boolean isIndexedElementCurrent(IFormElement element, boolean byId){
+		if(getParentFormDef(element) != this || !isAttached(element, this))
+			return false;
+		return !byId || isReachableById(element, this);
+	}
+
+	/**
+	 * Gets the index of this form's elements keyed by their question ids,
+	 * building it if it does not exist or is out of date.
+	 * 
+	 * @return the element index.
+	 */
+	private HashMap<String,IFormElement> getElementsByQuestionID(){
+		if(!isElementIndexCurrent())
+			buildElementIndexes();
+		return elementsByQuestionID;
+	}
+
+	/**
+	 * Gets the index of this form's elements keyed by their numeric ids,
+	 * building it if it does not exist or is out of date.
+	 * 
+	 * @return the element index.
+	 */
+	private HashMap<Integer,IFormElement> getElementsById(){
+		if(!isElementIndexCurrent())
+			buildElementIndexes();
+		return elementsById;
+	}
+
+	/**
+	 * Checks if the element indexes have been built and no change has made them out of date since.
+	 */
+	private boolean isElementIndexCurrent(){
+		return elementsByQuestionID != null && elementsIndexVersion == elementsVersion;
+	}
+
+	/**
+	 * Rebuilds the element indexes from the whole tree of this form's children.
+	 */
+	private void buildElementIndexes(){
+		elementsByQuestionID = new HashMap<String,IFormElement>();
+		elementsById = new HashMap<Integer,IFormElement>();
+		elementsIndexVersion = elementsVersion;
+
+		boolean clash = false;
+		if(children != null){
+			for(int i=0; i<children.size(); i++){
+				if(!indexElement(children.get(i), true))
+					clash = true;
+			}
+		}
+		elementsClash = clash;
+	}
+
+	/**
+	 * Adds an element and its descendants to the element indexes. The same elements
+	 * are indexed and in the same order as the getElement() tree walks used to find them,
+	 * such that where question ids are repeated, the first one in the form wins.
+	 * 
+	 * @param element the element to index.
+	 * @param byId true if the element can be reached by its numeric id. Kids of repeat
+	 * 			   questions for instance, are only looked up by their question ids.
+	 * @return false if the element clashed with one already indexed.
+	 */
+	private boolean indexElement(IFormElement element, boolean byId){
+		boolean clash = false;
+
+		if(element instanceof OptionDef)
+			return true;
+
+		if(byId){
+			IFormElement indexed = elementsById.get(element.getId());
+			if(indexed == null)
+				elementsById.put(element.getId(), element);
+			else if(indexed != element)
+				clash = true;
+		}
+
+		String questionID = element.getQuestionID();
+		if(questionID != null){
+			IFormElement indexed = elementsByQuestionID.get(questionID);
+			if(indexed == null)
+				elementsByQuestionID.put(questionID, element);
+			else if(indexed != element)
+				clash = true;
+		}
+
+		List<IFormElement> kids = null;
+		if(element instanceof GroupDef)
+			kids = element.getChildren();
+		else if(element instanceof QuestionDef && element.getDataType() == QuestionDef.QTN_TYPE_REPEAT && ((QuestionDef)element).getRepeatQtnsDef() != null){
+			kids = ((QuestionDef)element).getRepeatQtnsDef().getChildren();
+			byId = false;
+		}
+
+		if(kids != null){
+			for(int i=0; i<kids.size(); i++){
+				if(!indexElement(kids.get(i), byId))
+					clash = true;
+			}
+		}
+
+		return !clash;
+	}
+
+	/**
+	 * Gets the form to which an element belongs by following its parents.
+	 * 
+	 * @param element the element.
+	 * @return the form, or null if the element is not attached to one.
+	 */
+	private static FormDef getParentFormDef(IFormElement element){
+		while(element != null && !(element instanceof FormDef))
+			element = element.getParent();
+		return (FormDef)element;
+	}
+
+	/**
+	 * Marks the element indexes of the form to which an element belongs as out of date.
+	 * This should be called after changing the children of an element directly
+	 * through its getChildren() list.
+	 * 
+	 * @param element the changed element, or its parent if it has been removed.
+	 */
+	public static void elementsChanged(IFormElement element){
+		structureChanged();
+
+		FormDef formDef = getParentFormDef(element);
+		if(formDef != null)
+			formDef.elementsVersion++;
+	}
+
+	/**
+	 * Hands out a new change stamp, for an element or rule to record that it has changed
+	 * and its xforms nodes need to be updated.
+	 * 
+	 * @return the new stamp.
+	 */
+	static int nextChangeStamp(){
+		return ++lastChangeStamp;
+	}
+
+	/**
+	 * Makes the next updateDoc of every form a full one.
+	 */
+	static void structureChanged(){
+		structureChangeStamp = nextChangeStamp();
+	}
+
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	/**
+	 * Updates the element indexes for a child which has just been added to a parent element.
+	 * 
+	 * @param parent the element to which the child has been added.
+	 * @param child the new child.
+	 */
+	static void elementAdded(IFormElement parent, IFormElement child){
+		structureChanged();
+
+		FormDef formDef = getParentFormDef(parent);
+		if(formDef == null){
+			elementsChanged(parent);
+			return;
+		}
+
+		if(!formDef.isElementIndexCurrent())
+			return; //will be rebuilt on the next lookup anyway.
+
+		if(!isAttached(parent, formDef))
+			return; //will be indexed when the parent is added.
+
+		boolean byId = !(parent instanceof RepeatQtnsDef) && isReachableById(parent, formDef);
+		if(!formDef.indexElement(child, byId))
+			formDef.elementsVersion++; //a clash may change which element is found first.
+	}
+
+	/**
+	 * Updates the element indexes for an element whose question id or numeric id has changed.
+	 * 
+	 * @param element the element which has changed.
+	 * @param oldQuestionID the question id before the change.
+	 * @param oldId the numeric id before the change.
+	 */
+	static void elementRenamed(IFormElement element, String oldQuestionID, int oldId){
+		structureChanged();
+
+		if(element instanceof RepeatQtnsDef)
+			return; //indexed through its repeat question.
+
+		FormDef formDef = getParentFormDef(element);
+		if(formDef == null)
+			return; //detached elements are indexed when they are added.
+
+		if(!formDef.isElementIndexCurrent())
+			return;
+
+		if(formDef.elementsClash){
+			formDef.elementsVersion++; //the old ids may have been hiding other elements.
+			return;
+		}
+
+		boolean byId = isReachableById(element, formDef);
+		if(oldQuestionID != null && formDef.elementsByQuestionID.get(oldQuestionID) == element)
+			formDef.elementsByQuestionID.remove(oldQuestionID);
+		if(byId && formDef.elementsById.get(oldId) == element)
+			formDef.elementsById.remove(oldId);
+
+		if(!isAttached(element, formDef))
+			return; //not yet added, so it will be indexed when it is.
+
+		boolean clash = false;
+		String questionID = element.getQuestionID();
+		if(questionID != null){
+			IFormElement indexed = formDef.elementsByQuestionID.get(questionID);
+			if(indexed == null)
+				formDef.elementsByQuestionID.put(questionID, element);
+			else if(indexed != element)
+				clash = true;
+		}
+		if(byId){
+			IFormElement indexed = formDef.elementsById.get(element.getId());
+			if(indexed == null)
+				formDef.elementsById.put(element.getId(), element);
+			else if(indexed != element)
+				clash = true;
+		}
+
+		if(clash)
+			formDef.elementsVersion++; //a clash may change which element is found first.
+	}
+
+	/**
+	 * Checks if an element is really in the children list of each of its parents up to the form.
+	 */
+	private static boolean isAttached(IFormElement element, FormDef formDef){
+		for(IFormElement child = element; child != formDef; child = child.getParent()){
+			if(child instanceof RepeatQtnsDef)
+				continue; //reached through the repeat question, not its children list.
+
+			List<IFormElement> siblings = child.getParent().getChildren();
+			if(siblings == null || !siblings.contains(child))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if an element can be found by getElement(int), which does not look
+	 * into the kids of repeat questions.
+	 */
+	private static boolean isReachableById(IFormElement element, FormDef formDef){
+		for(IFormElement parent = element.getParent(); parent != null && parent != formDef; parent = parent.getParent()){
+			if(parent instanceof RepeatQtnsDef)
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Gets a numeric question identifier for a given question variable name.
 	 * 
@@ -670,6 +1187,7 @@ public class FormDef implements IFormElement, Serializable{
 		else
 			GroupDef.removeElement2((QuestionDef)element, this, true);
 
+		elementsChanged(this);
 		return children.remove(element);
 	}
 
@@ -828,6 +1346,7 @@ public class FormDef implements IFormElement, Serializable{
 	 * @return true if the question has been found and removed, else false.
 	 */
 	public boolean removeQuestion(IFormElement qtnDef, boolean delete){
+		elementsChanged(this);
 		for(int i=0; i<children.size(); i++){
 			IFormElement element = children.get(i);
 			if(element == qtnDef){
@@ -1134,7 +1653,8 @@ public class FormDef implements IFormElement, Serializable{
 		if(dynamicOptions == null)
 			dynamicOptions = new HashMap<Integer,DynamicOptionDef>();
 
-		dynamicOptions.put(questionId, dynamicOptionDef);
+		if(dynamicOptions.put(questionId, dynamicOptionDef) != dynamicOptionDef)
+			dynamicOptionDef.markChanged(); //may have been created before the last update.
 	}
 
 	public DynamicOptionDef getDynamicOptions(Integer questionId){
@@ -1431,6 +1951,7 @@ public class FormDef implements IFormElement, Serializable{
 
 	public void setChildren(List<IFormElement> children){
 		this.children = children;
+		elementsChanged(this);
 	}
 	
 	public void addChild(IFormElement element){
@@ -1438,6 +1959,7 @@ public class FormDef implements IFormElement, Serializable{
 			children = new ArrayList<IFormElement>();
 		children.add(element);
 		element.setParent(this);
+		elementAdded(this, element);
 	}
 
 	public IFormElement getParent(){
@@ -1604,6 +2126,7 @@ public class FormDef implements IFormElement, Serializable{
 		}catch(Exception e){
 			FormUtil.displayException(e);
 		}
+		elementsChanged(this); //the first of clashing ids is the one found.
 	}
 	
 	
@@ -1740,6 +2263,7 @@ public class FormDef implements IFormElement, Serializable{
 			targetIndex += beforeOrAfter; //will add 1 for after, 0 for before. According to final INSERT_BEFORE and INSERT_AFTER fields in this class.
 			targetList.add(targetIndex,child);
 			child.setParent(target.getParent());
+			elementsChanged(target);
 			if(!isChildAlreadyInChildren){
 				originalSiblings.remove(child);
 			}
@@ -2,7 +2,9 @@ package org.openrosa.client.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.openrosa.client.util.Itext;
 import org.openrosa.client.util.ItextParser;
@@ -28,6 +30,9 @@ import com.google.gwt.xml.client.Node;
  */
 public class GroupDef implements IFormElement, Serializable{
 
+	/** Restamped whenever the text, type or flags of this group change, so updateDoc knows to rewrite its nodes. */
+	private int changeStamp = FormDef.nextChangeStamp();
+
 	/** List of children for this group. */
 	private List<IFormElement> children;
 
@@ -229,6 +234,7 @@ public class GroupDef implements IFormElement, Serializable{
 			children = new ArrayList<IFormElement>();
 		children.add(child);
 		child.setParent(this);
+		FormDef.elementAdded(this, child);
 	}
 
 	public QuestionDef getQuestion(String varName){
@@ -321,6 +327,7 @@ public class GroupDef implements IFormElement, Serializable{
 	 */
 	public boolean removeElement(IFormElement qtnDef, FormDef formDef, boolean delete){
 		removeElement2(qtnDef,formDef, delete);
+		FormDef.elementsChanged(this);
 		//TODO Need to do recursive checks for group defs before remove.
 		return children.remove(qtnDef);
 	}
@@ -446,6 +453,8 @@ public class GroupDef implements IFormElement, Serializable{
 			}
 			children.add(list.get(i));
 		}
+
+		FormDef.elementsChanged(questionDef);
 	}
 
 
@@ -572,6 +581,8 @@ public class GroupDef implements IFormElement, Serializable{
 				//parentBindNode.insertBefore(questionDef.getBindNode(), questionDef.getBindNode());
 			}
 		}
+
+		FormDef.elementsChanged(element);
 	}
 
 
@@ -692,16 +703,62 @@ public class GroupDef implements IFormElement, Serializable{
 		}
 	}
 	
+	/**
+	 * Updates the xforms document nodes of only those children of this page which have
+	 * changed since a given stamp. The nodes of the page itself are left alone, as it
+	 * has not changed. Otherwise updateDoc should be called instead.
+	 *
+	 * @param doc the xforms document.
+	 * @param xformsNode the xforms document root node.
+	 * @param formDef the form to which this page belongs.
+	 * @param formNode the xforms instance data node.
+	 * @param modelNode the xforms model node.
+	 * @param rootDataNodeName the original form variable name before any updates were done.
+	 * @param since the change stamp of the last update.
+	 * @param changes the summary to which to add the updated elements.
+	 */
+	void updateChangedDoc(Document doc, Element xformsNode, FormDef formDef, Element formNode, Element modelNode, String rootDataNodeName, int since, DocChanges changes){
+		if(children == null)
+			return;
+
+		Element groupNode = (this.getDataType() == QuestionDef.QTN_TYPE_GROUP ? getGroupNode() : getParent().getControlNode());
+		if(groupNode == null){
+			updateDoc(doc,xformsNode,formDef,formNode,modelNode,false,rootDataNodeName);
+			changes.elementUpdated();
+			return;
+		}
+
+		for(int i=0; i<children.size(); i++){
+			IFormElement questionDef = children.get(i);
+			if(questionDef instanceof QuestionDef){
+				if(FormDef.isChangedSince(questionDef, since)){
+					((QuestionDef)questionDef).updateDoc(doc,xformsNode,formDef,formNode,modelNode,groupNode, dataType != QuestionDef.QTN_TYPE_REPEAT, false, rootDataNodeName);
+					changes.elementUpdated();
+				}
+			}
+			else if(questionDef.getChangeStamp() > since){
+				((GroupDef)questionDef).updateDoc(doc,xformsNode,formDef,formNode,modelNode,false,rootDataNodeName);
+				changes.elementUpdated();
+			}
+			else
+				((GroupDef)questionDef).updateChangedDoc(doc,xformsNode,formDef,formNode,modelNode,rootDataNodeName,since,changes);
+		}
+	}
+
 	public List<String> getAllChildrenItextIDs(){
-		ArrayList<String> list = new ArrayList<String>();
+		Set<String> itextIDs = new LinkedHashSet<String>();
+		addAllChildrenItextIDs(itextIDs);
+		return new ArrayList<String>(itextIDs);
+	}
+	
+	public void addAllChildrenItextIDs(Set<String> itextIDs){
 		List<IFormElement> children = this.getChildren();
-		if(children == null){ return new ArrayList<String>(); }
+		if(children == null){ return; }
 		
 		for(IFormElement child : children){
-			list.addAll(Itext.getFullAvailableTextForms(child.getItextId())); //get the child's ItextID(s)
-			list.addAll(child.getAllChildrenItextIDs()); //recurse down
+			itextIDs.addAll(Itext.getFullAvailableTextForms(child.getItextId())); //get the child's ItextID(s)
+			child.addAllChildrenItextIDs(itextIDs); //recurse down
 		}
-		return list;
 	}
 	
 
@@ -959,7 +1016,10 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setId(int id){
+		int oldId = this.id;
 		this.id = id;
+		if(oldId != id)
+			FormDef.elementRenamed(this, binding, oldId);
 	}
 
 	public String getText(){
@@ -967,6 +1027,7 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setText(String text){
+		markChanged();
 		this.defaultLabel = text;
 	}
 
@@ -975,6 +1036,7 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setDataType(int dataType){
+		markChanged();
 		if(dataType == QuestionDef.QTN_TYPE_REPEAT) throw new RuntimeException(); //this should never happen.
 		this.dataType = dataType;
 	}
@@ -984,7 +1046,10 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setQuestionID(String binding){
+		String oldBinding = this.binding;
 		this.binding = binding;
+		if(oldBinding != binding)
+			FormDef.elementRenamed(this, oldBinding, id);
 	}
 
 	public List<IFormElement> getChildren(){
@@ -992,7 +1057,10 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setChildren(List<IFormElement> children){
+		markChanged();
 		this.children = children;
+		if(parent != null)
+			FormDef.elementsChanged(this);
 	}
 
 	public Element getBindNode(){
@@ -1040,6 +1108,7 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setItextId(String itextId) {
+		markChanged();
 		this.itextId = itextId;
 	}
 
@@ -1048,6 +1117,7 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setHelpText(String helpText){
+		markChanged();
 		this.helpText = helpText;
 	}
 
@@ -1063,8 +1133,10 @@ public class GroupDef implements IFormElement, Serializable{
 		if(children == null)
 			return false;
 
-		if(children.remove(element))
+		if(children.remove(element)){
+			FormDef.elementsChanged(this);
 			return true;
+		}
 
 		for(IFormElement child : children){
 			if(child.removeChild(element))
@@ -1114,6 +1186,7 @@ public class GroupDef implements IFormElement, Serializable{
 
 	@Override
 	public void setEnabled(boolean enabled) {
+		markChanged();
 		this.enabled = enabled;
 		
 	}
@@ -1125,6 +1198,7 @@ public class GroupDef implements IFormElement, Serializable{
 
 	@Override
 	public void setRequired(boolean required) {
+		markChanged();
 		this.required = required;
 	}
 
@@ -1133,6 +1207,7 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setHasUINode(boolean hasUINode) {
+		markChanged();
 		return; //groups always have some kind of UI node. If it doesn't, you've screwed up.
 	}
 	
@@ -1148,6 +1223,7 @@ public class GroupDef implements IFormElement, Serializable{
 		}catch(Exception e){
 			FormUtil.displayException(e);
 		}
+		FormDef.elementsChanged(this);
 	}
 	
 	public boolean hasAdvancedCalculate() {
@@ -1163,14 +1239,17 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setHasAdvancedCalculate(boolean enabled) {
+		markChanged();
 		hasAdvancedCalculate = enabled;
 	}
 
 	public void setHasAdvancedConstraint(boolean enabled) {
+		markChanged();
 		hasAdvancedConstraint = enabled;
 	}
 
 	public void setHasAdvancedRelevant(boolean enabled) {
+		markChanged();
 		hasAdvancedRelevant = enabled;
 	}
 
@@ -1187,14 +1266,17 @@ public class GroupDef implements IFormElement, Serializable{
 	}
 
 	public void setAdvancedCalculate(String calcValue) {
+		markChanged();
 		advancedCalculate = calcValue;
 	}
 
 	public void setAdvancedConstraint(String constValue) {
+		markChanged();
 		advancedConstraint = constValue;
 	}
 
 	public void setAdvancedRelevant(String releValue) {
+		markChanged();
 		advancedRelevant = releValue;
 	}
 	
@@ -1209,4 +1291,12 @@ public class GroupDef implements IFormElement, Serializable{
 		if(!isChildQuestionOrGroupDef){ return false; } //we don't want to insert OptionDefs into this list.
 		return FormDef.insertChildBeforeOrAfter(child, target, this.children, FormDef.INSERT_BEFORE);
 	}
+
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
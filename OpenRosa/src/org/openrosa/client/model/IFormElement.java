@@ -1,6 +1,7 @@
 package org.openrosa.client.model;
 
 import java.util.List;
+import java.util.Set;
 
 import com.google.gwt.xml.client.Element;
 
@@ -82,6 +83,13 @@ public interface IFormElement {
 	 */
 	List<String> getAllChildrenItextIDs();
 	
+	/**
+	 * Adds all the itext IDs used by children of this question (including special forms)
+	 * to the given set, walking the tree only once.
+	 * @param itextIDs
+	 */
+	void addAllChildrenItextIDs(Set<String> itextIDs);
+	
 	String getDisplayText();
 	
 	/**
@@ -159,4 +167,11 @@ public interface IFormElement {
 	 */
 	public boolean insertChildAfter(IFormElement child, IFormElement target);
 
+	/**
+	 * Gets the stamp of the last change to this element which its xforms nodes
+	 * need updating for, as handed out by FormDef.nextChangeStamp().
+	 * @return
+	 */
+	public int getChangeStamp();
+
 }
@@ -3,6 +3,7 @@ package org.openrosa.client.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.openrosa.client.OpenRosaConstants;
 import org.openrosa.client.util.Itext;
@@ -23,6 +24,9 @@ import com.google.gwt.xml.client.Element;
  *
  */
 public class OptionDef implements IFormElement, Serializable {
+
+	/** Restamped when the text, value or itext id of this option changes. */
+	private int changeStamp = FormDef.nextChangeStamp();
 	
 	/** The numeric unique identifier of an answer option. */
 	private int id = ModelConstants.NULL_ID;
@@ -64,6 +68,10 @@ public class OptionDef implements IFormElement, Serializable {
 		return new ArrayList<String>(); //This method does not apply to OptionDefs (they can never have children)
 	}
 	
+	public void addAllChildrenItextIDs(Set<String> itextIDs){
+		//This method does not apply to OptionDefs (they can never have children)
+	}
+	
 	
 	/** The copy constructor  */
 	public OptionDef(OptionDef optionDef,QuestionDef parent) { 
@@ -101,6 +109,7 @@ public class OptionDef implements IFormElement, Serializable {
 	}
 
 	public void setText(String text) {
+		markChanged();
 		this.text = text;
 	}
 	
@@ -109,6 +118,7 @@ public class OptionDef implements IFormElement, Serializable {
 	}
 	
 	public void setQuestionID(String variableName) {
+		markChanged();
 		this.binding = variableName;
 	}
 
@@ -125,6 +135,7 @@ public class OptionDef implements IFormElement, Serializable {
 	}
 
 	public void setItextId(String itextId) {
+		markChanged();
 		this.itextId = itextId;
 	}
 
@@ -484,4 +495,12 @@ public class OptionDef implements IFormElement, Serializable {
 	public boolean insertChildBefore(IFormElement child, IFormElement target) {
 		return false;
 	}
+
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
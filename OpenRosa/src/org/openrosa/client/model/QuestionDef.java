@@ -4,7 +4,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.openrosa.client.OpenRosaConstants;
@@ -37,6 +39,9 @@ import com.google.gwt.xml.client.NodeList;
  */
 public class QuestionDef implements IFormElement, Serializable{
 
+	/** Restamped by the setters whenever this question changes in a way which its xforms nodes need updating for. */
+	private int changeStamp = FormDef.nextChangeStamp();
+
 	/** The value to save for boolean questions when one selects the yes option. */
 	public static final String TRUE_VALUE = "true";
 
@@ -283,7 +288,10 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setId(int id) {
+		int oldId = this.id;
 		this.id = id;
+		if(oldId != id)
+			FormDef.elementRenamed(this, questionID, oldId);
 	}
 
 	public String getDefaultValue() {
@@ -335,6 +343,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setDefaultValue(String defaultValue) {
+		markChanged();
 		//if(defaultValue != null && defaultValue.trim().length() > 0)
 		this.defaultValue = defaultValue;
 		this.answer =  defaultValue;
@@ -345,6 +354,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setAnswer(String answer) {
+		markChanged();
 		//if(defaultValue != null && defaultValue.trim().length() > 0)
 		this.answer = answer;
 	}
@@ -354,6 +364,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setEnabled(boolean enabled) {
+		markChanged();
 		boolean changed = this.enabled != enabled;
 
 		this.enabled = enabled;
@@ -369,6 +380,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setHelpText(String helpText) {
+		markChanged();
 		this.helpText = helpText;
 	}
 
@@ -392,6 +404,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setRequired(boolean required) {
+		markChanged();
 		boolean changed = this.required != required;
 
 		this.required = required;
@@ -409,7 +422,11 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setOptions(Object options) {
+		markChanged();
+		boolean repeatKidsChanged = this.options instanceof RepeatQtnsDef || options instanceof RepeatQtnsDef;
 		this.options = options;
+		if(repeatKidsChanged && parent != null)
+			FormDef.elementsChanged(this);
 	}
 
 	public String getText() {
@@ -417,6 +434,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setText(String text) {	
+		markChanged();
 		this.text = text;
 	}
 
@@ -429,27 +447,36 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setItextId(String itextId) {
+		markChanged();
 			this.itextId = itextId;
 	}
 
 	public List<String> getAllChildrenItextIDs(){
-		ArrayList<String> list = new ArrayList<String>();
+		Set<String> itextIDs = new LinkedHashSet<String>();
+		addAllChildrenItextIDs(itextIDs);
+		return new ArrayList<String>(itextIDs);
+	}
+	
+	public void addAllChildrenItextIDs(Set<String> itextIDs){
 		List<IFormElement> children = this.getChildren();
-		if(children == null){ return new ArrayList<String>(); }
+		if(children == null){ return; }
 		
 		for(IFormElement child : children){
-			list.addAll(Itext.getFullAvailableTextForms(child.getItextId())); //get the child's ItextID(s)
-			list.addAll(child.getAllChildrenItextIDs()); //recurse down
+			itextIDs.addAll(Itext.getFullAvailableTextForms(child.getItextId())); //get the child's ItextID(s)
+			child.addAllChildrenItextIDs(itextIDs); //recurse down
 		}
-		return list;
 	}
 	
 	public void setDataType(int dataType) {
+		markChanged();
 		int oldDataType = this.dataType;
 		int newDataType = dataType;
 		boolean changed = oldDataType != newDataType;
 		this.dataType = dataType;
 
+		if(changed && parent != null && (oldDataType == QuestionDef.QTN_TYPE_REPEAT || newDataType == QuestionDef.QTN_TYPE_REPEAT))
+			FormDef.elementsChanged(this); //the kids of repeats are looked up by question id.
+
 		if(changed){
 			
 			//if(controlNode != null && (dataType == QuestionDef.QTN_TYPE_LIST_EXCLUSIVE || dataType == QuestionDef.QTN_TYPE_LIST_MULTIPLE))
@@ -517,12 +544,14 @@ public class QuestionDef implements IFormElement, Serializable{
 
 	private void setVariableName(String variableName) {
 		boolean changed = this.questionID != variableName;
+		String oldVariableName = this.questionID;
 		if(getDataType() == QuestionDef.QTN_TYPE_REPEAT){
 			this.getRepeatQtnsDef().setQuestionIDInternal(variableName);
 		}
 		this.questionID = variableName;
 
 		if(changed){
+			FormDef.elementRenamed(this, oldVariableName, id);
 			for(int index = 0; index < changeListeners.size(); index++)
 				changeListeners.get(index).onBindingChanged(this,variableName);
 		}
@@ -675,10 +704,12 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void addOption(OptionDef optionDef){
+		markChanged();
 		addOption(optionDef,true);
 	}
 
 	public void addOption(OptionDef optionDef, boolean setAsParent){
+		markChanged();
 		if(options == null || !(options instanceof ArrayList)){
 			options = new ArrayList();
 		}
@@ -703,6 +734,8 @@ public class QuestionDef implements IFormElement, Serializable{
 
 	public void setRepeatQtnsDef(RepeatQtnsDef repeatQtnsDef){
 		options = repeatQtnsDef;
+		if(parent != null)
+			FormDef.elementsChanged(this);
 	}
 
 	public String toString() {
@@ -719,6 +752,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public boolean removeOption(OptionDef optionDef){
+		markChanged();
 		if(options instanceof List){ //Could be a RepeatQtnsDef
 			if(!((List)options).remove(optionDef))
 				return false;
@@ -734,6 +768,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void moveOptionUp(OptionDef optionDef){
+		markChanged();
 		if(!(getDataType()==QuestionDef.QTN_TYPE_LIST_EXCLUSIVE ||
 				getDataType()==QuestionDef.QTN_TYPE_LIST_MULTIPLE))
 			return;
@@ -768,6 +803,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void moveOptionDown(OptionDef optionDef){
+		markChanged();
 		if(!(getDataType()==QuestionDef.QTN_TYPE_LIST_EXCLUSIVE ||
 				getDataType()==QuestionDef.QTN_TYPE_LIST_MULTIPLE))
 			return;
@@ -1622,6 +1658,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	 * Clears the list of option for a question.
 	 */
 	public void clearOptions(){
+		markChanged();
 		if(options != null)
 			((List)options).clear();
 	}
@@ -1643,6 +1680,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	 * @param optionList the option list.
 	 */
 	public void setOptionList(List<OptionDef> optionList){
+		markChanged();
 		options = optionList;
 
 		for(int index = 0; index < changeListeners.size(); index++)
@@ -1780,6 +1818,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setChildren(List<IFormElement> children){
+		markChanged();
 		this.options = children;
 	}
 	
@@ -1834,6 +1873,7 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setHasUINode(boolean hasUINode) {
+		markChanged();
 		this.hasUINode = hasUINode;
 	}
 	
@@ -1855,14 +1895,17 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setHasAdvancedCalculate(boolean enabled) {
+		markChanged();
 		hasAdvancedCalculate = enabled;
 	}
 
 	public void setHasAdvancedConstraint(boolean enabled) {
+		markChanged();
 		hasAdvancedConstraint = enabled;
 	}
 
 	public void setHasAdvancedRelevant(boolean enabled) {
+		markChanged();
 		hasAdvancedRelevant = enabled;
 	}
 
@@ -1879,18 +1922,22 @@ public class QuestionDef implements IFormElement, Serializable{
 	}
 
 	public void setAdvancedCalculate(String calcValue) {
+		markChanged();
 		advancedCalculate = calcValue;
 	}
 
 	public void setAdvancedConstraint(String constValue) {
+		markChanged();
 		advancedConstraint = constValue;
 	}
 
 	public void setAdvancedRelevant(String releValue) {
+		markChanged();
 		advancedRelevant = releValue;
 	}
 	
 	public void setRepeatCountNodePath(String nodePath){
+		markChanged();
 		this.repeatCountNodePath = nodePath;
 	}
 	
@@ -1939,5 +1986,11 @@ public class QuestionDef implements IFormElement, Serializable{
 		}
 	}
 
-}
+	public int getChangeStamp(){
+		return changeStamp;
+	}
 
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
+}
@@ -18,6 +18,9 @@ import com.google.gwt.xml.client.Document;
  *
  */
 public class SkipRule implements Serializable{
+
+	/** Restamped whenever the conditions, action or targets of this rule change. */
+	private int changeStamp = FormDef.nextChangeStamp();
 	
 	/** The numeric identifier of a rule. This is assigned in code and hence
 	 * is not known by the user.
@@ -74,6 +77,7 @@ public class SkipRule implements Serializable{
 	}
 
 	public void setAction(int action) {
+		markChanged();
 		this.action = action;
 	}
 
@@ -82,6 +86,7 @@ public class SkipRule implements Serializable{
 	}
 
 	public void setActionTargets(Vector actionTargets) {
+		markChanged();
 		this.actionTargets = actionTargets;
 	}
 
@@ -90,6 +95,7 @@ public class SkipRule implements Serializable{
 	}
 
 	public void setConditions(Vector conditions) {
+		markChanged();
 		this.conditions = conditions;
 	}
 
@@ -106,6 +112,7 @@ public class SkipRule implements Serializable{
 	}
 
 	public void setConditionsOperator(int conditionsOperator) {
+		markChanged();
 		this.conditionsOperator = conditionsOperator;
 	}
 	
@@ -134,12 +141,14 @@ public class SkipRule implements Serializable{
 	}
 	
 	public void addActionTarget(int id){
+		markChanged();
 		if(actionTargets == null)
 			actionTargets = new Vector();
 		actionTargets.add(new Integer(id));
 	}
 	
 	public void clearActionTargets(){
+		markChanged();
 		if(actionTargets != null)
 			actionTargets.clear();
 	}
@@ -156,6 +165,7 @@ public class SkipRule implements Serializable{
 	}
 	
 	public void addCondition(Condition condition){
+		markChanged();
 		if(conditions == null)
 			conditions = new Vector();
 		conditions.add(condition);
@@ -168,6 +178,7 @@ public class SkipRule implements Serializable{
 	}
 	
 	public void updateCondition(Condition condition){
+		markChanged();
 		for(int i=0; i<conditions.size(); i++){
 			Condition cond = (Condition)conditions.elementAt(i);
 			if(cond.getId() == condition.getId()){
@@ -179,10 +190,12 @@ public class SkipRule implements Serializable{
 	}
 	
 	public void removeCondition(Condition condition){
+		markChanged();
 		conditions.remove(condition);
 	}
 	
 	public void removeActionTarget(IFormElement questionDef){
+		markChanged();
 		
 		if(questionDef.getBindNode() != null){
 			questionDef.getBindNode().removeAttribute(XformConstants.ATTRIBUTE_NAME_RELEVANT);
@@ -319,5 +332,15 @@ public class SkipRule implements Serializable{
 		for(int index = 0; index < this.getConditionCount(); index++)
 			getConditionAt(index).updateValue(origValue, newValue);
 	}
+
+	/**
+	 * Gets the stamp of the last change to this rule which its xforms nodes need updating for.
+	 */
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
- 
\ No newline at end of file
@@ -21,6 +21,9 @@ import com.google.gwt.xml.client.Element;
  *
  */
 public class ValidationRule implements Serializable{
+
+	/** Restamped whenever the conditions or error message of this rule change. */
+	private int changeStamp = FormDef.nextChangeStamp();
 	
 	/** The unique identifier of the question referenced by this validation rule. */
 	private int questionId = ModelConstants.NULL_ID;
@@ -83,6 +86,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void setConditions(Vector conditions) {
+		markChanged();
 		this.conditions = conditions;
 	}
 
@@ -91,6 +95,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void setQuestionId(int questionId) {
+		markChanged();
 		this.questionId = questionId;
 	}
 	
@@ -99,6 +104,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void setConditionsOperator(int conditionsOperator) {
+		markChanged();
 		this.conditionsOperator = conditionsOperator;
 	}
 	
@@ -119,6 +125,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void setErrorMessage(String errorMessage) {
+		markChanged();
 		this.errorMessage = errorMessage;
 	}
 	
@@ -127,6 +134,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void setItextId(String itextId) {
+		markChanged();
 		this.itextId = itextId;
 	}
 
@@ -139,6 +147,7 @@ public class ValidationRule implements Serializable{
 	}
 
 	public void addCondition(Condition condition){
+		markChanged();
 		if(conditions == null)
 			conditions = new Vector();
 		conditions.add(condition);
@@ -151,6 +160,7 @@ public class ValidationRule implements Serializable{
 	}
 	
 	public void updateCondition(Condition condition){
+		markChanged();
 		for(int i=0; i<conditions.size(); i++){
 			Condition cond = (Condition)conditions.elementAt(i);
 			if(cond.getId() == condition.getId()){
@@ -162,6 +172,7 @@ public class ValidationRule implements Serializable{
 	}
 	
 	public void removeCondition(Condition condition){
+		markChanged();
 		conditions.remove(condition);
 	}
 	
@@ -335,4 +346,15 @@ public class ValidationRule implements Serializable{
 		
 		return questions;
 	}
+
+	/**
+	 * Gets the stamp of the last change to this rule which its xforms nodes need updating for.
+	 */
+	public int getChangeStamp(){
+		return changeStamp;
+	}
+
+	private void markChanged(){
+		changeStamp = FormDef.nextChangeStamp();
+	}
 }
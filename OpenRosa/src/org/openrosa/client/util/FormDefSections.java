@@ -0,0 +1,225 @@
+package org.openrosa.client.util;
+
+import org.openrosa.client.PurcConstants;
+import org.openrosa.client.jr.core.util.MD5;
+
+
+/**
+ * Splits and joins the combined xml document of a form, which holds its xforms xml, layout xml,
+ * locale xml and javascript source separated by the PURCFORMS_FORMDEF_*_SEPARATOR markers.
+ *
+ * It also builds the patches used to save only the sections which have changed. A patch has
+ * each changed section behind its marker, and the sections are told apart by content hashes.
+ * This class is used by both the form designer and the server, and hence must not depend on
+ * anything which is only available on either side.
+ *
+ * @author daniel
+ *
+ */
+public class FormDefSections {
+
+	public static final int XFORM = 0;
+	public static final int LAYOUT = 1;
+	public static final int LOCALE = 2;
+	public static final int JAVASCRIPT = 3;
+
+	/** The number of sections in a combined document. */
+	public static final int COUNT = 4;
+
+	/**
+	 * The response header in which the server names the joined hashes of the form it has
+	 * stored. A save only counts as one which later patches can build on if this matches.
+	 */
+	public static final String HASHES_HEADER = "X-FormDef-Hashes";
+
+	/** The markers in front of each section, indexed by section. */
+	private static final String[] SEPARATORS = {
+		PurcConstants.PURCFORMS_FORMDEF_XFORM_XML_SEPARATOR,
+		PurcConstants.PURCFORMS_FORMDEF_LAYOUT_XML_SEPARATOR,
+		PurcConstants.PURCFORMS_FORMDEF_LOCALE_XML_SEPARATOR,
+		PurcConstants.PURCFORMS_FORMDEF_JAVASCRIPT_SRC_SEPARATOR
+	};
+
+
+	/**
+	 * All methods in this class are static and hence we expect no external
+	 * Instantiation of this class.
+	 */
+	private FormDefSections(){
+
+	}
+
+	/**
+	 * Joins sections into a combined document, leaving out the empty ones.
+	 * The xforms xml is the leading text and has no marker.
+	 *
+	 * @param sections the sections, indexed by section.
+	 * @return the combined document.
+	 */
+	public static String join(String[] sections){
+		String xml = sections[XFORM] != null ? sections[XFORM] : "";
+		for(int index = LAYOUT; index < COUNT; index++){
+			if(!isEmpty(sections[index]))
+				xml += SEPARATORS[index] + sections[index];
+		}
+		return xml;
+	}
+
+	/**
+	 * Splits a combined document into its sections.
+	 *
+	 * @param xml the combined document.
+	 * @return the sections, indexed by section, with null for those which are not there.
+	 */
+	public static String[] split(String xml){
+		return split(xml, true);
+	}
+
+	/**
+	 * Builds a patch holding only the sections whose hashes differ from the given ones.
+	 * A section which has become empty is put in the patch with no contents.
+	 *
+	 * @param sections the current sections.
+	 * @param hashes the hashes of the sections which the patch will be applied to.
+	 * @return the patch, or null if no section has changed.
+	 */
+	public static String getPatch(String[] sections, String[] hashes){
+		String patch = null;
+		for(int index = 0; index < COUNT; index++){
+			if(hash(sections[index]).equals(hashes[index]))
+				continue;
+
+			if(patch == null)
+				patch = "";
+			patch += SEPARATORS[index] + (isEmpty(sections[index]) ? "" : sections[index]);
+		}
+		return patch;
+	}
+
+	/**
+	 * Applies a patch to the sections of a combined document.
+	 *
+	 * @param sections the sections to patch, which are changed in place.
+	 * @param patch the patch.
+	 */
+	public static void applyPatch(String[] sections, String patch){
+		String[] changes = split(patch, false);
+		for(int index = 0; index < COUNT; index++){
+			if(changes[index] != null)
+				sections[index] = changes[index];
+		}
+	}
+
+	/**
+	 * Gets the content hash of a section, which is the MD5 of its UTF-8 bytes.
+	 * Empty and missing sections have the same hash.
+	 *
+	 * @param section the section contents.
+	 * @return the hash.
+	 */
+	public static String hash(String section){
+		if(isEmpty(section))
+			return "0";
+
+		return MD5.toHex(MD5.hash(toUtf8(section)));
+	}
+
+	/**
+	 * Gets the content hashes of all the sections.
+	 */
+	public static String[] getHashes(String[] sections){
+		String[] hashes = new String[COUNT];
+		for(int index = 0; index < COUNT; index++)
+			hashes[index] = hash(sections[index]);
+		return hashes;
+	}
+
+	/**
+	 * Joins section hashes into a single value which can be passed as a url parameter.
+	 */
+	public static String joinHashes(String[] hashes){
+		String value = hashes[0];
+		for(int index = 1; index < COUNT; index++)
+			value += "," + hashes[index];
+		return value;
+	}
+
+	private static String[] split(String xml, boolean leadingXform){
+		String[] sections = new String[COUNT];
+
+		//Positions of the markers, in the order they appear.
+		int[] starts = new int[COUNT];
+		int[] indices = new int[COUNT];
+		int count = 0;
+		for(int index = 0; index < COUNT; index++){
+			int pos = xml.indexOf(SEPARATORS[index]);
+			if(pos < 0)
+				continue;
+
+			int insert = count++;
+			while(insert > 0 && starts[insert - 1] > pos){
+				starts[insert] = starts[insert - 1];
+				indices[insert] = indices[insert - 1];
+				insert--;
+			}
+			starts[insert] = pos;
+			indices[insert] = index;
+		}
+
+		if(leadingXform)
+			sections[XFORM] = count > 0 ? xml.substring(0, starts[0]) : xml;
+
+		for(int index = 0; index < count; index++){
+			int start = starts[index] + SEPARATORS[indices[index]].length();
+			int end = index + 1 < count ? starts[index + 1] : xml.length();
+			sections[indices[index]] = xml.substring(start, end);
+		}
+
+		return sections;
+	}
+
+	/**
+	 * Encodes text as UTF-8. This is done by hand such that the browser and the
+	 * server are sure to hash the same bytes.
+	 */
+	private static byte[] toUtf8(String text){
+		byte[] bytes = new byte[text.length() * 3];
+		int count = 0;
+		for(int index = 0; index < text.length(); index++){
+			int c = text.charAt(index);
+			if(c >= 0xD800 && c <= 0xDBFF && index + 1 < text.length()){
+				int low = text.charAt(index + 1);
+				if(low >= 0xDC00 && low <= 0xDFFF){
+					c = 0x10000 + ((c - 0xD800) << 10) + (low - 0xDC00);
+					index++;
+				}
+			}
+
+			if(c < 0x80)
+				bytes[count++] = (byte)c;
+			else if(c < 0x800){
+				bytes[count++] = (byte)(0xC0 | (c >> 6));
+				bytes[count++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else if(c < 0x10000){
+				bytes[count++] = (byte)(0xE0 | (c >> 12));
+				bytes[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				bytes[count++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else{
+				bytes[count++] = (byte)(0xF0 | (c >> 18));
+				bytes[count++] = (byte)(0x80 | ((c >> 12) & 0x3F));
+				bytes[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				bytes[count++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+
+		byte[] utf8 = new byte[count];
+		System.arraycopy(bytes, 0, utf8, 0, count);
+		return utf8;
+	}
+
+	private static boolean isEmpty(String section){
+		return section == null || section.trim().length() == 0;
+	}
+}
@@ -76,6 +76,9 @@ public class FormUtil {
 	private static String fileSaveUrlSuffix;
 	private static String gpsTypeName;
 	private static String saveFormat;
+
+	/** Flag determining whether form saves only upload the sections which have changed, when the server supports it. */
+	private static boolean formDefPatchSaves;
 	
 	public static String JAVAROSA = "javarosa";
 	
@@ -360,6 +363,7 @@ public class FormUtil {
 		fileOpenUrlSuffix = getDivValue("fileOpenUrlSuffix");
 		fileSaveUrlSuffix = getDivValue("fileSaveUrlSuffix");
 		closeUrl = getDivValue("closeUrl");
+		formDefPatchSaves = "true".equalsIgnoreCase(getDivValue("formDefPatchSaves"));
 
 		if(multimediaUrlSuffix == null || multimediaUrlSuffix.trim().length() == 0)
 			multimediaUrlSuffix = "multimedia";
@@ -584,6 +588,10 @@ public class FormUtil {
 		return JAVAROSA.equalsIgnoreCase(saveFormat);
 	}
 
+	public static boolean isFormDefPatchSaves(){
+		return formDefPatchSaves;
+	}
+
 	public static String getHostPageBaseURL(){
 		//return "http://127.0.0.1:8080/openmrs/";
 		//or http://dev.cell-life.org/openmrs/
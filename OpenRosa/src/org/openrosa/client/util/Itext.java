@@ -1,9 +1,12 @@
 package org.openrosa.client.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.openrosa.client.model.FormDef;
 import org.openrosa.client.model.IFormElement;
@@ -12,6 +15,9 @@ import org.openrosa.client.model.OptionDef;
 import org.openrosa.client.model.QuestionDef;
 
 import com.extjs.gxt.ui.client.store.ListStore;
+import com.extjs.gxt.ui.client.store.Record;
+import com.extjs.gxt.ui.client.store.Store;
+import com.extjs.gxt.ui.client.store.StoreEvent;
 import com.google.gwt.core.client.GWT;
 
 /**
@@ -32,6 +38,12 @@ public class Itext {
 	public static List<ItextLocale> locales = new ArrayList<ItextLocale>();
 	public static ItextLocale currentLocale = null;
 	
+	/** The rows of itextRows keyed by their full ids. */
+	private static HashMap<String,ItextModel> rowsById = new HashMap<String,ItextModel>();
+	
+	/** The ItextLocale modification count at which itextRows last had the same data as the locales. */
+	private static int syncedModCount = -1;
+	
 	
 	/**
 	 * Cleans out everything in this static Itext object and starts fresh.
@@ -39,6 +51,8 @@ public class Itext {
 	public static void reset(){
 		itextRows = new ListStore<ItextModel>();
 		locales = new ArrayList<ItextLocale>();
+		rowsById.clear();
+		syncedModCount = -1;
 	}
 	
 	/**
@@ -61,14 +75,34 @@ public class Itext {
 	 * @param oldID - the old Question ID (used for if the ID has been changes by this update)
 	 */
 	public static void updateRow(ItextModel row, String oldID){
-		for(ItextModel r : itextRows.getModels()){
-			if(r.get("id").equals(oldID)){
-				for(String k: row.getPropertyNames()){
-					r.set(k, row.get(k));
-				}
+		boolean inSync = isSynced();
+		
+		ItextModel target = (oldID == null) ? null : findRow(oldID);
+		if(target != null && target != row && row != null){
+			for(String k: row.getPropertyNames()){
+				target.set(k, row.get(k));
+			}
+		}
+		
+		//Only the edited rows and the updated one can have translations which the locales do not.
+		List<ItextModel> changed = new ArrayList<ItextModel>();
+		for(Record record : itextRows.getModifiedRecords()){
+			changed.add((ItextModel)record.getModel());
+		}
+		if(target != null && !changed.contains(target)){
+			changed.add(target);
+		}
+		itextRows.commitChanges();
+		
+		for(ItextModel r : changed){
+			if(!pushRowToLocales(r)){
+				inSync = false;
 			}
 		}
-		updateModel(itextRows);
+		
+		if(inSync){
+			syncedModCount = ItextLocale.getModCount();
+		}
 	}
 	
 	/**
@@ -104,8 +138,12 @@ public class Itext {
 	 */
 	public static void addText(String language, String ID, String value){
 		ItextLocale lang = Itext.getLocale(language);
+		boolean inSync = isSynced();
 		lang.setTranslation(ID, value);
 		itextRowsAddText(language,ID,value);
+		if(inSync){
+			syncedModCount = ItextLocale.getModCount();
+		}
 	}
 	
 	/**
@@ -115,11 +153,37 @@ public class Itext {
 	 * @param newID - BASE ID ONLY. DO NOT INCLUDE SPECIAL FORM
 	 */
 	public static void renameID(String oldID, String newID){
+		boolean inSync = isSynced();
+		
+		//the rows of both the old and the new id (with all their forms) may change
+		Set<String> fullIDs = new HashSet<String>();
+		for(ItextLocale locale : locales){
+			addFullIDs(locale, oldID, fullIDs);
+			addFullIDs(locale, newID, fullIDs);
+		}
+		
 		for(ItextLocale locale : locales){
 			locale.renameID(oldID, newID);
 		}
 		
-		syncItextRowsToLocale();
+		for(ItextLocale locale : locales){
+			addFullIDs(locale, newID, fullIDs);
+		}
+		
+		syncRows(fullIDs, inSync);
+	}
+	
+	private static void addFullIDs(ItextLocale locale, String baseID, Set<String> fullIDs){
+		if(baseID == null){
+			return;
+		}
+		
+		if(locale.containsID(baseID)){
+			fullIDs.add(baseID);
+		}
+		for(String form : locale.getAvailableForms(baseID)){
+			fullIDs.add(baseID + ";" + form);
+		}
 	}
 	
 	/**
@@ -165,16 +229,28 @@ public class Itext {
 	}
 	
 	/**
-	 * Takes in a list of actively used ItextIDs (including those with special forms!)
+	 * Takes in the set of actively used ItextIDs (including those with special forms!)
 	 * and strips away all unused Itext currently in the internal store
 	 * @param usedIDs
+	 * @return the number of translations removed (across all locales)
 	 */
-	public static void removeUnusedItext(List<String> usedIDs){
+	public static int removeUnusedItext(Set<String> usedIDs){
+		long start = System.currentTimeMillis();
+		boolean inSync = isSynced();
+		
+		int count = 0;
+		Set<String> removedIDs = new HashSet<String>();
 		for(ItextLocale locale:locales){
-			locale.removeUnusedItext(usedIDs);
+			List<String> removed = locale.removeUnusedItext(usedIDs);
+			count += removed.size();
+			removedIDs.addAll(removed);
 		}
 		
-		syncItextRowsToLocale();
+		syncRows(removedIDs, inSync);
+		
+		GWT.log("Removed " + count + " unused itext translations (" + removedIDs.size() + " ids) from " +
+				locales.size() + " locales in " + (System.currentTimeMillis() - start) + "ms");
+		return count;
 	}
 	
 	private static void renameIdInItextRows(String oldID, String newID){
@@ -195,15 +271,138 @@ public class Itext {
 	}
 	
 	private static void itextRowsAddText(String language, String ID, String value){
-		ItextModel row = itextRows.findModel("id", ID); //gets the first one that matches, but there *should* only ever be one if coder abides by contract of this method
+		ItextModel row = findRow(ID);
 		if(row == null){
 			row = new ItextModel();
 			row.set("id", ID);
 			itextRows.add(row);
+			rowsById.put(ID, row);
 		}
 		row.set(language, value);
 	}
 	
+	/**
+	 * Gets the row with the given full id.
+	 * The index is checked against the row's current id, since grid edits can change it
+	 * behind our back, and we fall back to scanning the store if it is out of date.
+	 * Rows are only ever removed from the store through this class, which keeps the index
+	 * up to date.
+	 * @param fullID
+	 * @return the row, or null if there is none.
+	 */
+	private static ItextModel findRow(String fullID){
+		ItextModel row = rowsById.get(fullID);
+		if(row != null && fullID.equals(row.get("id"))){
+			return row;
+		}
+		
+		row = itextRows.findModel("id", fullID);
+		if(row != null){
+			rowsById.put(fullID, row);
+		}else{
+			rowsById.remove(fullID);
+		}
+		return row;
+	}
+	
+	/**
+	 * Writes the values of a row into each locale.
+	 * @param row
+	 * @return false if the row was not indexed under its id (e.g it was added or had its
+	 * id changed by the grid), meaning the locales may still hold entries without rows.
+	 */
+	private static boolean pushRowToLocales(ItextModel row){
+		String id = (String)row.get("id");
+		if(id == null){
+			return true;
+		}
+		
+		for (ItextLocale locale : locales){
+			locale.setTranslation(id,(String)row.get(locale.name));
+		}
+		
+		if(rowsById.get(id) != row){
+			rowsById.put(id, row);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Brings only the rows of the given full ids in line with the locales, creating,
+	 * updating or removing them as needed. Store events are batched into a single
+	 * DataChanged event such that the grid is refreshed once.
+	 * @param fullIDs
+	 * @param inSync true if itextRows had the same data as the locales before they were changed,
+	 * such that only the rows of the changed ids need updating. Else all rows are rebuilt.
+	 */
+	private static void syncRows(Collection<String> fullIDs, boolean inSync){
+		if(!inSync){
+			syncItextRowsToLocale();
+			return;
+		}
+		
+		if(fullIDs.isEmpty()){
+			syncedModCount = ItextLocale.getModCount();
+			return;
+		}
+		
+		List<ItextModel> newRows = new ArrayList<ItextModel>();
+		itextRows.setFiresEvents(false);
+		try{
+			for(String id : fullIDs){
+				ItextModel row = findRow(id);
+				
+				boolean exists = false;
+				for(ItextLocale locale : locales){
+					if(locale.containsID(id)){
+						exists = true;
+						break;
+					}
+				}
+				
+				if(!exists){
+					if(row != null){
+						itextRows.remove(row);
+						rowsById.remove(id);
+					}
+					continue;
+				}
+				
+				if(row == null){
+					row = new ItextModel();
+					row.set("id", id);
+					newRows.add(row);
+					rowsById.put(id, row);
+				}
+				
+				for(ItextLocale locale : locales){
+					if(locale.containsID(id)){
+						row.set(locale.getName(), locale.getTranslation(id));
+					}else{
+						row.remove(locale.getName());
+					}
+				}
+			}
+			
+			if(!newRows.isEmpty()){
+				itextRows.add(newRows);
+			}
+		}finally{
+			itextRows.setFiresEvents(true);
+		}
+		
+		itextRows.fireEvent(Store.DataChanged, new StoreEvent<ItextModel>(itextRows));
+		syncedModCount = ItextLocale.getModCount();
+	}
+	
+	/**
+	 * @return true if itextRows have the same data as the locales.
+	 */
+	private static boolean isSynced(){
+		return syncedModCount == ItextLocale.getModCount();
+	}
+	
 	/**
 	 * Removes a row specified by ID (full ID with text form if it exists!)
 	 * Updated the internal model as well as the GUI ListStore
@@ -211,19 +410,24 @@ public class Itext {
 	 * @return True if row was successfully removed, False if row does not exist
 	 */
 	public static boolean removeRow(String id){
-		ItextModel row = itextRows.findModel("id", id);
+		ItextModel row = findRow(id);
 		
 		if(row != null){
+			boolean inSync = isSynced();
 			itextRows.remove(row);
+			rowsById.remove(id);
 			
 			//find entry in each locale corresponding to this id
 			//and remove it
 			for(ItextLocale locale : locales){
-				if(locale.hasID(id)){
+				if(locale.containsID(id)){
 					locale.removeTranslation(id);
 				}
 			}
 			
+			if(inSync){
+				syncedModCount = ItextLocale.getModCount();
+			}
 			return true;
 		}else{
 			return false;
@@ -273,6 +477,9 @@ public class Itext {
 		}
 		if(lang != null){
 			locales.remove(lang);
+			
+			//rows which only had translations in this locale are no longer backed by any
+			syncedModCount = -1;
 		}
 		
 		//loop through all itextrows and remove specified language key-value pair.
@@ -353,6 +560,8 @@ public class Itext {
 	public static void clearLocales(){
 		locales = new ArrayList<ItextLocale>();
 		itextRows = new ListStore<ItextModel>();
+		rowsById.clear();
+		syncedModCount = -1;
 	}
 	
 	
@@ -366,7 +575,9 @@ public class Itext {
 	 * @return the structure of the ListStore<ItextModel> for use in the GUI
 	 */
 	public static ListStore<ItextModel> getItextRows(){
-		syncItextRowsToLocale();
+		if(!isSynced()){
+			syncItextRowsToLocale();
+		}
 		return itextRows;
 	}
 	
@@ -416,9 +627,11 @@ public class Itext {
 		//for the ListStore
 		//actually we'll just switch the pointer to point to this new ListStore, it's
 		//computationally less expensive and achieves the same goal
+		boolean inSync = (itextRows == rows) && isSynced();
 		itextRows = rows;
 		itextRows.commitChanges();
-		for (ItextModel row : itextRows.getModels()){
+		rowsById.clear();
+		for (ItextModel row : new ArrayList<ItextModel>(itextRows.getModels())){
 		//first go by row	
 			
 			String id = (String)row.get("id");
@@ -427,11 +640,18 @@ public class Itext {
 				GWT.log("Removing row from Itextrows as it does not have an ID(?)");
 				continue; //Don't really want to store something against a null key
 			}
+			rowsById.put(id, row);
 			for (ItextLocale locale : locales){
 			//then by column
 				locale.setTranslation(id,(String)row.get(locale.name));
 			}
 		}
+		
+		//rows whose ids were edited in the grid leave their old ids behind in the locales,
+		//in which case the next getItextRows() call rebuilds the rows from the locales.
+		if(inSync && rowsById.size() == itextRows.getCount()){
+			syncedModCount = ItextLocale.getModCount();
+		}
 	}
 	
 	/**
@@ -439,12 +659,25 @@ public class Itext {
 	 * that stored in the Locales list.
 	 */
 	private static void syncItextRowsToLocale(){
-		setItextRows(new ListStore<ItextModel>());
+		rowsById.clear();
+		List<ItextModel> rows = new ArrayList<ItextModel>();
 		for(ItextLocale locale : locales){
 			for(String id: locale.getAllFULLIds()){
-				itextRowsAddText(locale.getName(),id,locale.getTranslation(id));
+				ItextModel row = rowsById.get(id);
+				if(row == null){
+					row = new ItextModel();
+					row.set("id", id);
+					rowsById.put(id, row);
+					rows.add(row);
+				}
+				row.set(locale.getName(), locale.getTranslation(id));
 			}
 		}
+		
+		ListStore<ItextModel> store = new ListStore<ItextModel>();
+		store.add(rows);
+		setItextRows(store);
+		syncedModCount = ItextLocale.getModCount();
 	}
 	
 	/**
@@ -489,6 +722,9 @@ public class Itext {
 		}else{
 			locales.add(locale);
 		}
+		
+		//the rows do not have this locale's translations yet
+		syncedModCount = -1;
 	}
 	
 	public static String getDisplayText(IFormElement elementDef){
@@ -6,21 +6,31 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.Map.Entry;
 
 /**
- * This object represents an itext locale (or language).  Stores the name of the language, plus a hashmap containing the itextID:value pairs.
+ * This object represents an itext locale (or language).  Stores the name of the language, plus the itextID:value pairs.
+ * 
+ * Values are stored by base itextID and then by text form, so that listing the forms of an ID
+ * does not need to go through (and split) every key in the locale. Full IDs in the style of
+ * 'id;form' are still what the methods of this class take and return.
  * @author adewinter
  *
  */
 public class ItextLocale {
 	public String name;
-	public HashMap<String,String> values;
+	
+	/** The translations keyed by base itextID, then by text form (null for the default form). */
+	private HashMap<String,HashMap<String,String>> values;
 	private boolean isDefault;
 	
+	/** Incremented whenever the translations of any locale are changed. */
+	private static int modCount = 0;
+	
 	public ItextLocale(String name) {
 		super();
 		this.name = name;
-		this.values = new HashMap<String, String>();
+		this.values = new HashMap<String, HashMap<String,String>>();
 		this.isDefault = false;
 	}
 
@@ -32,27 +42,40 @@ public class ItextLocale {
 		this.name = name;
 	}
 
-	private HashMap<String, String> getValues() {
-		return values;
-	}
-	
 	/**
 	 * Takes in a list of actively used ItextIDs (including those with special forms!)
 	 * and strips away all unused Itext currently in the internal store
+	 * The entries are swept in a single pass, so usedIDs should be a hashed set.
 	 * @param usedIDs
+	 * @return the full IDs which have been removed
 	 */
-	public void removeUnusedItext(List<String> usedIDs){
-		HashMap<String, String> allValues = this.getValues();
+	public List<String> removeUnusedItext(Set<String> usedIDs){
 		List<String> unusedIDs = new ArrayList<String>();
-		for(String fullID: allValues.keySet()){
-			if(!usedIDs.contains(fullID)){
-				unusedIDs.add(fullID);
+		Iterator<Entry<String,HashMap<String,String>>> ids = values.entrySet().iterator();
+		while(ids.hasNext()){
+			Entry<String,HashMap<String,String>> entry = ids.next();
+			String baseID = entry.getKey();
+			HashMap<String,String> forms = entry.getValue();
+			
+			Iterator<String> iter = forms.keySet().iterator();
+			while(iter.hasNext()){
+				String form = iter.next();
+				String fullID = (form == null) ? baseID : baseID + ";" + form;
+				if(!usedIDs.contains(fullID)){
+					unusedIDs.add(fullID);
+					iter.remove();
+				}
+			}
+			
+			if(forms.isEmpty()){
+				ids.remove();
 			}
 		}
 		
-		for(String unusedID: unusedIDs){
-			this.removeTranslation(unusedID);
+		if(!unusedIDs.isEmpty()){
+			modCount++;
 		}
+		return unusedIDs;
 	}
 	
 	/**
@@ -62,10 +85,11 @@ public class ItextLocale {
 	 */
 	public ArrayList<String> getAvailableForms(String textID){
 		ArrayList<String> keys = new ArrayList<String>();
-		for (String key: getValues().keySet()){
-			if(key.contains(";")){
-				if(!key.split(";")[0].equals(textID))continue;
-				keys.add(key.split(";")[1]);
+		HashMap<String,String> forms = values.get(textID);
+		if(forms != null){
+			for(String form : forms.keySet()){
+				if(form != null)
+					keys.add(form);
 			}
 		}
 		return keys;
@@ -75,15 +99,8 @@ public class ItextLocale {
 	 * THIS METHOD WILL DELETE ALL THE LANGUAGE DATA (KEY;VALUE)s 
 	 */
 	public void clearLanguageData(){
-		this.values = new HashMap<String, String>();
-	}
-	
-	/**
-	 * Don't use this unless you know what you're doing.
-	 * @param values
-	 */
-	private void setValues(HashMap<String, String> values) {
-		this.values = values;
+		this.values = new HashMap<String, HashMap<String,String>>();
+		modCount++;
 	}
 	
 	/**
@@ -92,7 +109,11 @@ public class ItextLocale {
 	 * @param value
 	 */
 	public void setTranslation(String fullID, String value){
-		values.put(fullID, value);
+		int pos = fullID.indexOf(';');
+		if(pos < 0)
+			setTranslation(fullID, null, value);
+		else
+			setTranslation(fullID.substring(0, pos), fullID.substring(pos + 1), value);
 	}
 	
 	/**
@@ -103,22 +124,50 @@ public class ItextLocale {
 	 * @param value
 	 */
 	private void setTranslation(String ID, String form, String value){
-		if(form!=null)
-			setTranslation(ID+";"+form, value);
-		else
-			setTranslation(ID,value);
+		HashMap<String,String> forms = values.get(ID);
+		if(forms == null){
+			forms = new HashMap<String, String>();
+			values.put(ID, forms);
+		}
+		boolean changed = value == null ? (forms.get(form) != null || !forms.containsKey(form)) : !value.equals(forms.get(form));
+		forms.put(form, value);
+		if(changed)
+			modCount++;
 	}
 	
 	public String getTranslation(String fullID){
-		return values.get(fullID);
+		int pos = fullID.indexOf(';');
+		if(pos < 0)
+			return getTranslation(fullID, null);
+		return getTranslation(fullID.substring(0, pos), fullID.substring(pos + 1));
 	}
 	
 	public boolean hasID(String fullID){
-		return values.get(fullID)!=null;
+		return getTranslation(fullID)!=null;
+	}
+	
+	/**
+	 * Checks if this locale has an entry for the given full ID, even if its value is null
+	 * @param fullID
+	 */
+	public boolean containsID(String fullID){
+		int pos = fullID.indexOf(';');
+		HashMap<String,String> forms = values.get(pos < 0 ? fullID : fullID.substring(0, pos));
+		return forms != null && forms.containsKey(pos < 0 ? null : fullID.substring(pos + 1));
 	}
 	
 	public void removeTranslation(String fullID){
-		values.remove(fullID);
+		int pos = fullID.indexOf(';');
+		String ID = (pos < 0) ? fullID : fullID.substring(0, pos);
+		String form = (pos < 0) ? null : fullID.substring(pos + 1);
+		
+		HashMap<String,String> forms = values.get(ID);
+		if(forms != null){
+			forms.remove(form);
+			if(forms.isEmpty())
+				values.remove(ID);
+			modCount++;
+		}
 	}
 	/**
 	 * Gets a translation. If no form is present, use null
@@ -127,10 +176,11 @@ public class ItextLocale {
 	 * @return
 	 */
 	public String getTranslation(String ID, String form){
-		if(form == null){
-			return getTranslation(ID);
+		HashMap<String,String> forms = values.get(ID);
+		if(forms == null){
+			return null;
 		}
-		return getTranslation(ID+";"+form);
+		return forms.get(form);
 	}
 	
 	/**
@@ -183,45 +233,50 @@ public class ItextLocale {
 	 * @return
 	 */
 	public HashSet<String> getAvailableItextIDs(){
+		return new HashSet<String>(values.keySet());
+	}
+	
+	/**
+	 * Returns all the IDs in this locale, including their special forms (e.g. 'someID;long')
+	 * @return a new set of full IDs
+	 */
+	public Set<String> getAllFULLIds(){
 		HashSet<String> keys = new HashSet<String>();
-		for(String k : values.keySet()){
-			if(k.contains(";")){
-				keys.add(k.split(";")[0]);
-			}else{
-				keys.add(k);
+		for(Entry<String,HashMap<String,String>> entry : values.entrySet()){
+			String ID = entry.getKey();
+			for(String form : entry.getValue().keySet()){
+				keys.add(form == null ? ID : ID + ";" + form);
 			}
 		}
-		
 		return keys;
 	}
 	
-	public Set<String> getAllFULLIds(){
-		return values.keySet();
-	}
-	
 	/**
 	 * Used to rename and textID in this locale (including those that have special forms)
 	 * @param oldID - This is the BASE text ID (do /not/ include special forms!)
 	 * @param newID - This is the BASE text ID (do /not/ include special forms!)
 	 */
 	public void renameID(String oldID,String newID){
-		Iterator<String> valuesIterator = getAllFULLIds().iterator();
-		HashMap<String,String> newKeys = new HashMap<String, String>();
+		HashMap<String,String> forms = values.remove(oldID);
+		if(forms == null)
+			return;
+		modCount++;
 		
-		while(valuesIterator.hasNext()){
-			String fullID = valuesIterator.next();
-			if(Itext.hasID(fullID, oldID)){
-				String textVal = values.get(fullID); //get the value before removing
-				valuesIterator.remove();
-				String newFullID = fullID.replaceFirst(oldID, newID);
-				newKeys.put(newFullID, textVal);
-			}
-		}
-		
-		//populate our store with the modified key-val pairs.
-		for(String k: newKeys.keySet()){
-			values.put(k, newKeys.get(k));
-		}
+		HashMap<String,String> existingForms = values.get(newID);
+		if(existingForms == null)
+			values.put(newID, forms);
+		else
+			existingForms.putAll(forms); //the renamed values win, as they always have.
+	}
+	
+	/**
+	 * Gets a counter which changes whenever the translations of any locale are changed,
+	 * such that copies of the itext data (like the rows of the itext grid) can tell when
+	 * they are out of date.
+	 * @return the modification count
+	 */
+	public static int getModCount(){
+		return modCount;
 	}
 	
 	/**
@@ -229,8 +284,9 @@ public class ItextLocale {
 	 * @return true if any keys exist, false if it is empty.
 	 */
 	public boolean hasItext(){
-		for(String s: values.keySet()){
-			if(s != null && !s.isEmpty()){
+		for(Entry<String,HashMap<String,String>> entry : values.entrySet()){
+			HashMap<String,String> forms = entry.getValue();
+			if(!entry.getKey().isEmpty() || forms.size() > 1 || !forms.containsKey(null)){
 				return true;
 			}
 		}
@@ -11,12 +11,11 @@ import org.openrosa.client.util.Itext;
 import org.openrosa.client.util.ItextParser;
 import org.openrosa.client.util.XEPResponse;
 import org.openrosa.client.xforms.XformParser;
-import org.openrosa.client.xforms.XhtmlBuilder;
+import org.openrosa.client.xforms.XformSavePipeline;
 import org.openrosa.client.PurcConstants;
 import org.openrosa.client.controller.IFormSelectionListener;
 import org.openrosa.client.controller.OpenFileDialogEventListener;
 import org.openrosa.client.util.FormUtil;
-import org.openrosa.client.xforms.XmlUtil;
 
 import com.extjs.gxt.ui.client.store.ListStore;
 import com.google.gwt.core.client.GWT;
@@ -52,6 +51,11 @@ public class CenterWidget extends Composite implements IFileListener,IFormSelect
 	DesignTabWidget designWidget = new DesignTabWidget(this);
 	private TextTabWidget itextWidget = new TextTabWidget(this);
 
+	/**
+	 * Writes the form into its xforms document and xml, skipping whatever has not changed since the last save.
+	 */
+	private XformSavePipeline savePipeline = new XformSavePipeline();
+
 	/**
 	 * this is a flag the onSave() method checks to see if it should show the xml window when it saves.
 	 */
@@ -137,6 +141,7 @@ public class CenterWidget extends Composite implements IFileListener,IFormSelect
 
 
 		Itext.clearLocales();
+		savePipeline.reset();
 		Document doc = ItextParser.parse(xml);
 		FormDef formDef = XformParser.getFormDef(doc);
 
@@ -180,27 +185,15 @@ public class CenterWidget extends Composite implements IFileListener,IFormSelect
 		}
 
 		designWidget.commitChanges();
+		itextWidget.commitItext();
 
-		Document doc = formDef.getDoc();
-
-		if(doc != null){
-			formDef.updateDoc(false);
-		}else{
-			doc = XhtmlBuilder.fromFormDef2XhtmlDoc(formDef);
-			formDef.setDoc(doc);
-			formDef.setXformsNode(doc.getDocumentElement());
-		}
-		ItextParser.updateItextBlock(formDef);
-		itextWidget.save(false); //calls onSaveItext() below
-		doc.getDocumentElement().setAttribute("xmlns:jr", "http://openrosa.org/javarosa");
-		doc.getDocumentElement().setAttribute("xmlns", "http://www.w3.org/2002/xforms");
-
-		xml = FormUtil.formatXml(XmlUtil.fromDoc2String(doc));
-
-		if(formDef != null)
-			formDef.setXformXml(xml);
-
+		xml = savePipeline.save(formDef);
+		formDef.setXformXml(xml);
 		xformsWidget.setXform(xml);
+
+		//update form outline with the itext changes
+		if(savePipeline.isItextWritten())
+			designWidget.refreshForm(formDef);
 		
 		//hack
 		cleanupBadXML(formDef.getDoc());
@@ -223,10 +216,7 @@ public class CenterWidget extends Composite implements IFileListener,IFormSelect
 			Window.alert("FormDef is null. Can't save Itext");
 			return;
 		}
-		String xml = null;
-
-		ItextParser.updateItextBlock(formDef);
-		xml = FormUtil.formatXml(XmlUtil.fromDoc2String(formDef.getDoc()));
+		String xml = savePipeline.save(formDef);
 		//update form outline with the itext changes
 //		formDef = XformParser.getFormDef(ItextParser.parse(xml));
 		designWidget.refreshForm(formDef);
@@ -414,6 +414,7 @@ public class DynamicListsView extends Composite implements ItemSelectionListener
 
 					table.removeRow(row);
 					optionList.remove(row-1);
+					dynamicOptionDef.markChanged();
 
 					if(optionDef.getControlNode() != null && optionDef.getControlNode().getParentNode() != null)
 						optionDef.getControlNode().getParentNode().removeChild(optionDef.getControlNode());
@@ -598,6 +599,7 @@ public class DynamicListsView extends Composite implements ItemSelectionListener
 		optionDef.setId(dynamicOptionDef.getNextOptionId());
 		dynamicOptionDef.setNextOptionId(optionDef.getId() + 1);
 		optionList.add(optionDef);
+		dynamicOptionDef.markChanged();
 		return optionDef;
 	}
 
@@ -725,6 +727,7 @@ public class DynamicListsView extends Composite implements ItemSelectionListener
 	public void moveOptionUp(OptionDef optionDef){
 		List optns = optionList;
 		int index = optns.indexOf(optionDef);
+		dynamicOptionDef.markChanged();
 
 		optns.remove(optionDef);
 
@@ -764,6 +767,7 @@ public class DynamicListsView extends Composite implements ItemSelectionListener
 	public void moveOptionDown(OptionDef optionDef){
 		List optns = optionList;
 		int index = optns.indexOf(optionDef);	
+		dynamicOptionDef.markChanged();
 
 		optns.remove(optionDef);
 
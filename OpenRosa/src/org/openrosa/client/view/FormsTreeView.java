@@ -47,6 +47,7 @@ import com.google.gwt.resources.client.ImageResource;
 import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.DeferredCommand;
+import com.google.gwt.user.client.IncrementalCommand;
 import com.google.gwt.user.client.Element;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.AbstractImagePrototype;
@@ -127,6 +128,12 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 
 	private TreePanel treePanel;
 
+	/** The number of milliseconds a form load may run before letting the browser handle events. */
+	private static final int LOAD_SLICE_MILLIS = 50;
+
+	/** Bumped on every form load, such that a load still in progress knows it has been replaced. */
+	private int loadVersion = 0;
+
 
 	/**
 	 * Creates a new instance of the forms tree view widget.
@@ -366,6 +373,7 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 
 		//We do not support loading of more than one form at the same time.
 		treePanel.getStore().removeAll();
+		loadVersion++; //Stops any load still in progress.
 
 		if(formDef.getId() == ModelConstants.NULL_ID)
 			formDef.setId(nextFormId);
@@ -377,6 +385,9 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 
 			this.formDef = formDef;
 
+			if(FormDesignerController.getFormDesignerController() != null)
+				FormDesignerController.getFormDesignerController().formOpened();
+
 			if(formExists(formDef.getId()))
 				return;
 
@@ -394,23 +405,6 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 			treePanel.getStore().add(formRoot, true);
 		}
 
-		if(formDef.getChildren() != null){
-			for(int index = 0; index < formDef.getChildren().size(); index++){
-				IFormElement element = formDef.getChildAt(index);
-				TreeModelItem pageRoot = null;
-
-				if(element instanceof GroupDef){
-					loadGroup((GroupDef)element,formRoot);
-				}else{
-					this.loadQuestion((QuestionDef)element, formRoot);
-				}
-				//We expand only the first page.
-				if(index == 0)
-					treePanel.setExpanded(pageRoot, true);
-				//pageRoot.setState(true);    
-			}
-		}
-
 		if(select && formRoot != null){
 			//tree.setSelectedItem(formRoot);
 			//formRoot.setState(true);
@@ -418,6 +412,169 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 			treePanel.getSelectionModel().select(formRoot, true);
 		}
 
+		//Small forms are loaded right away, while big ones are finished off in
+		//time slices such that the browser stays responsive.
+		FormLoader loader = new FormLoader(formDef, formRoot);
+		if(loader.execute())
+			DeferredCommand.addCommand(loader);
+	}
+
+	/**
+	 * Adds the items of a form to the tree a time slice at a time. Items with the same parent
+	 * are added to the store as one batch, such that the tree handles one add event per batch
+	 * rather than one per item.
+	 */
+	private class FormLoader implements IncrementalCommand {
+
+		private int version = loadVersion;
+
+		/** The item of the form, or null if the form is not shown as the root. */
+		private TreeModelItem formRoot;
+
+		/** The objects waiting to be added, with the parent item and text for each. */
+		private List<Object> objects = new ArrayList<Object>();
+		private List<TreeModelItem> parents = new ArrayList<TreeModelItem>();
+		private List<String> texts = new ArrayList<String>();
+
+		/** The index of the next object to add. */
+		private int next = 0;
+
+		/** The number of items in the whole form, for reporting progress. */
+		private int total;
+
+		/** The last top level item added. */
+		private TreeModelItem lastRoot;
+
+		private boolean showingProgress = false;
+
+		public FormLoader(FormDef formDef, TreeModelItem formRoot){
+			this.formRoot = formRoot;
+			total = countItems(formDef.getChildren());
+			queueElements(formDef.getChildren(), formRoot);
+		}
+
+		public boolean execute(){
+			if(version != loadVersion)
+				return false; //Another form load has started.
+
+			long end = System.currentTimeMillis() + LOAD_SLICE_MILLIS;
+
+			List<TreeModelItem> batch = new ArrayList<TreeModelItem>();
+			TreeModelItem batchParent = null;
+			while(next < objects.size() && System.currentTimeMillis() < end){
+				Object userObject = objects.get(next);
+				TreeModelItem parent = parents.get(next);
+				String text = texts.get(next);
+				next++;
+
+				if(parent != batchParent){
+					addBatch(batchParent, batch);
+					batch = new ArrayList<TreeModelItem>();
+					batchParent = parent;
+				}
+
+				TreeModelItem item = new TreeModelItem(text != null ? text : Itext.getDisplayText((IFormElement)userObject), userObject, parent);
+				batch.add(item);
+				if(parent == formRoot)
+					lastRoot = item;
+
+				queueChildren(userObject, item);
+			}
+			addBatch(batchParent, batch);
+
+			if(next < objects.size()){
+				showProgress();
+				return true;
+			}
+
+			//The toolbar ends up as when each item was added in turn, which only depends on the last one.
+			TreeModelItem last = lastRoot;
+			while(last != null && last.getChildCount() > 0)
+				last = (TreeModelItem)last.getChild(last.getChildCount() - 1);
+			if(last != null && last.getUserObject() instanceof IFormElement)
+				((FormDesignerController)formDesignerListener).alertToolbarQuestionAdded((IFormElement)last.getUserObject());
+
+			if(showingProgress)
+				FormUtil.dlg.hide();
+			return false;
+		}
+
+		private void addBatch(TreeModelItem parent, List<TreeModelItem> batch){
+			if(batch.isEmpty())
+				return;
+
+			if(parent == null)
+				treePanel.getStore().add(batch, false);
+			else
+				treePanel.getStore().add(parent, batch, false);
+		}
+
+		private void showProgress(){
+			if(!showingProgress){
+				FormUtil.dlg.center();
+				showingProgress = true;
+			}
+			FormUtil.dlg.center(LocaleText.get("openingForm") + " " + (next * 100 / Math.max(total, 1)) + "%");
+		}
+
+		private void queue(Object userObject, TreeModelItem parent, String text){
+			objects.add(userObject);
+			parents.add(parent);
+			texts.add(text);
+		}
+
+		private void queueElements(List<IFormElement> elements, TreeModelItem parent){
+			if(elements == null)
+				return;
+
+			for(IFormElement element : elements)
+				queue(element, parent, null);
+		}
+
+		private void queueChildren(Object userObject, TreeModelItem item){
+			if(userObject instanceof GroupDef)
+				queueElements(((GroupDef)userObject).getChildren(), item);
+			else if(userObject instanceof QuestionDef){
+				QuestionDef questionDef = (QuestionDef)userObject;
+				if(questionDef.getDataType() == QuestionDef.QTN_TYPE_LIST_EXCLUSIVE || 
+						questionDef.getDataType() == QuestionDef.QTN_TYPE_LIST_MULTIPLE){
+					List options = questionDef.getOptions();
+					if(options != null){
+						for(int index = 0; index < options.size(); index++)
+							queue(options.get(index), item, null);
+					}
+				}
+				else if(questionDef.getDataType() == QuestionDef.QTN_TYPE_BOOLEAN){
+					queue(new OptionDef(1, QuestionDef.TRUE_DISPLAY_VALUE, QuestionDef.TRUE_VALUE,questionDef), item, QuestionDef.TRUE_DISPLAY_VALUE);
+					queue(new OptionDef(2, QuestionDef.FALSE_DISPLAY_VALUE, QuestionDef.FALSE_VALUE,questionDef), item, QuestionDef.FALSE_DISPLAY_VALUE);
+				}
+				else if(questionDef.getDataType() == QuestionDef.QTN_TYPE_REPEAT)
+					queueElements(questionDef.getRepeatQtnsDef().getChildren(), item);
+			}
+		}
+
+		private int countItems(List<IFormElement> elements){
+			if(elements == null)
+				return 0;
+
+			int count = 0;
+			for(IFormElement element : elements){
+				count++;
+				if(element instanceof GroupDef)
+					count += countItems(element.getChildren());
+				else if(element instanceof QuestionDef){
+					QuestionDef questionDef = (QuestionDef)element;
+					if(questionDef.getDataType() == QuestionDef.QTN_TYPE_LIST_EXCLUSIVE || 
+							questionDef.getDataType() == QuestionDef.QTN_TYPE_LIST_MULTIPLE)
+						count += questionDef.getOptions() != null ? questionDef.getOptions().size() : 0;
+					else if(questionDef.getDataType() == QuestionDef.QTN_TYPE_BOOLEAN)
+						count += 2;
+					else if(questionDef.getDataType() == QuestionDef.QTN_TYPE_REPEAT)
+						count += countItems(questionDef.getRepeatQtnsDef().getChildren());
+				}
+			}
+			return count;
+		}
 	}
 
 	/**
@@ -1695,6 +1852,7 @@ public class FormsTreeView extends com.extjs.gxt.ui.client.widget.Composite impl
 		int index = parent.getChildren().indexOf(element);
 		parent.getChildren().remove(element);
 		parent.getChildren().add(index, newElement);
+		FormDef.elementsChanged(parent);
 
 		if(newElement.getControlNode() != null){
 			if(newElement instanceof GroupDef){
@@ -426,6 +426,14 @@ public class TextTabWidget extends com.extjs.gxt.ui.client.widget.Composite {
 		grid.reconfigure(Itext.getItextRows(), cm);
 	}
 
+	/**
+	 * Copies any edits in the grid into the Itext model, without saving the form.
+	 */
+	public void commitItext(){
+		Itext.updateModel(grid.getStore());
+		grid.getStore().commitChanges();
+	}
+
 	public void save(boolean showWindow){
 		Itext.updateModel(grid.getStore());
 		TextTabWidget.showWindow = showWindow;
@@ -468,8 +476,7 @@ public class TextTabWidget extends com.extjs.gxt.ui.client.widget.Composite {
 		}		
 		
 		FormDef formDef = Context.getFormDef();
-		List<String> usedIDs = formDef.getAllChildrenItextIDs();
-		Itext.removeUnusedItext(usedIDs);
+		Itext.removeUnusedItext(formDef.getUsedItextIDs());
 		grid.reconfigure(Itext.getItextRows(), cm);
 	}
 }
@@ -0,0 +1,104 @@
+package org.openrosa.client.xforms;
+
+import java.util.HashMap;
+
+import com.google.gwt.xml.client.Element;
+import com.google.gwt.xml.client.Node;
+
+
+/**
+ * An index of the elements of an xforms instance data node keyed by their absolute
+ * nodeset paths (e.g /data/group/question).
+ *
+ * The instance is walked once and only the first element (in document order) for
+ * each path is kept, which is what evaluating the same path with an XPathExpression
+ * and taking its first result gives. Lookups are case insensitive, just like
+ * XPathLocationStep name tests.
+ *
+ * @author daniel
+ *
+ */
+public class DataNodeIndex {
+
+	/** A map of instance data elements keyed by their lower case absolute paths. Null until built. */
+	private HashMap<String,Element> elements;
+
+
+	/**
+	 * Creates an index which is empty until {@link #build(Element)} is called, for
+	 * parsers which only get to know the instance data node part way through.
+	 */
+	public DataNodeIndex(){
+
+	}
+
+	/**
+	 * Creates an index of the given instance data node and all its descendant elements.
+	 *
+	 * @param dataNode the xforms instance data node.
+	 */
+	public DataNodeIndex(Element dataNode){
+		build(dataNode);
+	}
+
+
+	/**
+	 * Indexes the given instance data node and all its descendant elements,
+	 * replacing whatever was indexed before.
+	 *
+	 * @param dataNode the xforms instance data node.
+	 */
+	public void build(Element dataNode){
+		elements = new HashMap<String,Element>();
+		if(dataNode != null)
+			index(dataNode, "");
+	}
+
+	/**
+	 * Checks whether the index has been built.
+	 *
+	 * @return true if built, else false.
+	 */
+	public boolean isBuilt(){
+		return elements != null;
+	}
+
+
+	/**
+	 * Gets the first instance data element with a given absolute path.
+	 *
+	 * @param path the absolute path, starting with the data node name. e.g /data/question
+	 * @return the element, or null if the instance has none at that path.
+	 */
+	public Element getElement(String path){
+		if(path == null || elements == null)
+			return null;
+
+		if(path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+
+		return elements.get(path.toLowerCase());
+	}
+
+
+	/**
+	 * Gets the number of distinct paths in the index.
+	 *
+	 * @return the number of paths.
+	 */
+	public int size(){
+		return elements == null ? 0 : elements.size();
+	}
+
+
+	private void index(Element element, String parentPath){
+		String path = parentPath + "/" + XmlUtil.getNodeName(element).toLowerCase();
+		if(!elements.containsKey(path))
+			elements.put(path, element);
+
+		for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling()){
+			if(child.getNodeType() == Node.ELEMENT_NODE)
+				index((Element)child, path);
+		}
+	}
+}
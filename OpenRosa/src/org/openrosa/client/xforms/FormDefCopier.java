@@ -0,0 +1,459 @@
+package org.openrosa.client.xforms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.Map.Entry;
+
+import org.openrosa.client.model.Calculation;
+import org.openrosa.client.model.Condition;
+import org.openrosa.client.model.DynamicOptionDef;
+import org.openrosa.client.model.FormDef;
+import org.openrosa.client.model.GroupDef;
+import org.openrosa.client.model.IFormElement;
+import org.openrosa.client.model.OptionDef;
+import org.openrosa.client.model.QuestionDef;
+import org.openrosa.client.model.RepeatQtnsDef;
+import org.openrosa.client.model.SkipRule;
+import org.openrosa.client.model.ValidationRule;
+
+import com.google.gwt.xml.client.Document;
+import com.google.gwt.xml.client.Element;
+import com.google.gwt.xml.client.NamedNodeMap;
+import com.google.gwt.xml.client.Node;
+import com.google.gwt.xml.client.XMLParser;
+
+
+/**
+ * Makes a deep copy of a form definition object without going through its xml.
+ *
+ * The xforms document is cloned once, and the original and cloned trees are then walked
+ * side by side to map every element to its clone, so that the nodes the copied objects
+ * point to can be looked up directly. Texts, bindings and expressions are shared with
+ * the original rather than copied.
+ *
+ * @author daniel
+ *
+ */
+public class FormDefCopier {
+
+	/** The prefix which the form designer gives to the xforms nodes it creates. */
+	private static final String XF_PREFIX = "xf:";
+
+	/** The clone of the document for the copy. */
+	private Document copyDoc;
+
+	/** The form being built. */
+	private FormDef copy;
+
+	/** A map of the elements in the original document to their clones. */
+	private HashMap<NodeKey,Node> copyNodes = new HashMap<NodeKey,Node>();
+
+	/** The prefix which replaces our xf prefix in the clone, or null if the xform uses xf too. */
+	private String prefix;
+
+
+	private FormDefCopier(Document doc){
+		if(doc == null)
+			return;
+
+		copyDoc = XMLParser.createDocument();
+		copyDoc.appendChild(copyDoc.importNode(doc.getDocumentElement(), true));
+
+		//New nodes are created with our xf prefix. If the loaded xform used another one,
+		//the cloned nodes are renamed just like XformUtil.normalizeNameSpace() renames
+		//them in the xml when the form is reloaded.
+		prefix = doc.getDocumentElement().getPrefix();
+		if("xf".equals(prefix))
+			prefix = null;
+		else{
+			prefix = (prefix == null || prefix.trim().length() == 0) ? "" : prefix + ":";
+			normalizePrefix(copyDoc.getDocumentElement());
+		}
+
+		mapNodes(doc.getDocumentElement(), copyDoc.getDocumentElement());
+	}
+
+	/**
+	 * Copies a form together with its xforms document.
+	 *
+	 * @param formDef the form to copy.
+	 * @return the new copy of the form.
+	 */
+	public static FormDef copy(FormDef formDef){
+		return new FormDefCopier(formDef.getDoc()).copyForm(formDef);
+	}
+
+	private FormDef copyForm(FormDef formDef){
+		copy = new FormDef();
+		copy.setId(formDef.getId());
+		copy.setName(formDef.getName());
+		copy.setFormKey(formDef.getFormKey());
+		copy.setQuestionID(formDef.getQuestionID());
+		copy.setItextId(formDef.getItextId());
+		copy.setDescriptionTemplate(formDef.getDescriptionTemplate());
+		copy.setLayoutXml(formDef.getLayoutXml());
+		copy.setJavaScriptSource(formDef.getJavaScriptSource());
+		copy.setXformXml(formDef.getXformXml());
+		copy.setLanguageXml(formDef.getLanguageXml());
+		copy.setReadOnly(formDef.isReadOnly());
+
+		if(copyDoc != null){
+			copy.setDoc(copyDoc);
+			copy.setXformsNode(getNode(formDef.getXformsNode()));
+			copy.setModelNode(getNode(formDef.getModelNode()));
+			copy.setBodyNode(getNode(formDef.getBodyNode()));
+			copy.setDataNode(getNode(formDef.getDataNode()));
+		}
+
+		copy.setChildren(copyElements(formDef.getChildren(), copy));
+
+		//Rules point to questions by id, which the copies keep.
+		copy.setSkipRules(copySkipRules(formDef.getSkipRules()));
+		copy.setValidationRules(copyValidationRules(formDef.getValidationRules()));
+		copy.setCalculations(copyCalculations(formDef.getCalculations()));
+		copy.setDynamicOptions(copyDynamicOptions(formDef.getDynamicOptions()));
+
+		return copy;
+	}
+
+	private List<IFormElement> copyElements(List<IFormElement> elements, IFormElement parent){
+		if(elements == null)
+			return null;
+
+		List<IFormElement> copies = new ArrayList<IFormElement>(elements.size());
+		for(IFormElement element : elements)
+			copies.add(copyElement(element, parent));
+		return copies;
+	}
+
+	private IFormElement copyElement(IFormElement element, IFormElement parent){
+		if(element instanceof QuestionDef)
+			return copyQuestion((QuestionDef)element, parent);
+		else if(element instanceof GroupDef)
+			return copyGroup((GroupDef)element, new GroupDef(parent));
+
+		//Any other kind of element has no state beyond what its copy method keeps.
+		return element.copy(parent);
+	}
+
+	private GroupDef copyGroup(GroupDef groupDef, GroupDef copyDef){
+		copyDef.setId(groupDef.getId());
+		copyDef.setQuestionID(groupDef.getQuestionID());
+		copyDef.setText(groupDef.getText());
+		copyDef.setHelpText(groupDef.getHelpText());
+		copyDef.setItextId(groupDef.getItextId());
+		copyDef.setDataType(groupDef.getDataType());
+		copyDef.setRequired(groupDef.isRequired());
+		copyDef.setEnabled(groupDef.isEnabled());
+		copyAdvanced(groupDef, copyDef);
+
+		copyDef.setLabelNode(getNode(groupDef.getLabelNode()));
+		copyDef.setHintNode(getNode(groupDef.getHintNode()));
+		copyDef.setGroupNode(getNode(groupDef.getGroupNode()));
+		copyDef.setBindNode(getNode(groupDef.getBindNode()));
+		copyDef.setDataNode(getNode(groupDef.getDataNode()));
+
+		copyDef.setChildren(copyElements(groupDef.getChildren(), copyDef));
+		return copyDef;
+	}
+
+	private QuestionDef copyQuestion(QuestionDef questionDef, IFormElement parent){
+		QuestionDef copyDef = new QuestionDef(parent);
+		copyDef.setId(questionDef.getId());
+		copyDef.setQuestionID(questionDef.getQuestionID());
+		copyDef.setText(questionDef.getText());
+		copyDef.setHelpText(questionDef.getHelpText());
+		copyDef.setItextId(questionDef.getItextId());
+		copyDef.setDataType(questionDef.getDataType());
+		copyDef.setRequired(questionDef.isRequired());
+		copyDef.setEnabled(questionDef.isEnabled());
+		copyDef.setLocked(questionDef.isLocked());
+		copyDef.setHasUINode(questionDef.hasUINode());
+		copyDef.setRepeatCountNodePath(questionDef.getRepeatCountNodePath());
+		copyAdvanced(questionDef, copyDef);
+
+		//As when the copy was parsed from the document with its data, answers become default values.
+		copyDef.setDefaultValue(questionDef.getAnswer() != null ? questionDef.getAnswer() : questionDef.getDefaultValue());
+
+		copyDef.setLabelNode(getNode(questionDef.getLabelNode()));
+		copyDef.setHintNode(getNode(questionDef.getHintNode()));
+		copyDef.setControlNode(getNode(questionDef.getControlNode()));
+		copyDef.setBindNode(getNode(questionDef.getBindNode()));
+		copyDef.setDataNode(getNode(questionDef.getDataNode()));
+		copyDef.setFirstOptionNode(getNode(questionDef.getFirstOptionNode()));
+
+		if(questionDef.getDataType() == QuestionDef.QTN_TYPE_REPEAT){
+			RepeatQtnsDef repeatQtnsDef = questionDef.getRepeatQtnsDef();
+			if(repeatQtnsDef != null)
+				copyDef.setRepeatQtnsDef((RepeatQtnsDef)copyGroup(repeatQtnsDef, new RepeatQtnsDef(copyDef)));
+		}
+		else if(questionDef.getOptions() != null)
+			copyDef.setOptions(copyOptions(questionDef.getOptions(), copyDef));
+
+		return copyDef;
+	}
+
+	private List<OptionDef> copyOptions(List options, QuestionDef parent){
+		List<OptionDef> copies = new ArrayList<OptionDef>(options.size());
+		for(int index = 0; index < options.size(); index++){
+			OptionDef optionDef = (OptionDef)options.get(index);
+			OptionDef copyDef = new OptionDef(parent);
+			copyDef.setId(optionDef.getId());
+			copyDef.setText(optionDef.getText());
+			copyDef.setQuestionID(optionDef.getQuestionID());
+			copyDef.setItextId(optionDef.getItextId());
+			copyDef.setDefaultValue(optionDef.getDefaultValue());
+			copyDef.setLabelNode(getNode(optionDef.getLabelNode()));
+			copyDef.setValueNode(getNode(optionDef.getValueNode()));
+			copyDef.setControlNode(getNode(optionDef.getControlNode()));
+			copies.add(copyDef);
+		}
+		return copies;
+	}
+
+	private void copyAdvanced(IFormElement element, IFormElement copyDef){
+		copyDef.setAdvancedRelevant(element.getAdvancedRelevant());
+		copyDef.setHasAdvancedRelevant(element.hasAdvancedRelevant());
+		copyDef.setAdvancedConstraint(element.getAdvancedConstraint());
+		copyDef.setHasAdvancedConstraint(element.hasAdvancedConstraint());
+		copyDef.setAdvancedCalculate(element.getAdvancedCalculate());
+		copyDef.setHasAdvancedCalculate(element.hasAdvancedCalculate());
+	}
+
+	private Vector copySkipRules(Vector rules){
+		if(rules == null)
+			return null;
+
+		Vector copies = new Vector(rules.size());
+		for(int index = 0; index < rules.size(); index++){
+			SkipRule rule = (SkipRule)rules.elementAt(index);
+			Vector actionTargets = rule.getActionTargets() != null ? new Vector(rule.getActionTargets()) : null;
+			SkipRule copyRule = new SkipRule(rule.getId(), copyConditions(rule.getConditions()), rule.getAction(), actionTargets);
+			copyRule.setConditionsOperator(rule.getConditionsOperator());
+			copies.addElement(copyRule);
+		}
+		return copies;
+	}
+
+	private Vector copyValidationRules(Vector rules){
+		if(rules == null)
+			return null;
+
+		Vector copies = new Vector(rules.size());
+		for(int index = 0; index < rules.size(); index++){
+			ValidationRule rule = (ValidationRule)rules.elementAt(index);
+			ValidationRule copyRule = new ValidationRule(rule.getQuestionId(), copyConditions(rule.getConditions()), rule.getErrorMessage());
+			copyRule.setConditionsOperator(rule.getConditionsOperator());
+			copyRule.setItextId(rule.getItextId());
+			copyRule.setFormDef(copy);
+			copies.addElement(copyRule);
+		}
+		return copies;
+	}
+
+	private Vector copyConditions(Vector conditions){
+		if(conditions == null)
+			return null;
+
+		Vector copies = new Vector(conditions.size());
+		for(int index = 0; index < conditions.size(); index++){
+			Condition condition = (Condition)conditions.elementAt(index);
+			Condition copyCondition = new Condition(condition);
+			copyCondition.setSecondValue(condition.getSecondValue());
+			if(condition.getValueQtnDef() != null)
+				copyCondition.setValueQtnDef(copy.getQuestion(condition.getValueQtnDef().getId()));
+			copies.addElement(copyCondition);
+		}
+		return copies;
+	}
+
+	private Vector copyCalculations(Vector calculations){
+		if(calculations == null)
+			return null;
+
+		Vector copies = new Vector(calculations.size());
+		for(int index = 0; index < calculations.size(); index++)
+			copies.addElement(new Calculation((Calculation)calculations.elementAt(index)));
+		return copies;
+	}
+
+	private HashMap<Integer,DynamicOptionDef> copyDynamicOptions(HashMap<Integer,DynamicOptionDef> dynamicOptions){
+		if(dynamicOptions == null)
+			return null;
+
+		HashMap<Integer,DynamicOptionDef> copies = new HashMap<Integer,DynamicOptionDef>();
+		Iterator<Entry<Integer,DynamicOptionDef>> iterator = dynamicOptions.entrySet().iterator();
+		while(iterator.hasNext()){
+			Entry<Integer,DynamicOptionDef> entry = iterator.next();
+			DynamicOptionDef dynamicOptionDef = entry.getValue();
+			QuestionDef questionDef = copy.getQuestion(dynamicOptionDef.getQuestionId());
+			if(questionDef == null)
+				continue;
+
+			DynamicOptionDef copyDef = new DynamicOptionDef();
+			copyDef.setQuestionId(dynamicOptionDef.getQuestionId());
+			copyDef.setDataNode(getNode(dynamicOptionDef.getDataNode()));
+
+			HashMap<Integer,List<OptionDef>> parentToChildOptions = new HashMap<Integer,List<OptionDef>>();
+			Iterator<Entry<Integer,List<OptionDef>>> options = dynamicOptionDef.getParentToChildOptions().entrySet().iterator();
+			while(options.hasNext()){
+				Entry<Integer,List<OptionDef>> option = options.next();
+				parentToChildOptions.put(option.getKey(), copyOptions(option.getValue(), questionDef));
+			}
+			copyDef.setParentToChildOptions(parentToChildOptions);
+
+			copies.put(entry.getKey(), copyDef);
+		}
+		return copies;
+	}
+
+	/**
+	 * Maps an element and all the elements below it to their clones. The clone has
+	 * the same element structure as the original, though its text nodes may differ.
+	 */
+	private void mapNodes(Node node, Node copyNode){
+		copyNodes.put(new NodeKey(node), copyNode);
+
+		Node child = getElement(node.getFirstChild());
+		Node copyChild = getElement(copyNode.getFirstChild());
+		while(child != null && copyChild != null){
+			mapNodes(child, copyChild);
+			child = getElement(child.getNextSibling());
+			copyChild = getElement(copyChild.getNextSibling());
+		}
+	}
+
+	/**
+	 * Gets the first element starting from a given node and going through its next siblings.
+	 */
+	private static Node getElement(Node node){
+		while(node != null && node.getNodeType() != Node.ELEMENT_NODE)
+			node = node.getNextSibling();
+		return node;
+	}
+
+	/**
+	 * Gets the clone of a node of the original document. A node which is not
+	 * in the original document is cloned on its own.
+	 *
+	 * @param node the node of the original document.
+	 * @return the matching node of the clone, or null if the node is null.
+	 */
+	private Element getNode(Element node){
+		if(node == null || copyDoc == null)
+			return null;
+
+		Node copyNode = copyNodes.get(new NodeKey(node));
+		if(copyNode == null){
+			Element copyElement = (Element)copyDoc.importNode(node, true); //Not attached to the document.
+			return prefix == null ? copyElement : normalizePrefix(copyElement);
+		}
+		return (Element)copyNode;
+	}
+
+	/**
+	 * Renames an element of the clone and all elements below it whose names, or the names
+	 * of whose attributes, have our xf prefix, so that they use the prefix of the xform instead.
+	 *
+	 * @param element the element of the clone.
+	 * @return the element itself, or the new element which has replaced it.
+	 */
+	private Element normalizePrefix(Element element){
+		Element renamed = element;
+		if(element.getNodeName().startsWith(XF_PREFIX)){
+			renamed = copyDoc.createElement(prefix + element.getNodeName().substring(XF_PREFIX.length()));
+			while(element.getFirstChild() != null)
+				renamed.appendChild(element.getFirstChild());
+		}
+
+		//Take a copy of the attributes since renaming them changes the live list.
+		NamedNodeMap attributes = element.getAttributes();
+		Vector<Node> attributeNodes = new Vector<Node>();
+		for(int index = 0; index < attributes.getLength(); index++)
+			attributeNodes.add(attributes.item(index));
+
+		for(Node attribute : attributeNodes){
+			String name = attribute.getNodeName();
+			if(name.startsWith(XF_PREFIX)){
+				element.removeAttribute(name);
+				name = prefix + name.substring(XF_PREFIX.length());
+			}
+			else if(renamed == element)
+				continue;
+			renamed.setAttribute(name, attribute.getNodeValue());
+		}
+
+		if(renamed != element && element.getParentNode() != null)
+			element.getParentNode().replaceChild(renamed, element);
+
+		Node child = getElement(renamed.getFirstChild());
+		while(child != null){
+			Node next = getElement(child.getNextSibling());
+			normalizePrefix((Element)child);
+			child = next;
+		}
+
+		return renamed;
+	}
+
+	/**
+	 * Map key for a node of the original document. GWT hands out a new wrapper each time
+	 * a node is fetched, and two wrappers of the same node are only known to be equal,
+	 * so the hash is worked out from what the node looks like: its name, attributes and
+	 * the first few nodes below it. Nodes which look the same are told apart by equals.
+	 */
+	private static class NodeKey {
+
+		/** The number of nodes, the node itself included, which the hash is worked out from. */
+		private static final int HASH_NODE_COUNT = 8;
+
+		private Node node;
+		private int hash;
+
+		public NodeKey(Node node){
+			this.node = node;
+
+			int count = 0;
+			Node current = node;
+			while(current != null && count++ < HASH_NODE_COUNT){
+				hash = hash * 31 + hash(current);
+
+				//Next node in document order, without leaving the subtree of the node.
+				Node next = current.getFirstChild();
+				while(next == null && current != node){
+					next = current.getNextSibling();
+					if(next == null)
+						current = current.getParentNode();
+				}
+				current = next;
+			}
+		}
+
+		private static int hash(Node node){
+			int hash = node.getNodeName().hashCode();
+			if(node.getNodeType() == Node.ELEMENT_NODE){
+				NamedNodeMap attributes = node.getAttributes();
+				for(int index = 0; index < attributes.getLength(); index++){
+					Node attribute = attributes.item(index);
+					hash += attribute.getNodeName().hashCode() ^ String.valueOf(attribute.getNodeValue()).hashCode();
+				}
+			}
+			else if(node.getNodeValue() != null)
+				hash = hash * 31 + node.getNodeValue().hashCode();
+			return hash;
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			return obj instanceof NodeKey && node.equals(((NodeKey)obj).node);
+		}
+	}
+}
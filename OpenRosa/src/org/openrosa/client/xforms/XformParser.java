@@ -83,7 +83,8 @@ public class XformParser {
 		else //Value of false creates bugs where repeat widgets are not loaded properly on data preview
 			formDef.updateDoc(true); //formDef.updateDoc(false);
 
-		return fromXform2FormDef(XformUtil.normalizeNameSpace(formDef.getDoc(),XmlUtil.fromDoc2String(formDef.getDoc())));
+		//Cloning the objects and document directly is much cheaper than serializing and parsing the whole form.
+		return FormDefCopier.copy(formDef);
 
 		/*if(formDef.getDoc() == null)
 			return new FormDef(formDef);
@@ -167,30 +168,6 @@ public class XformParser {
 		return formDef;
 	}
 
-	/**
-	 * Converts an xforms document into a form definition object and also
-	 * replaces its model with the given one.
-	 * 
-	 * @param xformXml the xforms document xml.
-	 * @param modelXml the new xforms model xml.
-	 * @return the form definition object.
-	 */
-	public static FormDef fromXform2FormDef(String xformXml, String modelXml){
-		Document doc = XmlUtil.getDocument(xformXml);
-
-		//If model xml has been supplied, use it to replace the existing one.
-		if(modelXml != null){
-			Element node = XmlUtil.getDocument(modelXml).getDocumentElement();//XformConverter.getNode(XformConverter.getDocument(modelXml).getDocumentElement().toString());
-			Element dataNode = XformUtil.getInstanceDataNode(doc);
-			Node parent = dataNode.getParentNode();
-			parent.appendChild(node);
-			parent.replaceChild(node,dataNode);
-		}
-
-		return getFormDef(doc);
-	}
-
-
 	/**
 	 * Converts an xml document object to a form definition object.
 	 * 
@@ -208,16 +185,18 @@ public class XformParser {
 		Vector repeats = new Vector();
 		HashMap rptKidMap = new HashMap();
 		List<QuestionDef> orphanDynOptionQns = new ArrayList<QuestionDef>();
+		DataNodeIndex dataNodeIndex = new DataNodeIndex();
+		HashMap<String,QuestionDef> dataPathQtnMap = new HashMap<String,QuestionDef>();
 
 		currentQuestionId = 1;
 		currentPageNo = 1;
 
-		parseElement(formDef,rootNode,id2VarNameMap,null,relevants,repeats,rptKidMap,(int)0,null,constraints,orphanDynOptionQns);
+		parseElement(formDef,rootNode,id2VarNameMap,null,relevants,repeats,rptKidMap,(int)0,null,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 
 		if(formDef.getName() == null || formDef.getName().length() == 0)
 			formDef.setName(formDef.getQuestionID());
 
-		DefaultValueUtil.setDefaultValues(XformUtil.getInstanceDataNode(doc),formDef,id2VarNameMap); //TODO Very slow needs optimisation for very big forms
+		DefaultValueUtil.setDefaultValues(getDataNodeIndex(formDef,dataNodeIndex),dataPathQtnMap);
 		RelevantParser.addSkipRules(formDef,relevants);
 		ConstraintParser.addValidationRules(formDef,constraints);
 
@@ -241,6 +220,7 @@ public class XformParser {
 				//element.getParent().removeChild(element); //We do not want to lose the bindings if any.
 				GWT.log("removing node:"+element.getQuestionID());
 				element.getParent().getChildren().remove(element);
+				FormDef.elementsChanged(element.getParent());
 				index--;
 			}
 			else if(element instanceof GroupDef){
@@ -268,9 +248,11 @@ public class XformParser {
 	 * 					  question definition objects.
 	 * @param orphanDynOptionQns a list of dynamic option definition questions who parent
 	 *                           questions have not yet been parsed.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 * @return the question we are currently parsing.
 	 */
-	private static IFormElement parseElement(FormDef formDef, Element element, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns){
+	private static IFormElement parseElement(FormDef formDef, Element element, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap){
 		String label = "";
 		String hint = "";
 		String value = "";
@@ -293,10 +275,10 @@ public class XformParser {
 			if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_SUBMIT_MINUS_PREFIX))
 				continue;
 			else if (XmlUtil.nodeNameEquals(tagname,"head"))
-				parseElement(formDef,child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				parseElement(formDef,child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			else if (XmlUtil.nodeNameEquals(tagname,"body")){
 				formDef.setBodyNode(child);
-				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			}
 			else if (XmlUtil.nodeNameEquals(tagname,"title")){
 				formDef.setName(getText(child));
@@ -306,11 +288,11 @@ public class XformParser {
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_MODEL_MINUS_PREFIX)){
 				formDef.setModelNode((Element)child);
 				formDef.setXformsNode(child.getOwnerDocument().getDocumentElement() /*child.getParentNode()*/);
-				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			}
 			//else if (tagname.equals(NODE_NAME_GROUP) || tagname.equals(NODE_NAME_GROUP_MINUS_PREFIX)){
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_GROUP_MINUS_PREFIX)){
-				/*questionDef = */parseGroupElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				/*questionDef = */parseGroupElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			}
 			//else if(tagname.equals(NODE_NAME_INSTANCE)||tagname.equals(NODE_NAME_INSTANCE_MINUS_PREFIX)) {
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_INSTANCE_MINUS_PREFIX)){
@@ -318,7 +300,7 @@ public class XformParser {
 			} 
 			//else if (tagname.equals(NODE_NAME_BIND)||tagname.equals(NODE_NAME_BIND_MINUS_PREFIX) /*|| tagname.equals(ATTRIBUTE_NAME_REF)*/) {
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_BIND_MINUS_PREFIX)){
-				IFormElement qtn = parseBindElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				IFormElement qtn = parseBindElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 				qtn.setHasUINode(false);
 			} 
 			//else if (tagname.equals(NODE_NAME_INPUT) || tagname.equals(NODE_NAME_SELECT1) || tagname.equals(NODE_NAME_SELECT) || tagname.equals(NODE_NAME_REPEAT)
@@ -329,7 +311,7 @@ public class XformParser {
 					XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_TRIGGER_MINUS_PREFIX)){
 
 				NodeContext nodeContext = new NodeContext(label, hint, value, labelNode, hintNode, valueNode);
-				questionDef = parseUiElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,nodeContext);
+				questionDef = parseUiElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap,nodeContext);
 				questionDef.setHasUINode(true);
 				label = nodeContext.getLabel();
 				hint = nodeContext.getHint();
@@ -354,7 +336,7 @@ public class XformParser {
 				parseLabelElement(formDef, child, questionDef, nodeContext);
 
 				if(questionDef instanceof GroupDef)
-					setLabelValueNode(formDef, element, questionDef, parentQtn, nodeContext);
+					setLabelValueNode(formDef, element, questionDef, parentQtn, nodeContext, dataNodeIndex, dataPathQtnMap);
 
 				label = nodeContext.getLabel();
 				hint = nodeContext.getHint();
@@ -379,7 +361,7 @@ public class XformParser {
 			//else if (tagname.equals(NODE_NAME_ITEM)||tagname.equals(NODE_NAME_ITEM_MINUS_PREFIX))
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_ITEM_MINUS_PREFIX)){
 				OptionDef optionDef = new OptionDef((QuestionDef)questionDef);
-				parseElement(formDef, child,id2VarNameMap,optionDef,relevants,repeatQtns,rptKidMap,currentPageNo,questionDef,constraints,orphanDynOptionQns);
+				parseElement(formDef, child,id2VarNameMap,optionDef,relevants,repeatQtns,rptKidMap,currentPageNo,questionDef,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			//else if (tagname.equals(NODE_NAME_VALUE)||tagname.equals(NODE_NAME_VALUE_MINUS_PREFIX)){
 			}else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_VALUE_MINUS_PREFIX)){
 				if(true /*child.getChildNodes().getLength() != 0*/){
@@ -389,12 +371,12 @@ public class XformParser {
 				}
 			}
 			else
-				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+				parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 			// TODO - how are other elements like html:p or br handled?
 		}
 
 		NodeContext nodeContext = new NodeContext(label, hint, value, labelNode, hintNode, valueNode);;
-		setLabelValueNode(formDef, element, questionDef, parentQtn, nodeContext);
+		setLabelValueNode(formDef, element, questionDef, parentQtn, nodeContext, dataNodeIndex, dataPathQtnMap);
 
 		label = nodeContext.getLabel();
 		hint = nodeContext.getHint();
@@ -415,8 +397,10 @@ public class XformParser {
 	 * @param questionDef the question we are currently parsing.
 	 * @param parentQtn the parent of the question we are currently processing.
 	 * @param nodeContext the node context.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 */
-	private static void setLabelValueNode(FormDef formDef, Element element, IFormElement questionDef, IFormElement parentQtn, NodeContext nodeContext){
+	private static void setLabelValueNode(FormDef formDef, Element element, IFormElement questionDef, IFormElement parentQtn, NodeContext nodeContext, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap){
 		boolean hasLabel = !nodeContext.getLabel().isEmpty() ||
 									(	(nodeContext.getLabelNode() != null) &&
 										(nodeContext.getLabelNode().getAttribute("ref") != null) &&
@@ -449,6 +433,7 @@ public class XformParser {
 
 				if(questionDef != parentQtn && parentQtn instanceof GroupDef && questionDef.getParent() != parentQtn){
 					questionDef.getParent().getChildren().remove(questionDef);
+					FormDef.elementsChanged(questionDef.getParent());
 					parentQtn.addChild(questionDef);
 				}
 
@@ -457,7 +442,7 @@ public class XformParser {
 				questionDef.setLabelNode(nodeContext.getLabelNode());
 
 				if(questionDef instanceof QuestionDef)
-					setQuestionDataNode((QuestionDef)questionDef,formDef,parentQtn);
+					setQuestionDataNode((QuestionDef)questionDef,formDef,parentQtn,dataNodeIndex,dataPathQtnMap);
 			}
 			if(nodeContext.getLabelNode() != null){
 				String ref = nodeContext.getLabelNode().getAttribute("ref");
@@ -472,6 +457,21 @@ public class XformParser {
 	}
 
 
+	/**
+	 * Gets the index of the instance data node of the form being parsed,
+	 * building it the first time it is needed.
+	 * 
+	 * @param formDef the form definition object that we are building.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @return the instance data node index.
+	 */
+	private static DataNodeIndex getDataNodeIndex(FormDef formDef, DataNodeIndex dataNodeIndex){
+		if(!dataNodeIndex.isBuilt())
+			dataNodeIndex.build(formDef.getDataNode());
+		return dataNodeIndex;
+	}
+
+
 	/**
 	 * Sets the xforms instance data node child of a given question definition object.
 	 * 
@@ -479,10 +479,18 @@ public class XformParser {
 	 * @param formDef the form to which the question belongs.
 	 * @param parentQtn the parent question to which qtn belongs as a child.
 	 * 					This is only non null for kids of repeat question types.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 */
-	private static void setQuestionDataNode(IFormElement qtn, FormDef formDef, IFormElement parentQtn){
+	private static void setQuestionDataNode(IFormElement qtn, FormDef formDef, IFormElement parentQtn, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap){
 //		String xpath = qtn.getQuestionID();
 		String xpath = qtn.getDataNodesetPath();
+
+		//Remember where the question lives in the instance so that its default value
+		//can be picked up without searching for it again.
+		if(qtn instanceof QuestionDef && !dataPathQtnMap.containsKey(xpath))
+			dataPathQtnMap.put(xpath, (QuestionDef)qtn);
+
 		//xpath = new String(xpath.toCharArray(), 1, xpath.length()-1);
 		int pos = xpath.lastIndexOf('@'); String attributeName = null;
 		if(pos > 0){
@@ -498,6 +506,14 @@ public class XformParser {
 
 		if(node == null)
 			return; //data node may not be present in the xforms document.
+
+		//Resolve the absolute path from the instance index instead of evaluating
+		//an xpath expression per question, which is what made big forms slow to open.
+		Element dataNode = getDataNodeIndex(formDef,dataNodeIndex).getElement(xpath);
+		if(dataNode != null){
+			qtn.setDataNode(dataNode);
+			return;
+		}
 		
 		String nodeName = "/" + node.getNodeName() + "/";
 		if(xpath.contains(nodeName)){
@@ -673,8 +689,10 @@ public class XformParser {
 	 * 					  question definition objects.
 	 * @param orphanDynOptionQns a list of dynamic option definition questions who parent
 	 *                           questions have not yet been parsed.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 */
-	private static void parseGroupElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns){
+	private static void parseGroupElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap){
 		//Check to see if we're dealing with a REPEAT instead of a regular group.
 		NodeList childNodes = child.getChildNodes();
 		for(int i=0;i<childNodes.getLength();i++){
@@ -683,7 +701,7 @@ public class XformParser {
 			if(grpChild.getNodeType() == Element.TEXT_NODE){ continue; }
 			if(XmlUtil.nodeNameEquals(grpChild.getNodeName(), "repeat")){
 				if(parentQtn == null){ parentQtn = formDef; }
-				parseRepeatElement(formDef, child, id2VarNameMap, questionDef, relevants, repeatQtns, rptKidMap, currentPageNo, parentQtn, constraints, orphanDynOptionQns,i);
+				parseRepeatElement(formDef, child, id2VarNameMap, questionDef, relevants, repeatQtns, rptKidMap, currentPageNo, parentQtn, constraints, orphanDynOptionQns,dataNodeIndex,dataPathQtnMap,i);
 //				parseRepeatElement(formDef,parentQtn,questionDef,child,i);
 
 				return; //short circuit regular group parsing.
@@ -717,10 +735,10 @@ public class XformParser {
 		questionDef = groupDef;
 		parentQtn = questionDef;
 		
-		parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+		parseElement(formDef, child,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 	}
 	
-	private static void parseRepeatElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, int repeatElementIndex){
+	private static void parseRepeatElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap, int repeatElementIndex){
 		String nodeset, jrCount;
 		QuestionDef repeat = null;
 		Element repeatNode = ((Element)child.getChildNodes().item(repeatElementIndex));
@@ -742,6 +760,7 @@ public class XformParser {
 			}else{
 				formDef.getChildren().remove(repeat);
 			}
+			FormDef.elementsChanged(formDef);
 //			formDef.removeChild(elementDef);
 		}
 		
@@ -770,14 +789,14 @@ public class XformParser {
 			repeat.setRepeatCountNodePath(jrCount);
 		}
 		repeat.setControlNode(((Element)child.getChildNodes().item(repeatElementIndex)));
-		setQuestionDataNode((QuestionDef)repeat,formDef,parentQtn);
+		setQuestionDataNode((QuestionDef)repeat,formDef,parentQtn,dataNodeIndex,dataPathQtnMap);
 		RepeatQtnsDef repeatQtnsDef = new RepeatQtnsDef(repeat); 
 		repeat.setRepeatQtnsDef(repeatQtnsDef);
 		parentQtn.addChild(repeat);
 		questionDef = repeat;
 		parentQtn = repeatQtnsDef;
 
-		parseElement(formDef, repeatNode,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+		parseElement(formDef, repeatNode,id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 	}
 	
 	/**
@@ -808,9 +827,11 @@ public class XformParser {
 	 * 					  question definition objects.
 	 * @param orphanDynOptionQns a list of dynamic option definition questions who parent
 	 *                           questions have not yet been parsed.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 * @return the question we are currently parsing.
 	 */
-	private static IFormElement parseBindElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns){
+	private static IFormElement parseBindElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap){
 		IFormElement def = new QuestionDef(null);
 		def.setBindNode(child);
 		def.setId(getNextQuestionId());
@@ -874,12 +895,14 @@ public class XformParser {
 	 * 					  question definition objects.
 	 * @param orphanDynOptionQns a list of dynamic option definition questions who parent
 	 *                           questions have not yet been parsed.
+	 * @param dataNodeIndex the index of the instance data node of the form being parsed.
+	 * @param dataPathQtnMap a map of the questions parsed so far keyed by their instance data nodeset paths.
 	 * @param nodeContext the current node context.
 	 * @return the question we are currently parsing.
 	 */
 	private static IFormElement parseUiElement(FormDef formDef, Element child, HashMap id2VarNameMap,IFormElement questionDef,
 												HashMap relevants,Vector repeatQtns, HashMap rptKidMap, int currentPageNo, 
-												IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, 
+												IFormElement parentQtn, HashMap constraints, List<QuestionDef> orphanDynOptionQns, DataNodeIndex dataNodeIndex, HashMap<String,QuestionDef> dataPathQtnMap, 
 												NodeContext nodeContext){
 		
 		String ref = child.getAttribute(XformConstants.ATTRIBUTE_NAME_REF);
@@ -942,11 +965,12 @@ public class XformParser {
 				questionDef.setHintNode(nodeContext.getHintNode());
 
 				questionDef.setControlNode(child);
-				setQuestionDataNode(questionDef,formDef,parentQtn);
+				setQuestionDataNode(questionDef,formDef,parentQtn,dataNodeIndex,dataPathQtnMap);
 				parentQtn = questionDef;
 
 				formDef.getChildren().remove(qtn);
 				formDef.getChildren().remove(qtn);
+				FormDef.elementsChanged(formDef);
 			}
 			else if(XmlUtil.nodeNameEquals(tagname,XformConstants.NODE_NAME_UPLOAD_MINUS_PREFIX)){
 				if("image/*".equalsIgnoreCase(child.getAttribute(XformConstants.ATTRIBUTE_NAME_MEDIATYPE))){
@@ -976,7 +1000,7 @@ public class XformParser {
 				qtn.setDataType(QuestionDef.QTN_TYPE_LABEL);
 			}
 			questionDef = qtn;
-			parseElement(formDef, child, id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns);
+			parseElement(formDef, child, id2VarNameMap,questionDef,relevants,repeatQtns,rptKidMap,currentPageNo,parentQtn,constraints,orphanDynOptionQns,dataNodeIndex,dataPathQtnMap);
 		}
 		
 		//For the children being oredered in the correct way (by appearance of the Control node in the xml doc).
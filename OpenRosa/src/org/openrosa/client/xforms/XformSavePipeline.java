@@ -0,0 +1,172 @@
+package org.openrosa.client.xforms;
+
+import org.openrosa.client.model.DocChanges;
+import org.openrosa.client.model.FormDef;
+import org.openrosa.client.util.FormUtil;
+import org.openrosa.client.util.Itext;
+import org.openrosa.client.util.ItextLocale;
+import org.openrosa.client.util.ItextParser;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.xml.client.Document;
+import com.google.gwt.xml.client.Element;
+
+
+/**
+ * Turns a form definition object into its xform xml in three stages, each of which is
+ * run at most once per save and skipped when its input has not changed since the last save:
+ *
+ * 1. model to DOM: writes the changes in the form object model into its xforms document.
+ * 2. itext to DOM: rewrites the itext block of the document from the Itext locales.
+ * 3. DOM to string: serializes the document.
+ *
+ * The xml of the last save is kept against a version of the document which is bumped
+ * whenever stage 1 or 2 changes it, and is given back as is if nothing has changed since.
+ *
+ * @author daniel
+ *
+ */
+public class XformSavePipeline {
+
+	/** The document which was last saved. */
+	private Document doc;
+
+	/** Bumped whenever stage 1 or 2 changes the document. */
+	private int docVersion = 0;
+
+	/** The document version from which xml was serialized, or -1 if there is none. */
+	private int xmlDocVersion = -1;
+
+	/** The xml of the last save. */
+	private String xml;
+
+	/** The itext state which was last written to the document, or null if none has been. */
+	private String itextKey;
+
+	/** True if stage 2 ran on the last save. */
+	private boolean itextWritten = false;
+
+	/** The number of milliseconds taken by each stage on the last save. */
+	private long modelTime, itextTime, stringTime;
+
+
+	/**
+	 * Brings the xforms document of a form up to date and gets its xml.
+	 *
+	 * @param formDef the form to save.
+	 * @return the xform xml.
+	 */
+	public String save(FormDef formDef){
+		long start = System.currentTimeMillis();
+
+		//Stage 1: model to DOM.
+		Document formDoc = formDef.getDoc();
+		if(formDoc == null){
+			formDoc = XhtmlBuilder.fromFormDef2XhtmlDoc(formDef);
+			formDef.setDoc(formDoc);
+			formDef.setXformsNode(formDoc.getDocumentElement());
+		}
+		else{
+			DocChanges changes = formDef.updateDoc(false);
+			if(!changes.isEmpty())
+				docVersion++;
+		}
+
+		if(formDoc != doc){
+			doc = formDoc;
+			docVersion++;
+			itextKey = null;
+		}
+
+		Element root = formDoc.getDocumentElement();
+		if(setAttribute(root, "xmlns:jr", "http://openrosa.org/javarosa") | setAttribute(root, "xmlns", "http://www.w3.org/2002/xforms"))
+			docVersion++;
+
+		long itextStart = System.currentTimeMillis();
+		modelTime = itextStart - start;
+
+		//Stage 2: itext to DOM.
+		String key = getItextKey();
+		itextWritten = !key.equals(itextKey);
+		if(itextWritten){
+			ItextParser.updateItextBlock(formDef);
+			itextKey = key;
+			docVersion++;
+		}
+
+		long stringStart = System.currentTimeMillis();
+		itextTime = stringStart - itextStart;
+
+		//Stage 3: DOM to string.
+		boolean serialized = (xml == null || xmlDocVersion != docVersion);
+		if(serialized){
+			xml = FormUtil.formatXml(XmlUtil.fromDoc2String(formDoc));
+			xmlDocVersion = docVersion;
+		}
+
+		stringTime = System.currentTimeMillis() - stringStart;
+
+		GWT.log("Saved form in " + (modelTime + itextTime + stringTime) + "ms (model to DOM " + modelTime
+				+ "ms, itext to DOM " + (itextWritten ? itextTime + "ms" : "skipped")
+				+ ", DOM to string " + (serialized ? stringTime + "ms" : "cached") + ")");
+
+		return xml;
+	}
+
+	/**
+	 * Checks if the last save rewrote the itext block of the document.
+	 */
+	public boolean isItextWritten(){
+		return itextWritten;
+	}
+
+	public long getModelTime(){
+		return modelTime;
+	}
+
+	public long getItextTime(){
+		return itextTime;
+	}
+
+	public long getStringTime(){
+		return stringTime;
+	}
+
+	/**
+	 * Forgets the last save, such that the next one runs every stage.
+	 */
+	public void reset(){
+		doc = null;
+		xml = null;
+		itextKey = null;
+		xmlDocVersion = -1;
+	}
+
+	/**
+	 * Gets a key which changes whenever the itext block of a document would come out
+	 * differently: when translations change, or locales are added, removed or made the default.
+	 */
+	private static String getItextKey(){
+		StringBuilder key = new StringBuilder();
+		key.append(ItextLocale.getModCount());
+		for(ItextLocale locale : Itext.locales){
+			key.append(',').append(locale.getName());
+			if(locale.isDefault())
+				key.append('*');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Sets an attribute if it does not already have the given value.
+	 *
+	 * @return true if the attribute has been changed, else false.
+	 */
+	private static boolean setAttribute(Element element, String name, String value){
+		if(value.equals(element.getAttribute(name)))
+			return false;
+
+		element.setAttribute(name, value);
+		return true;
+	}
+}
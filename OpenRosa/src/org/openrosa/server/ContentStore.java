@@ -0,0 +1,79 @@
+package org.openrosa.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Holds the file contents uploaded to the file open and save servlets until they
+ * are downloaded back by the client. The http session only keeps the handle
+ * returned by {@link #put(InputStream)}.
+ *
+ * The contents of an entry never change once it is stored, so a length got before
+ * opening an entry holds for the stream, as long as the entry could be opened.
+ *
+ * Implementations must be safe for use by concurrent requests.
+ *
+ * @author daniel
+ *
+ */
+public interface ContentStore {
+
+	/**
+	 * Stores the contents of a stream, reading it to the end.
+	 *
+	 * @param in the stream to read the contents from.
+	 * @return the handle of the new entry.
+	 * @throws IOException if the contents could not be read or stored.
+	 */
+	public String put(InputStream in) throws IOException;
+
+	/**
+	 * Gets the size in bytes of an entry.
+	 *
+	 * @param handle the entry handle.
+	 * @return the size, or -1 if there is no such entry or it has expired.
+	 */
+	public long getLength(String handle);
+
+	/**
+	 * Gets the size in bytes of the gzipped copy of an entry.
+	 *
+	 * @param handle the entry handle.
+	 * @return the size, or -1 if there is no such entry or it has expired.
+	 */
+	public long getCompressedLength(String handle);
+
+	/**
+	 * Gets the entity tag of an entry, which is the same for entries with the same contents.
+	 *
+	 * @param handle the entry handle.
+	 * @return the entity tag, without quotes, or null if there is no such entry.
+	 */
+	public String getETag(String handle);
+
+	/**
+	 * Opens a stream to read the contents of an entry.
+	 *
+	 * @param handle the entry handle.
+	 * @return the stream, which the caller must close, or null if there is no such entry.
+	 * @throws IOException if the entry cannot be opened.
+	 */
+	public InputStream open(String handle) throws IOException;
+
+	/**
+	 * Opens a stream to read the gzipped copy of an entry.
+	 *
+	 * @param handle the entry handle.
+	 * @return the stream, which the caller must close, or null if there is no such entry.
+	 * @throws IOException if the entry cannot be opened.
+	 */
+	public InputStream openCompressed(String handle) throws IOException;
+
+	/**
+	 * Removes an entry, if it still exists.
+	 *
+	 * @param handle the entry handle.
+	 */
+	public void remove(String handle);
+}
@@ -0,0 +1,470 @@
+package org.openrosa.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.LimitedInputStream;
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * Base class of the servlets which take a file upload, keep it in the content store
+ * and later send it back to the same session. Uploads are copied to the store in
+ * fixed size chunks, so memory use does not grow with the file size.
+ *
+ * These init parameters are supported:
+ *
+ * maxFileSize - the largest upload in bytes which is accepted. -1 means no limit. Defaults to 1000000.
+ * checkWellFormed - true to reject uploads which are not well formed xml. Defaults to false.
+ * gzip - false to never gzip downloads, even for clients which accept it. Defaults to true.
+ *
+ * @author daniel
+ *
+ */
+public abstract class ContentStoreServlet extends HttpServlet{
+
+	public static final long serialVersionUID = 111111111111114L;
+
+	protected final String KEY_FILE_HANDLE = "FileHandle";
+
+	private static final long DEFAULT_MAX_FILE_SIZE = 1000000;
+
+	/** Added to the entity tag of the gzipped copy, which is a different representation. */
+	private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+	private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+	private boolean checkWellFormed = false;
+	private boolean gzip = true;
+
+
+	@Override
+	public void init() throws ServletException {
+		String value = getInitParameter("maxFileSize");
+		if(value != null && value.trim().length() > 0)
+			maxFileSize = Long.parseLong(value.trim());
+
+		value = getInitParameter("checkWellFormed");
+		if(value != null)
+			checkWellFormed = "true".equalsIgnoreCase(value.trim());
+
+		value = getInitParameter("gzip");
+		if(value != null)
+			gzip = !"false".equalsIgnoreCase(value.trim());
+	}
+
+	/**
+	 * Gets the content store shared by the servlets of this web application.
+	 */
+	protected ContentStore getStore(){
+		return ContentStores.getStore(getServletContext());
+	}
+
+	/**
+	 * Stores the first multipart item accepted by {@link #isContentItem(FileItemStream)}
+	 * and puts its handle in the session, replacing any earlier one.
+	 *
+	 * @return the item which was stored, or null if there was none or the upload was rejected.
+	 *         An error status has already been sent for rejected uploads.
+	 */
+	protected FileItemStream storeUpload(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if(!ServletFileUpload.isMultipartContent(request))
+			return null;
+
+		//Without an item factory, items are read straight from the request stream.
+		ServletFileUpload upload = new ServletFileUpload();
+		upload.setSizeMax(maxFileSize);
+
+		try{
+			FileItemIterator items = upload.getItemIterator(request);
+			while(items.hasNext()){
+				FileItemStream item = items.next();
+				if(!isContentItem(item))
+					continue;
+
+				ContentStore store = getStore();
+				String handle = store.put(item.openStream());
+				if(checkWellFormed && !isWellFormed(store, handle)){
+					store.remove(handle);
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The file is not well formed xml");
+					return null;
+				}
+
+				HttpSession session = request.getSession();
+				store.remove((String)session.getAttribute(KEY_FILE_HANDLE));
+				session.setAttribute(KEY_FILE_HANDLE, handle);
+				return item;
+			}
+		}
+		catch(FileUploadException ex){
+			return reject(ex, response);
+		}
+		catch(FileUploadBase.FileUploadIOException ex){
+			return reject((FileUploadException)ex.getCause(), response);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores the body of a request which is not a multipart upload.
+	 *
+	 * @return the handle of the new entry, or null if the body was too large,
+	 *         in which case an error status has already been sent.
+	 */
+	protected String storeBody(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if(maxFileSize >= 0 && request.getContentLength() > maxFileSize){
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return null;
+		}
+
+		try{
+			return getStore().put(getLimitedBody(request));
+		}
+		catch(BodyTooLargeException ex){
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the body of a request which is not a multipart upload as text.
+	 *
+	 * @return the body, or null if it was too large, in which case an error status has already been sent.
+	 */
+	protected String readBody(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if(maxFileSize >= 0 && request.getContentLength() > maxFileSize){
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return null;
+		}
+
+		String encoding = request.getCharacterEncoding();
+		try{
+			return IOUtils.toString(getLimitedBody(request), encoding != null ? encoding : "UTF-8");
+		}
+		catch(BodyTooLargeException ex){
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the request body, which fails once more than maxFileSize bytes have been read
+	 * from it. This covers bodies sent without a content length.
+	 */
+	private InputStream getLimitedBody(HttpServletRequest request) throws IOException {
+		InputStream in = request.getInputStream();
+		if(maxFileSize < 0)
+			return in;
+
+		return new LimitedInputStream(in, maxFileSize){
+			protected void raiseError(long sizeMax, long count) throws IOException {
+				throw new BodyTooLargeException();
+			}
+		};
+	}
+
+	private static class BodyTooLargeException extends IOException {
+		public static final long serialVersionUID = 111111111111116L;
+	}
+
+	private FileItemStream reject(FileUploadException ex, HttpServletResponse response) throws IOException {
+		if(ex instanceof FileUploadBase.SizeLimitExceededException || ex instanceof FileUploadBase.FileSizeLimitExceededException)
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, ex.getMessage());
+		else
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+		return null;
+	}
+
+	/**
+	 * Checks whether a multipart item holds the file contents.
+	 */
+	protected abstract boolean isContentItem(FileItemStream item);
+
+	/**
+	 * Sends the contents whose handle is in the session. The response carries the entity
+	 * tag of the contents, and is a 304 if the client already has them. A single byte range
+	 * is sent if asked for, else clients which accept gzip get the gzipped copy. If the
+	 * contents expire between being looked up and being opened, a 410 is sent.
+	 *
+	 * @return true if there were contents to send, else false.
+	 */
+	protected boolean sendContents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		return sendContents(request, response, (String)request.getSession().getAttribute(KEY_FILE_HANDLE));
+	}
+
+	/**
+	 * Sends the contents of a given entry, as {@link #sendContents(HttpServletRequest, HttpServletResponse)} does.
+	 *
+	 * @return true if there were contents to send, else false.
+	 */
+	protected boolean sendContents(HttpServletRequest request, HttpServletResponse response, String handle) throws IOException {
+		ContentStore store = getStore();
+		long length = store.getLength(handle);
+		if(length < 0)
+			return false; //Nothing uploaded, or it has expired.
+
+		String eTag = store.getETag(handle);
+		response.setHeader("Accept-Ranges", "bytes");
+		if(gzip)
+			response.setHeader("Vary", "Accept-Encoding");
+
+		if(eTag != null && matchesETag(request.getHeader("If-None-Match"), eTag)){
+			response.setHeader("ETag", "\"" + eTag + "\"");
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+
+		long[] bytes = null;
+		String range = request.getHeader("Range");
+		//If-Range takes a strong comparison, and ranges are only served from the plain contents,
+		//so a weak or gzip entity tag never matches and the full contents are sent instead.
+		String ifRange = request.getHeader("If-Range");
+		if(range != null && (ifRange == null || (eTag != null && ifRange.trim().equals("\"" + eTag + "\"")))){
+			bytes = parseRange(range, length);
+			if(bytes != null && bytes.length == 0){
+				if(eTag != null)
+					response.setHeader("ETag", "\"" + eTag + "\"");
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return true;
+			}
+		}
+
+		long compressedLength = -1;
+		if(bytes == null && gzip && acceptsGzip(request)){
+			compressedLength = store.getCompressedLength(handle);
+			if(compressedLength >= length)
+				compressedLength = -1; //Not worth sending.
+		}
+
+		//Opened before any header which depends on the contents is set, so that an entry
+		//which has just expired gets an error status instead of a wrong content length.
+		InputStream in = compressedLength >= 0 ? store.openCompressed(handle) : store.open(handle);
+		if(in == null){
+			response.sendError(HttpServletResponse.SC_GONE);
+			return true;
+		}
+
+		try{
+			if(eTag != null)
+				response.setHeader("ETag", "\"" + eTag + (compressedLength >= 0 ? GZIP_ETAG_SUFFIX : "") + "\"");
+
+			if(bytes != null){
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + bytes[0] + "-" + bytes[1] + "/" + length);
+				response.setContentLength((int)(bytes[1] - bytes[0] + 1));
+				copy(in, bytes[0], bytes[1] - bytes[0] + 1, response.getOutputStream());
+			}
+			else if(compressedLength >= 0){
+				response.setHeader("Content-Encoding", "gzip");
+				response.setContentLength((int)compressedLength);
+				copy(in, 0, compressedLength, response.getOutputStream());
+			}
+			else{
+				response.setContentLength((int)length);
+				copy(in, 0, length, response.getOutputStream());
+			}
+		}
+		finally{
+			in.close();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies part of a stream to another, a buffer at a time.
+	 */
+	private static void copy(InputStream in, long offset, long length, OutputStream out) throws IOException {
+		while(offset > 0){
+			long skipped = in.skip(offset);
+			if(skipped <= 0)
+				throw new EOFException("Contents ended before the range to send");
+			offset -= skipped;
+		}
+
+		byte[] buffer = new byte[8192];
+		while(length > 0){
+			int count = in.read(buffer, 0, (int)Math.min(buffer.length, length));
+			if(count < 0)
+				throw new EOFException("Contents ended before their length");
+			out.write(buffer, 0, count);
+			length -= count;
+		}
+	}
+
+	/**
+	 * Checks whether an If-None-Match header value names an entity tag, either that
+	 * of the plain contents or of their gzipped copy, using the weak comparison.
+	 */
+	private boolean matchesETag(String header, String eTag){
+		if(header == null)
+			return false;
+
+		String[] tags = header.split(",");
+		for(int i = 0; i < tags.length; i++){
+			String tag = tags[i].trim();
+			if(tag.equals("*"))
+				return true;
+
+			if(tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if(tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\""))
+				tag = tag.substring(1, tag.length() - 1);
+			if(tag.endsWith(GZIP_ETAG_SUFFIX))
+				tag = tag.substring(0, tag.length() - GZIP_ETAG_SUFFIX.length());
+
+			if(tag.equals(eTag))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses a Range header value asking for a single byte range.
+	 *
+	 * @return the first and last byte positions, an empty array if the range is past the
+	 *         end of the contents, or null if the header is not a single byte range and
+	 *         should be ignored.
+	 */
+	private long[] parseRange(String range, long length){
+		range = range.trim();
+		if(!range.startsWith("bytes=") || range.indexOf(',') >= 0)
+			return null;
+
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if(dash < 0)
+			return null;
+
+		try{
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+
+			long start, end;
+			if(first.length() == 0){
+				if(last.length() == 0)
+					return null;
+
+				long suffix = Long.parseLong(last); //The last n bytes.
+				if(suffix == 0)
+					return new long[0];
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			}
+			else{
+				start = Long.parseLong(first);
+				end = last.length() == 0 ? length - 1 : Long.parseLong(last);
+				if(end < start)
+					return null;
+				end = Math.min(end, length - 1);
+			}
+
+			if(start >= length)
+				return new long[0];
+
+			return new long[]{start, end};
+		}
+		catch(NumberFormatException ex){
+			return null;
+		}
+	}
+
+	protected boolean acceptsGzip(HttpServletRequest request){
+		String accept = request.getHeader("Accept-Encoding");
+		return accept != null && accept.toLowerCase().indexOf("gzip") >= 0;
+	}
+
+	/**
+	 * Checks whether the contents of an entry are well formed xml, streaming them
+	 * through a SAX parser. Uploads are not trusted, so document type declarations are
+	 * refused, and external entities are never loaded in case a parser lets them through.
+	 */
+	private boolean isWellFormed(ContentStore store, String handle) throws IOException {
+		SAXParser parser;
+		try{
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			setOptionalFeature(factory, "http://apache.org/xml/features/disallow-doctype-decl", true);
+			setOptionalFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+			setOptionalFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+			setOptionalFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			parser = factory.newSAXParser();
+		}
+		catch(Exception ex){
+			throw new RuntimeException(ex);
+		}
+
+		InputStream in = store.open(handle);
+		if(in == null)
+			return false;
+
+		try{
+			parser.parse(in, new DefaultHandler());
+			return true;
+		}
+		catch(SAXException ex){
+			return false;
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Sets a parser feature which not every SAX implementation knows about.
+	 */
+	private static void setOptionalFeature(SAXParserFactory factory, String name, boolean value) throws ParserConfigurationException {
+		try{
+			factory.setFeature(name, value);
+		}
+		catch(SAXNotRecognizedException ex){
+			//Not this parser's feature. The others still apply.
+		}
+		catch(SAXNotSupportedException ex){
+			//Known, but cannot be changed on this parser.
+		}
+	}
+
+	/**
+	 * Sets the headers which let the client keep a response but make it check back with
+	 * its entity tag before using it again.
+	 */
+	protected void setRevalidateHeaders(HttpServletResponse response){
+		response.setHeader("Cache-Control", "private, no-cache");
+		response.setDateHeader("Expires", -1);
+	}
+
+	/**
+	 * Sets the headers which stop the client from caching a response.
+	 */
+	protected void setNoCacheHeaders(HttpServletResponse response){
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Pragma", "no-cache");
+		response.setDateHeader("Expires", -1);
+		response.setHeader("Cache-Control", "no-store");
+	}
+}
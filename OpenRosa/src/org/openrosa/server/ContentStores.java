@@ -0,0 +1,72 @@
+package org.openrosa.server;
+
+import java.io.File;
+
+import javax.servlet.ServletContext;
+
+
+/**
+ * Gets the content store shared by the servlets of a web application. It is created on
+ * first use from these optional context parameters:
+ *
+ * contentStoreClass - the name of a ContentStore class with a public no argument
+ *                     constructor, used instead of the FileSystemContentStore.
+ * contentStoreDir - the FileSystemContentStore directory. Defaults to formdesigner-files
+ *                   under the java.io.tmpdir directory.
+ * contentStoreTimeToLive - the number of minutes an unused entry is kept. Defaults to 60.
+ * contentStoreMaxEntries - the maximum number of entries kept. Defaults to 1000.
+ *
+ * @author daniel
+ *
+ */
+public class ContentStores {
+
+	private static final String KEY_CONTENT_STORE = "org.openrosa.server.ContentStore";
+
+	private static final long DEFAULT_TIME_TO_LIVE = 60;
+	private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+
+	/**
+	 * Gets the content store of a web application, creating it if this is the first call.
+	 *
+	 * @param context the servlet context of the web application.
+	 * @return the content store.
+	 */
+	public static synchronized ContentStore getStore(ServletContext context){
+		ContentStore store = (ContentStore)context.getAttribute(KEY_CONTENT_STORE);
+		if(store == null){
+			store = createStore(context);
+			context.setAttribute(KEY_CONTENT_STORE, store);
+		}
+		return store;
+	}
+
+	private static ContentStore createStore(ServletContext context){
+		String className = context.getInitParameter("contentStoreClass");
+		if(className != null && className.trim().length() > 0){
+			try{
+				return (ContentStore)Class.forName(className.trim()).newInstance();
+			}
+			catch(Exception ex){
+				throw new RuntimeException("Cannot create content store " + className, ex);
+			}
+		}
+
+		String dir = context.getInitParameter("contentStoreDir");
+		File directory = (dir != null && dir.trim().length() > 0) ? new File(dir.trim())
+				: new File(System.getProperty("java.io.tmpdir"), "formdesigner-files");
+
+		long timeToLive = getNumber(context, "contentStoreTimeToLive", DEFAULT_TIME_TO_LIVE);
+		long maxEntries = getNumber(context, "contentStoreMaxEntries", DEFAULT_MAX_ENTRIES);
+
+		return new FileSystemContentStore(directory, timeToLive * 60 * 1000, (int)maxEntries);
+	}
+
+	private static long getNumber(ServletContext context, String name, long defaultValue){
+		String value = context.getInitParameter(name);
+		if(value == null || value.trim().length() == 0)
+			return defaultValue;
+		return Long.parseLong(value.trim());
+	}
+}
@@ -0,0 +1,260 @@
+package org.openrosa.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * The default content store, which keeps each entry in its own file under a local
+ * directory. Entries expire after a time to live since they were last used, and the
+ * least recently used ones are dropped once there are more than a maximum number.
+ *
+ * The MD5 hash used as the entity tag is worked out while an upload is written, and
+ * a gzipped copy is written next to it so that compressed downloads cost nothing extra.
+ *
+ * @author daniel
+ *
+ */
+public class FileSystemContentStore implements ContentStore {
+
+	/** The directory holding the entry files. */
+	private File directory;
+
+	/** The number of milliseconds an unused entry is kept. */
+	private long timeToLive;
+
+	/** The maximum number of entries kept. */
+	private int maxEntries;
+
+	/** The entry files keyed by their handles, in least recently used first order. */
+	private LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+
+
+	private static class Entry {
+		File file;
+		File compressedFile;
+		String eTag;
+		long lastUsed;
+
+		/** When the modification times of the files were last set to show they are in use. */
+		long touched;
+
+		Entry(File file, File compressedFile, String eTag){
+			this.file = file;
+			this.compressedFile = compressedFile;
+			this.eTag = eTag;
+			this.lastUsed = System.currentTimeMillis();
+			this.touched = lastUsed;
+		}
+
+		void delete(){
+			file.delete();
+			compressedFile.delete();
+		}
+	}
+
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param directory the directory to keep the entry files in. It is created if it does not exist.
+	 * @param timeToLive the number of milliseconds an unused entry is kept.
+	 * @param maxEntries the maximum number of entries kept.
+	 */
+	public FileSystemContentStore(File directory, long timeToLive, int maxEntries){
+		this.directory = directory;
+		this.timeToLive = timeToLive;
+		this.maxEntries = maxEntries;
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IllegalArgumentException("Cannot create content store directory " + directory);
+
+		//Left over from a previous run. The directory may be shared with other stores, whose
+		//entry files are touched while in use, so only those which have expired are deleted.
+		long oldest = System.currentTimeMillis() - timeToLive - getTouchInterval();
+		File[] files = directory.listFiles();
+		if(files != null){
+			for(File file : files){
+				if(file.getName().matches("[0-9a-f\\-]{36}\\.xml(\\.gz)?") && file.lastModified() < oldest)
+					file.delete();
+			}
+		}
+	}
+
+	public String put(InputStream in) throws IOException {
+		String handle = UUID.randomUUID().toString();
+		File file = new File(directory, handle + ".xml");
+		File compressedFile = new File(directory, handle + ".xml.gz");
+
+		MessageDigest digest;
+		try{
+			digest = MessageDigest.getInstance("MD5");
+		}
+		catch(NoSuchAlgorithmException ex){
+			throw new RuntimeException(ex);
+		}
+
+		boolean stored = false;
+		try{
+			OutputStream out = new FileOutputStream(file);
+			try{
+				IOUtils.copy(new DigestInputStream(in, digest), out);
+			}
+			finally{
+				out.close();
+			}
+
+			compress(file, compressedFile);
+			stored = true;
+		}
+		finally{
+			if(!stored){
+				file.delete();
+				compressedFile.delete();
+			}
+		}
+
+		synchronized(this){
+			entries.put(handle, new Entry(file, compressedFile, toHex(digest.digest())));
+			expire();
+		}
+
+		return handle;
+	}
+
+	public long getLength(String handle){
+		Entry entry = getEntry(handle);
+		return entry != null ? entry.file.length() : -1;
+	}
+
+	public long getCompressedLength(String handle){
+		Entry entry = getEntry(handle);
+		return entry != null ? entry.compressedFile.length() : -1;
+	}
+
+	public String getETag(String handle){
+		Entry entry = getEntry(handle);
+		return entry != null ? entry.eTag : null;
+	}
+
+	public InputStream open(String handle) throws IOException {
+		Entry entry = getEntry(handle);
+		return entry != null ? open(entry.file) : null;
+	}
+
+	public InputStream openCompressed(String handle) throws IOException {
+		Entry entry = getEntry(handle);
+		return entry != null ? open(entry.compressedFile) : null;
+	}
+
+	public synchronized void remove(String handle){
+		if(handle == null)
+			return;
+
+		Entry entry = entries.remove(handle);
+		if(entry != null)
+			entry.delete();
+	}
+
+	/**
+	 * Gets an entry, marking it as just used.
+	 */
+	private synchronized Entry getEntry(String handle){
+		if(handle == null)
+			return null;
+
+		expire();
+
+		Entry entry = entries.get(handle);
+		if(entry == null)
+			return null;
+
+		entry.lastUsed = System.currentTimeMillis();
+		if(entry.lastUsed - entry.touched > getTouchInterval()){
+			entry.file.setLastModified(entry.lastUsed);
+			entry.compressedFile.setLastModified(entry.lastUsed);
+			entry.touched = entry.lastUsed;
+		}
+		return entry;
+	}
+
+	/**
+	 * Gets the number of milliseconds between updates of the modification times of entry files
+	 * which are being used, such that a file is never seen as older than its entry.
+	 */
+	private long getTouchInterval(){
+		return timeToLive / 10;
+	}
+
+	/**
+	 * Drops the entries which have outlived their time to live, and then the least
+	 * recently used ones above the maximum number of entries.
+	 */
+	private void expire(){
+		long oldest = System.currentTimeMillis() - timeToLive;
+		int excess = entries.size() - maxEntries;
+
+		Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext()){
+			Entry entry = iterator.next().getValue();
+			if(excess <= 0 && entry.lastUsed >= oldest)
+				break; //The rest were used more recently.
+
+			entry.delete();
+			iterator.remove();
+			excess--;
+		}
+	}
+
+	/**
+	 * Opens an entry file, which may have gone since its entry was looked up.
+	 */
+	private static InputStream open(File file){
+		try{
+			return new FileInputStream(file);
+		}
+		catch(FileNotFoundException ex){
+			return null; //Expired while we were getting to it.
+		}
+	}
+
+	private static void compress(File source, File target) throws IOException {
+		InputStream in = new FileInputStream(source);
+		try{
+			GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(target));
+			try{
+				IOUtils.copy(in, out);
+			}
+			finally{
+				out.close();
+			}
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	private static String toHex(byte[] bytes){
+		StringBuffer buffer = new StringBuffer(bytes.length * 2);
+		for(int i = 0; i < bytes.length; i++){
+			buffer.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+			buffer.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,145 @@
+package org.openrosa.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.io.IOUtils;
+import org.openrosa.client.util.FormDefSections;
+
+
+/**
+ * Servlet that stands in for the server which form definitions are saved to. It takes
+ * the combined xml document of a form in full, or a patch with only the sections which
+ * have changed since the last save, and keeps the result in the content store.
+ *
+ * A patch names the hashes of the sections it applies to in the base parameter and those
+ * of the patched sections in the hash parameter. If the stored form does not match either,
+ * the patch is refused with a 409 and the form designer uploads the whole form instead.
+ * Each save is answered with the hashes of the stored form in the X-FormDef-Hashes header,
+ * which is how the form designer knows that the server takes patches at all.
+ *
+ * These init parameters are supported, besides those of {@link ContentStoreServlet}:
+ *
+ * formIdName - the name of the parameter holding the form identifier. Defaults to formId.
+ *
+ * @author daniel
+ *
+ */
+public class FormDefSaveServlet extends ContentStoreServlet{
+
+	public static final long serialVersionUID = 111111111111115L;
+
+	/** The start of the session attribute names holding the handles of stored forms. */
+	private final String KEY_FORM_DEF_HANDLE = "FormDefHandle.";
+
+	private String formIdName = "formId";
+
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+
+		String value = getInitParameter("formIdName");
+		if(value != null && value.trim().length() > 0)
+			formIdName = value.trim();
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String key = KEY_FORM_DEF_HANDLE + request.getParameter(formIdName);
+		HttpSession session = request.getSession();
+		ContentStore store = getStore();
+
+		String handle;
+		if("true".equals(request.getParameter("patch"))){
+			handle = applyPatch(request, response, (String)session.getAttribute(key));
+			if(handle == null)
+				return;
+		}
+		else{
+			handle = storeBody(request, response);
+			if(handle == null)
+				return;
+		}
+
+		store.remove((String)session.getAttribute(key));
+		session.setAttribute(key, handle);
+		String xml = readForm(handle);
+		if(xml != null)
+			response.setHeader(FormDefSections.HASHES_HEADER, FormDefSections.joinHashes(FormDefSections.getHashes(FormDefSections.split(xml))));
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String handle = (String)request.getSession().getAttribute(KEY_FORM_DEF_HANDLE + request.getParameter(formIdName));
+
+		response.setContentType("text/xml; charset=utf-8");
+		setRevalidateHeaders(response);
+
+		if(!sendContents(request, response, handle))
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+	}
+
+	/**
+	 * Applies the patch in a request body to a stored form and stores the result.
+	 *
+	 * @return the handle of the patched form, or null if the patch was refused,
+	 *         in which case an error status has already been sent.
+	 */
+	private String applyPatch(HttpServletRequest request, HttpServletResponse response, String handle) throws IOException {
+		String xml = readForm(handle);
+		if(xml == null){
+			response.sendError(HttpServletResponse.SC_CONFLICT, "There is no saved form to patch");
+			return null;
+		}
+
+		String[] sections = FormDefSections.split(xml);
+		if(!FormDefSections.joinHashes(FormDefSections.getHashes(sections)).equals(request.getParameter("base"))){
+			response.sendError(HttpServletResponse.SC_CONFLICT, "The saved form is not the one the patch was made for");
+			return null;
+		}
+
+		String patch = readBody(request, response);
+		if(patch == null)
+			return null;
+
+		FormDefSections.applyPatch(sections, patch);
+		if(!FormDefSections.joinHashes(FormDefSections.getHashes(sections)).equals(request.getParameter("hash"))){
+			response.sendError(HttpServletResponse.SC_CONFLICT, "The patched form does not match its hashes");
+			return null;
+		}
+
+		return getStore().put(new ByteArrayInputStream(FormDefSections.join(sections).getBytes("UTF-8")));
+	}
+
+	/**
+	 * Reads a stored form.
+	 *
+	 * @return the combined xml document of the form, or null if it is not in the store.
+	 */
+	private String readForm(String handle) throws IOException {
+		InputStream in = getStore().open(handle);
+		if(in == null)
+			return null;
+
+		try{
+			return IOUtils.toString(in, "UTF-8");
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	@Override
+	protected boolean isContentItem(FileItemStream item){
+		return false; //Forms are posted as the request body rather than as multipart uploads.
+	}
+}
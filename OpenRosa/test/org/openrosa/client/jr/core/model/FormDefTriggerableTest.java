@@ -0,0 +1,101 @@
+package org.openrosa.client.jr.core.model;
+
+import junit.framework.TestCase;
+
+import org.openrosa.client.jr.core.model.condition.Recalculate;
+import org.openrosa.client.jr.core.model.data.IntegerData;
+import org.openrosa.client.jr.core.model.instance.FormInstance;
+import org.openrosa.client.jr.core.model.instance.TreeElement;
+import org.openrosa.client.jr.core.model.instance.TreeReference;
+import org.openrosa.client.jr.model.xform.XPathReference;
+import org.openrosa.client.jr.xpath.XPathConditional;
+
+
+/**
+ * Checks that changes cascade through calculated questions in dependency order, and times
+ * how long it takes for forms of 100, 1000 and 10000 binds. This runs on a plain JVM since
+ * none of the jr model or xpath code it goes through touches the browser.
+ *
+ * @author daniel
+ *
+ */
+public class FormDefTriggerableTest extends TestCase {
+
+	public void testChainCascades() throws Exception {
+		FormDef formDef = createChainForm(100);
+		formDef.finalizeTriggerables();
+		formDef.setValue(new IntegerData(1), ref(0));
+		assertEquals(new Integer(100), formDef.getInstance().resolveReference(ref(99)).getValue().getValue());
+
+		formDef.setValue(new IntegerData(5), ref(0));
+		assertEquals(new Integer(104), formDef.getInstance().resolveReference(ref(99)).getValue().getValue());
+	}
+
+	public void testDiamondEvaluatesInOrder() throws Exception {
+		TreeElement root = new TreeElement("data");
+		for(String name : new String[]{"a", "b", "c", "d"})
+			root.addChild(newIntegerElement(name));
+
+		FormDef formDef = new FormDef();
+		formDef.setInstance(new FormInstance(root));
+
+		//Added out of order, so only the ordering can make d see the new b and c.
+		addCalculate(formDef, "/data/d", "/data/b + /data/c");
+		addCalculate(formDef, "/data/c", "/data/a * 3");
+		addCalculate(formDef, "/data/b", "/data/a * 2");
+		formDef.finalizeTriggerables();
+
+		formDef.setValue(new IntegerData(2), ref("/data/a"));
+		assertEquals(new Integer(10), formDef.getInstance().resolveReference(ref("/data/d")).getValue().getValue());
+	}
+
+	public void testChainTimings() throws Exception {
+		int[] sizes = {100, 1000, 10000};
+		for(int size : sizes){
+			long start = System.currentTimeMillis();
+			FormDef formDef = createChainForm(size);
+			long built = System.currentTimeMillis();
+			formDef.finalizeTriggerables();
+			long finalized = System.currentTimeMillis();
+
+			formDef.setValue(new IntegerData(1), ref(0));
+			long cascaded = System.currentTimeMillis();
+
+			assertEquals(new Integer(size), formDef.getInstance().resolveReference(ref(size - 1)).getValue().getValue());
+			System.out.println(size + " binds: build " + (built - start) + "ms, order " + (finalized - built) + "ms, cascade " + (cascaded - finalized) + "ms");
+		}
+	}
+
+	/**
+	 * Creates a form whose questions q1 to q[size-1] are each calculated from the one before.
+	 */
+	private static FormDef createChainForm(int size) throws Exception {
+		TreeElement root = new TreeElement("data");
+		for(int index = 0; index < size; index++)
+			root.addChild(newIntegerElement("q" + index));
+
+		FormDef formDef = new FormDef();
+		formDef.setInstance(new FormInstance(root));
+		for(int index = 1; index < size; index++)
+			addCalculate(formDef, "/data/q" + index, "/data/q" + (index - 1) + " + 1");
+		return formDef;
+	}
+
+	private static TreeElement newIntegerElement(String name){
+		TreeElement element = new TreeElement(name);
+		element.dataType = Constants.DATATYPE_INTEGER;
+		return element;
+	}
+
+	private static void addCalculate(FormDef formDef, String target, String xpath) throws Exception {
+		formDef.addTriggerable(new Recalculate(new XPathConditional(xpath), ref(target), TreeReference.rootRef()));
+	}
+
+	private static TreeReference ref(int index){
+		return ref("/data/q" + index);
+	}
+
+	private static TreeReference ref(String path){
+		return (TreeReference)new XPathReference(path).getReference();
+	}
+}
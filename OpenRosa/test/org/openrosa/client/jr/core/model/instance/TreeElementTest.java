@@ -0,0 +1,154 @@
+package org.openrosa.client.jr.core.model.instance;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that looking up children through the child index of a big node gives the same
+ * results as scanning its children, and times the lookups on a big repeat both ways.
+ *
+ * @author daniel
+ *
+ */
+public class TreeElementTest extends TestCase {
+
+	/** The number of instances in the repeat which lookups are timed on. */
+	private static final int REPEAT_SIZE = 5000;
+
+	private int threshold;
+
+
+	protected void setUp() throws Exception {
+		threshold = TreeElement.getChildIndexThreshold();
+	}
+
+	protected void tearDown() throws Exception {
+		TreeElement.setChildIndexThreshold(threshold);
+	}
+
+	public void testIndexedLookupsMatchScan() {
+		TreeElement.setChildIndexThreshold(Integer.MAX_VALUE);
+		TreeElement scanned = createMixedNode();
+		TreeElement.setChildIndexThreshold(4);
+		TreeElement indexed = createMixedNode();
+		assertSameChildren(scanned, indexed);
+
+		scanned.removeChild("row", 3);
+		indexed.removeChild("row", 3);
+		scanned.removeChildAt(0);
+		indexed.removeChildAt(0);
+		assertSameChildren(scanned, indexed);
+
+		scanned.getChild("row", 5).setMult(3);
+		indexed.getChild("row", 5).setMult(3);
+		scanned.getChild("other", 1).setName("renamed");
+		indexed.getChild("other", 1).setName("renamed");
+		assertSameChildren(scanned, indexed);
+	}
+
+	public void testShallowCopyKeepsItsOwnChildren() {
+		TreeElement.setChildIndexThreshold(4);
+		TreeElement original = createMixedNode();
+		assertNotNull(original.getChild("row", 9));
+
+		TreeElement copy = original.shallowCopy();
+		assertSame(original.getChild("row", 4), copy.getChild("row", 4));
+
+		TreeElement added = new TreeElement("row", 10);
+		TreeElement removed = copy.getChild("other", 0);
+		copy.addChild(added);
+		copy.removeChild(removed);
+
+		assertEquals(15, original.getNumChildren());
+		assertEquals(-1, indexOf(original, added));
+		assertTrue(indexOf(original, removed) >= 0);
+		assertSame(removed, original.getChild("other", 0));
+		assertEquals(10, original.getChildMultiplicity("row"));
+
+		assertSame(added, copy.getChild("row", 10));
+		assertNull(copy.getChild("other", 0));
+	}
+
+	public void testRepeatTimings() {
+		TreeElement.setChildIndexThreshold(Integer.MAX_VALUE);
+		long scanTime = timeRepeat();
+
+		TreeElement.setChildIndexThreshold(threshold);
+		long indexTime = timeRepeat();
+
+		System.out.println(REPEAT_SIZE + " repeat instances: " + scanTime + "ms scanning, " + indexTime + "ms indexed");
+	}
+
+	/**
+	 * Builds a repeat and looks up every one of its instances 20 times.
+	 *
+	 * @return the time taken in milliseconds.
+	 */
+	private static long timeRepeat() {
+		long start = System.currentTimeMillis();
+
+		TreeElement data = new TreeElement("data");
+		data.addChild(new TreeElement("row", TreeReference.INDEX_TEMPLATE));
+		for (int mult = 0; mult < REPEAT_SIZE; mult++)
+			data.addChild(new TreeElement("row", mult));
+
+		for (int pass = 0; pass < 20; pass++) {
+			for (int mult = 0; mult < REPEAT_SIZE; mult++)
+				assertEquals(mult, data.getChild("row", mult).getMult());
+		}
+		assertEquals(REPEAT_SIZE, data.getChildMultiplicity("row"));
+
+		return System.currentTimeMillis() - start;
+	}
+
+	private static TreeElement createMixedNode() {
+		TreeElement node = new TreeElement("data");
+		node.addChild(new TreeElement("row", TreeReference.INDEX_TEMPLATE));
+		for (int mult = 0; mult < 10; mult++) {
+			node.addChild(new TreeElement("row", mult));
+			if (mult < 3)
+				node.addChild(new TreeElement("other", mult));
+		}
+		node.addChild(new TreeElement("last"));
+		return node;
+	}
+
+	private static void assertSameChildren(TreeElement expected, TreeElement actual) {
+		assertEquals(expected.getNumChildren(), actual.getNumChildren());
+		for (int i = 0; i < expected.getNumChildren(); i++) {
+			assertEquals(expected.getChildAt(i).getName(), actual.getChildAt(i).getName());
+			assertEquals(expected.getChildAt(i).getMult(), actual.getChildAt(i).getMult());
+		}
+
+		String[] names = {"row", "other", "renamed", "last", "missing"};
+		for (int n = 0; n < names.length; n++) {
+			String name = names[n];
+			assertEquals(name, expected.getChildMultiplicity(name), actual.getChildMultiplicity(name));
+			assertEquals(name, multsOf(expected.getChildrenWithName(name)), multsOf(actual.getChildrenWithName(name)));
+			for (int mult = TreeReference.INDEX_TEMPLATE; mult < 12; mult++) {
+				TreeElement expectedChild = expected.getChild(name, mult);
+				TreeElement actualChild = actual.getChild(name, mult);
+				assertEquals(name + "[" + mult + "]", expectedChild == null, actualChild == null);
+				if (expectedChild != null)
+					assertEquals(indexOf(expected, expectedChild), indexOf(actual, actualChild));
+			}
+		}
+	}
+
+	private static int indexOf(TreeElement parent, TreeElement child) {
+		for (int i = 0; i < parent.getNumChildren(); i++) {
+			if (parent.getChildAt(i) == child)
+				return i;
+		}
+		return -1;
+	}
+
+	private static String multsOf(Vector children) {
+		StringBuffer mults = new StringBuffer();
+		for (int i = 0; i < children.size(); i++)
+			mults.append(((TreeElement) children.elementAt(i)).getMult()).append(',');
+		return mults.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package org.openrosa.client.jr.core.model.instance.utils;
+
+import junit.framework.TestCase;
+
+import org.openrosa.client.java.io.DataOutputStream;
+import org.openrosa.client.jr.core.model.Constants;
+import org.openrosa.client.jr.core.model.data.IntegerData;
+import org.openrosa.client.jr.core.model.instance.TreeElement;
+import org.openrosa.client.jr.core.model.instance.TreeReference;
+import org.openrosa.client.jr.core.util.externalizable.ExtUtil;
+
+
+/**
+ * Times writing a tree with a big repeat in the current format and through a
+ * DictionaryTreeWrapper.
+ *
+ * The DataOutputStream in client/java/io does not move any bytes yet, so this only measures
+ * the cost of walking the tree and looking strings up in the dictionary. How much smaller
+ * the dictionary format is can not be checked until the stream does.
+ *
+ * @author daniel
+ *
+ */
+public class DictionaryTreeWrapperTest extends TestCase {
+
+	/** The number of instances in the repeat which is written. */
+	private static final int REPEAT_SIZE = 2000;
+
+
+	public void testWriteTimings() throws Exception {
+		TreeElement root = createRepeatTree(REPEAT_SIZE);
+		DataOutputStream out = new DataOutputStream();
+
+		//warm up both formats before timing either.
+		for (int round = 0; round < 5; round++) {
+			ExtUtil.write(out, root);
+			ExtUtil.write(out, new DictionaryTreeWrapper(root));
+		}
+
+		long start = System.currentTimeMillis();
+		for (int round = 0; round < 20; round++)
+			ExtUtil.write(out, root);
+		long current = System.currentTimeMillis();
+		for (int round = 0; round < 20; round++)
+			ExtUtil.write(out, new DictionaryTreeWrapper(root));
+		long dictionary = System.currentTimeMillis();
+
+		System.out.println("20 writes of " + REPEAT_SIZE + " repeat instances: " + (current - start) + "ms current format, " + (dictionary - current) + "ms dictionary");
+	}
+
+	/**
+	 * Creates a tree with a repeat of rows, each holding a few integer questions.
+	 */
+	private static TreeElement createRepeatTree(int size) {
+		TreeElement root = new TreeElement("data");
+		root.addChild(newRow(TreeReference.INDEX_TEMPLATE));
+		for (int mult = 0; mult < size; mult++)
+			root.addChild(newRow(mult));
+		return root;
+	}
+
+	private static TreeElement newRow(int mult) {
+		TreeElement row = new TreeElement("row", mult);
+		row.repeatable = true;
+
+		String[] names = {"first", "second", "third"};
+		for (int n = 0; n < names.length; n++) {
+			TreeElement question = new TreeElement(names[n]);
+			question.dataType = Constants.DATATYPE_INTEGER;
+			if (mult != TreeReference.INDEX_TEMPLATE)
+				question.setValue(new IntegerData(mult + n));
+			row.addChild(question);
+		}
+		return row;
+	}
+}
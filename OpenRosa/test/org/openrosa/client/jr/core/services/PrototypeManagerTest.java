@@ -0,0 +1,91 @@
+package org.openrosa.client.jr.core.services;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.openrosa.client.jr.core.util.externalizable.Externalizable;
+import org.openrosa.client.jr.core.util.externalizable.ExternalizableWrapper;
+import org.openrosa.client.jr.core.util.externalizable.PrototypeFactory;
+
+
+/**
+ * Checks the serialization codes which PrototypeManager registers against the jr sources,
+ * such that adding an Externalizable without registering it fails here rather than when
+ * some form is first deserialized.
+ *
+ * @author daniel
+ *
+ */
+public class PrototypeManagerTest extends TestCase {
+
+	/** The jr sources, relative to the project directory which the tests are run from. */
+	private static final String SOURCE_DIR = "src/org/openrosa/client/jr";
+
+	public void testEveryExternalizableIsRegistered() throws Exception {
+		Vector classes = getExternalizableClasses();
+		assertTrue("No Externalizable classes found under " + SOURCE_DIR, classes.size() > 0);
+
+		StringBuffer missing = new StringBuffer();
+		for (int i = 0; i < classes.size(); i++) {
+			Class c = (Class) classes.elementAt(i);
+			if (PrototypeFactory.getClassCode(c) == -1 || !PrototypeFactory.hasPrototype(c))
+				missing.append(' ').append(c.getName());
+		}
+		assertEquals("Externalizable classes missing from PrototypeManager.registerDefaultPrototypes", "", missing.toString());
+	}
+
+	public void testPrototypesMatchTheirCodes() {
+		for (int code = 1; code < 1024; code++) {
+			Class c = PrototypeFactory.getClassForCode(code);
+			if (c == null || !PrototypeFactory.hasPrototype(c))
+				continue;
+
+			assertEquals(code, PrototypeFactory.getClassCode(c));
+			assertSame("Prototype registered under code " + code, c, PrototypeFactory.getInstance(code).getClass());
+		}
+	}
+
+	/**
+	 * Gets the concrete Externalizable classes of the jr sources which deserialization can
+	 * create, that is those with a public no argument constructor. Wrappers are left out,
+	 * as ExtWrapTagged tags them with codes of their own.
+	 */
+	private static Vector getExternalizableClasses() throws Exception {
+		Vector classes = new Vector();
+		File root = new File(SOURCE_DIR);
+		addExternalizableClasses(root, "org.openrosa.client.jr", classes);
+		return classes;
+	}
+
+	private static void addExternalizableClasses(File dir, String packageName, Vector classes) throws Exception {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (files[i].isDirectory()) {
+				addExternalizableClasses(files[i], packageName + "." + name, classes);
+				continue;
+			}
+			if (!name.endsWith(".java"))
+				continue;
+
+			Class c = Class.forName(packageName + "." + name.substring(0, name.length() - ".java".length()), false, PrototypeManagerTest.class.getClassLoader());
+			if (!Externalizable.class.isAssignableFrom(c) || ExternalizableWrapper.class.isAssignableFrom(c))
+				continue;
+			if (c.isInterface() || Modifier.isAbstract(c.getModifiers()) || !Modifier.isPublic(c.getModifiers()))
+				continue;
+
+			try {
+				if (Modifier.isPublic(c.getConstructor(new Class[0]).getModifiers()))
+					classes.addElement(c);
+			} catch (NoSuchMethodException ex) {
+				//Never created by deserialization.
+			}
+		}
+	}
+}
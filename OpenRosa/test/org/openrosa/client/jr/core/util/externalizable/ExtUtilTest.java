@@ -0,0 +1,50 @@
+package org.openrosa.client.jr.core.util.externalizable;
+
+import junit.framework.TestCase;
+
+import org.openrosa.client.java.io.DataOutputStream;
+
+
+/**
+ * Times writing numbers through ExtUtil.writeNumeric against writing them through an
+ * ExtWrapIntEncodingUniform, which is what writeNumeric used to do.
+ *
+ * The DataOutputStream in client/java/io does not move any bytes yet, so this only measures
+ * what it costs to get each number to the stream, which is the part writeNumeric changed.
+ * Sizes and round trips can not be checked until the stream does.
+ *
+ * @author daniel
+ *
+ */
+public class ExtUtilTest extends TestCase {
+
+	/** The number of values written by each timing. */
+	private static final int COUNT = 1000000;
+
+
+	public void testNumericWriteTimings() throws Exception {
+		DataOutputStream out = new DataOutputStream();
+
+		//warm up both paths before timing either.
+		writeWrapped(out, COUNT / 10);
+		writeDirect(out, COUNT / 10);
+
+		long start = System.currentTimeMillis();
+		writeWrapped(out, COUNT);
+		long wrapped = System.currentTimeMillis();
+		writeDirect(out, COUNT);
+		long direct = System.currentTimeMillis();
+
+		System.out.println(COUNT + " numbers: " + (wrapped - start) + "ms through a wrapper, " + (direct - wrapped) + "ms through writeNumeric");
+	}
+
+	private static void writeWrapped(DataOutputStream out, int count) throws Exception {
+		for (int i = 0; i < count; i++)
+			ExtUtil.write(out, new ExtWrapIntEncodingUniform().clone(new Long(i)));
+	}
+
+	private static void writeDirect(DataOutputStream out, int count) throws Exception {
+		for (int i = 0; i < count; i++)
+			ExtUtil.writeNumeric(out, i);
+	}
+}
@@ -0,0 +1,101 @@
+package org.openrosa.client.jr.xpath.expr;
+
+import junit.framework.TestCase;
+
+import org.openrosa.client.jr.core.model.Constants;
+import org.openrosa.client.jr.core.model.condition.EvaluationContext;
+import org.openrosa.client.jr.core.model.data.IntegerData;
+import org.openrosa.client.jr.core.model.instance.FormInstance;
+import org.openrosa.client.jr.core.model.instance.TreeElement;
+import org.openrosa.client.jr.core.model.instance.TreeReference;
+import org.openrosa.client.jr.model.xform.XPathReference;
+import org.openrosa.client.jr.xpath.XPathParseTool;
+
+
+/**
+ * Checks that paths through a repeat evaluate to the nodeset of its relevant instances,
+ * and times count() and sum() over a big repeat.
+ *
+ * @author daniel
+ *
+ */
+public class XPathPathExprTest extends TestCase {
+
+	/** The number of instances in the repeat which aggregates are timed on. */
+	private static final int REPEAT_SIZE = 2000;
+
+
+	public void testRepeatableSteps() throws Exception {
+		FormInstance instance = createRepeatInstance(3);
+		boolean[] steps = instance.getRepeatableSteps(ref("/data/row/v"));
+		assertEquals(3, steps.length);
+		assertFalse(steps[0]);
+		assertTrue(steps[1]);
+		assertFalse(steps[2]);
+
+		TreeReference boundRef = ref("/data/row/v");
+		boundRef.setMultiplicity(1, 2);
+		assertSame(steps, instance.getRepeatableSteps(boundRef));
+	}
+
+	public void testAggregatesSkipIrrelevantInstances() throws Exception {
+		FormInstance instance = createRepeatInstance(10);
+		assertEquals(new Double(10), eval(instance, "count(/data/row)"));
+		assertEquals(new Double(55), eval(instance, "sum(/data/row/v)"));
+
+		TreeElement data = instance.getRoot();
+		data.getChild("row", 1).setRelevant(false);
+		data.getChild("row", 2).setRelevant(false);
+		data.getChild("row", 9).setRelevant(false);
+		assertEquals(new Double(7), eval(instance, "count(/data/row)"));
+		assertEquals(new Double(40), eval(instance, "sum(/data/row/v)"));
+	}
+
+	public void testAggregateTimings() throws Exception {
+		FormInstance instance = createRepeatInstance(REPEAT_SIZE);
+		XPathExpression count = XPathParseTool.parseXPath("count(/data/row)");
+		XPathExpression sum = XPathParseTool.parseXPath("sum(/data/row/v)");
+
+		long start = System.currentTimeMillis();
+		for (int round = 0; round < 50; round++) {
+			assertEquals(new Double(REPEAT_SIZE), count.eval(instance, newContext()));
+			sum.eval(instance, newContext());
+		}
+		System.out.println("50 rounds of count() and sum() over " + REPEAT_SIZE + " repeat instances: " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Creates an instance with a repeat of rows whose v values run from 1 to size.
+	 */
+	private static FormInstance createRepeatInstance(int size) {
+		TreeElement root = new TreeElement("data");
+		root.addChild(newRow(TreeReference.INDEX_TEMPLATE, null));
+		for (int mult = 0; mult < size; mult++)
+			root.addChild(newRow(mult, new IntegerData(mult + 1)));
+		return new FormInstance(root);
+	}
+
+	private static TreeElement newRow(int mult, IntegerData value) {
+		TreeElement row = new TreeElement("row", mult);
+		row.repeatable = true;
+
+		TreeElement v = new TreeElement("v");
+		v.dataType = Constants.DATATYPE_INTEGER;
+		if (value != null)
+			v.setValue(value);
+		row.addChild(v);
+		return row;
+	}
+
+	private static Object eval(FormInstance instance, String xpath) throws Exception {
+		return XPathParseTool.parseXPath(xpath).eval(instance, newContext());
+	}
+
+	private static EvaluationContext newContext() {
+		return new EvaluationContext(new EvaluationContext(), TreeReference.rootRef());
+	}
+
+	private static TreeReference ref(String path) {
+		return (TreeReference) new XPathReference(path).getReference();
+	}
+}
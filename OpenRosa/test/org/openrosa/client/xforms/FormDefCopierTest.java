@@ -0,0 +1,253 @@
+package org.openrosa.client.xforms;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.openrosa.client.model.Condition;
+import org.openrosa.client.model.FormDef;
+import org.openrosa.client.model.IFormElement;
+import org.openrosa.client.model.QuestionDef;
+import org.openrosa.client.model.SkipRule;
+import org.openrosa.client.model.ValidationRule;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.xml.client.Element;
+import com.google.gwt.xml.client.NamedNodeMap;
+import com.google.gwt.xml.client.Node;
+
+
+/**
+ * Checks that copying a form without going through its xml gives the same form
+ * as serializing and parsing it again, which is how forms used to be copied.
+ *
+ * @author daniel
+ *
+ */
+public class FormDefCopierTest extends GWTTestCase {
+
+	/** A form whose xforms elements have no prefix, as made by most other tools. */
+	private static final String DEFAULT_NAMESPACE_XFORM =
+		"<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\" " +
+		"xmlns:jr=\"http://openrosa.org/javarosa\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">" +
+		"<h:head><h:title>Visit</h:title><model>" +
+		"<itext><translation lang=\"en\" default=\"\">" +
+		"<text id=\"name\"><value>Name</value></text>" +
+		"<text id=\"sex\"><value>Sex</value></text>" +
+		"<text id=\"male\"><value>Male</value></text>" +
+		"<text id=\"female\"><value>Female</value></text>" +
+		"</translation></itext>" +
+		"<instance><visit id=\"visit\">" +
+		"<name>John</name><age/><sex/><pregnant/><symptoms/><total/>" +
+		"<child><child_name/><child_age/></child>" +
+		"</visit></instance>" +
+		"<bind nodeset=\"/visit/name\" type=\"xsd:string\" required=\"true()\"/>" +
+		"<bind nodeset=\"/visit/age\" type=\"xsd:int\" constraint=\". &gt;= 0 and . &lt; 120\" jr:constraintMsg=\"Invalid age\"/>" +
+		"<bind nodeset=\"/visit/sex\" type=\"xsd:string\"/>" +
+		"<bind nodeset=\"/visit/pregnant\" type=\"xsd:boolean\" relevant=\"/visit/sex = 'female'\"/>" +
+		"<bind nodeset=\"/visit/symptoms\" type=\"xsd:string\"/>" +
+		"<bind nodeset=\"/visit/total\" type=\"xsd:int\" calculate=\"/visit/age * 12\"/>" +
+		"<bind nodeset=\"/visit/child/child_name\" type=\"xsd:string\"/>" +
+		"<bind nodeset=\"/visit/child/child_age\" type=\"xsd:int\"/>" +
+		"</model></h:head>" +
+		"<h:body>" +
+		"<input ref=\"/visit/name\"><label ref=\"jr:itext('name')\"/><hint>Full name</hint></input>" +
+		"<group><label>Details</label>" +
+		"<input ref=\"/visit/age\"><label>Age</label></input>" +
+		"<select1 ref=\"/visit/sex\"><label ref=\"jr:itext('sex')\"/>" +
+		"<item><label ref=\"jr:itext('male')\"/><value>male</value></item>" +
+		"<item><label ref=\"jr:itext('female')\"/><value>female</value></item>" +
+		"</select1>" +
+		"<select1 ref=\"/visit/pregnant\"><label>Pregnant</label>" +
+		"<item><label>Yes</label><value>true</value></item>" +
+		"<item><label>No</label><value>false</value></item>" +
+		"</select1>" +
+		"</group>" +
+		"<select ref=\"/visit/symptoms\"><label>Symptoms</label>" +
+		"<item><label>Cough</label><value>cough</value></item>" +
+		"<item><label>Fever</label><value>fever</value></item>" +
+		"</select>" +
+		"<group><label>Children</label><repeat nodeset=\"/visit/child\">" +
+		"<input ref=\"/visit/child/child_name\"><label>Child name</label></input>" +
+		"<input ref=\"/visit/child/child_age\"><label>Child age</label></input>" +
+		"</repeat></group>" +
+		"</h:body></h:html>";
+
+	/** A form which uses the xf prefix of the form designer throughout. */
+	private static final String XF_PREFIX_XFORM =
+		"<xf:xforms xmlns:xf=\"http://www.w3.org/2002/xforms\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">" +
+		"<xf:model>" +
+		"<xf:instance><patient id=\"patient\" name=\"Patient\">" +
+		"<weight/><height/><smoker/>" +
+		"</patient></xf:instance>" +
+		"<xf:bind id=\"weight\" nodeset=\"/patient/weight\" type=\"xsd:decimal\" constraint=\". &gt; 0\"/>" +
+		"<xf:bind id=\"height\" nodeset=\"/patient/height\" type=\"xsd:decimal\" readonly=\"true()\"/>" +
+		"<xf:bind id=\"smoker\" nodeset=\"/patient/smoker\" type=\"xsd:string\" relevant=\"/patient/weight &gt; 10\"/>" +
+		"</xf:model>" +
+		"<xf:group id=\"1\"><xf:label>Page1</xf:label>" +
+		"<xf:input bind=\"weight\"><xf:label>Weight</xf:label></xf:input>" +
+		"<xf:input bind=\"height\"><xf:label>Height</xf:label></xf:input>" +
+		"<xf:select1 bind=\"smoker\"><xf:label>Smoker</xf:label>" +
+		"<xf:item id=\"yes\"><xf:label>Yes</xf:label><xf:value>yes</xf:value></xf:item>" +
+		"<xf:item id=\"no\"><xf:label>No</xf:label><xf:value>no</xf:value></xf:item>" +
+		"</xf:select1>" +
+		"</xf:group>" +
+		"</xf:xforms>";
+
+
+	@Override
+	public String getModuleName(){
+		return "org.openrosa.FormDesigner";
+	}
+
+	public void testCopyWithDefaultNamespace(){
+		FormDef formDef = XformParser.fromXform2FormDef(DEFAULT_NAMESPACE_XFORM);
+
+		//A question added in the designer gets xf prefixed nodes when the copy updates the document.
+		formDef.addChild(new QuestionDef(100, "Weight", QuestionDef.QTN_TYPE_NUMERIC, "weight", formDef));
+
+		FormDef copy = assertCopiesLikeReparse(formDef);
+		assertNoXfPrefix(copy.getDoc().getDocumentElement());
+	}
+
+	public void testCopyWithXfPrefix(){
+		assertCopiesLikeReparse(XformParser.fromXform2FormDef(XF_PREFIX_XFORM));
+	}
+
+	/**
+	 * Copies a form both ways and checks that the results match.
+	 *
+	 * @return the copy which was made without going through the xml.
+	 */
+	private FormDef assertCopiesLikeReparse(FormDef formDef){
+		FormDef copy = XformParser.copyFormDef(formDef);
+		FormDef reparsed = XformParser.fromXform2FormDef(XformUtil.normalizeNameSpace(formDef.getDoc(), XmlUtil.fromDoc2String(formDef.getDoc())));
+
+		assertEquals(XmlUtil.fromDoc2String(reparsed.getDoc()), XmlUtil.fromDoc2String(copy.getDoc()));
+		assertNotSame(formDef.getDoc(), copy.getDoc());
+
+		assertEquals(reparsed.getQuestionID(), copy.getQuestionID());
+		assertEquals(reparsed.getName(), copy.getName());
+		assertNodeInCopy(copy, copy.getModelNode());
+		assertNodeInCopy(copy, copy.getBodyNode());
+		assertNodeInCopy(copy, copy.getDataNode());
+
+		assertElementsEqual(copy, reparsed.getChildren(), copy.getChildren());
+
+		assertEquals(size(reparsed.getSkipRules()), size(copy.getSkipRules()));
+		for(int index = 0; index < size(reparsed.getSkipRules()); index++){
+			SkipRule expected = (SkipRule)reparsed.getSkipRules().get(index);
+			SkipRule actual = (SkipRule)copy.getSkipRules().get(index);
+			assertEquals(expected.getAction(), actual.getAction());
+			assertEquals(expected.getConditionsOperator(), actual.getConditionsOperator());
+			assertEquals(getQuestionIDs(reparsed, expected.getActionTargets()), getQuestionIDs(copy, actual.getActionTargets()));
+			assertConditionsEqual(reparsed, copy, expected.getConditions(), actual.getConditions());
+		}
+
+		assertEquals(size(reparsed.getValidationRules()), size(copy.getValidationRules()));
+		for(int index = 0; index < size(reparsed.getValidationRules()); index++){
+			ValidationRule expected = (ValidationRule)reparsed.getValidationRules().get(index);
+			ValidationRule actual = (ValidationRule)copy.getValidationRules().get(index);
+			assertEquals(reparsed.getQuestion(expected.getQuestionId()).getQuestionID(), copy.getQuestion(actual.getQuestionId()).getQuestionID());
+			assertEquals(expected.getErrorMessage(), actual.getErrorMessage());
+			assertEquals(expected.getConditionsOperator(), actual.getConditionsOperator());
+			assertConditionsEqual(reparsed, copy, expected.getConditions(), actual.getConditions());
+		}
+
+		assertEquals(size(reparsed.getCalculations()), size(copy.getCalculations()));
+
+		return copy;
+	}
+
+	/**
+	 * Checks that no element or attribute of the copy still has the designer's own xf prefix.
+	 */
+	private void assertNoXfPrefix(Element element){
+		assertFalse(element.getNodeName(), element.getNodeName().startsWith("xf:"));
+
+		NamedNodeMap attributes = element.getAttributes();
+		for(int index = 0; index < attributes.getLength(); index++)
+			assertFalse(attributes.item(index).getNodeName(), attributes.item(index).getNodeName().startsWith("xf:"));
+
+		for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling()){
+			if(child.getNodeType() == Node.ELEMENT_NODE)
+				assertNoXfPrefix((Element)child);
+		}
+	}
+
+	private void assertElementsEqual(FormDef copy, List<IFormElement> expected, List<IFormElement> actual){
+		if(expected == null){
+			assertNull(actual);
+			return;
+		}
+
+		assertEquals(expected.size(), actual.size());
+		for(int index = 0; index < expected.size(); index++){
+			IFormElement expectedElement = expected.get(index);
+			IFormElement actualElement = actual.get(index);
+
+			assertEquals(expectedElement.getClass(), actualElement.getClass());
+			assertEquals(expectedElement.getQuestionID(), actualElement.getQuestionID());
+			assertEquals(expectedElement.getText(), actualElement.getText());
+			assertEquals(expectedElement.getHelpText(), actualElement.getHelpText());
+			assertEquals(expectedElement.getItextId(), actualElement.getItextId());
+			assertEquals(expectedElement.getDataType(), actualElement.getDataType());
+
+			if(expectedElement instanceof QuestionDef){
+				QuestionDef expectedQtn = (QuestionDef)expectedElement;
+				QuestionDef actualQtn = (QuestionDef)actualElement;
+				assertEquals(expectedQtn.isRequired(), actualQtn.isRequired());
+				assertEquals(expectedQtn.isEnabled(), actualQtn.isEnabled());
+				assertEquals(expectedQtn.isLocked(), actualQtn.isLocked());
+				assertEquals(expectedQtn.getDefaultValue(), actualQtn.getDefaultValue());
+			}
+
+			assertNodeInCopy(copy, actualElement.getControlNode());
+			assertNodeInCopy(copy, actualElement.getBindNode());
+			assertNodeInCopy(copy, actualElement.getDataNode());
+			assertNodeInCopy(copy, actualElement.getLabelNode());
+
+			assertElementsEqual(copy, expectedElement.getChildren(), actualElement.getChildren());
+		}
+	}
+
+	private void assertConditionsEqual(FormDef expectedForm, FormDef actualForm, Vector expected, Vector actual){
+		assertEquals(expected.size(), actual.size());
+		for(int index = 0; index < expected.size(); index++){
+			Condition expectedCondition = (Condition)expected.get(index);
+			Condition actualCondition = (Condition)actual.get(index);
+			assertEquals(expectedForm.getQuestion(expectedCondition.getQuestionId()).getQuestionID(),
+					actualForm.getQuestion(actualCondition.getQuestionId()).getQuestionID());
+			assertEquals(expectedCondition.getOperator(), actualCondition.getOperator());
+			assertEquals(expectedCondition.getFunction(), actualCondition.getFunction());
+			assertEquals(expectedCondition.getValue(), actualCondition.getValue());
+			assertEquals(expectedCondition.getSecondValue(), actualCondition.getSecondValue());
+		}
+	}
+
+	/**
+	 * Gets the binding names of questions, since ids are given out afresh when parsing.
+	 */
+	private Vector<String> getQuestionIDs(FormDef formDef, Vector ids){
+		Vector<String> questionIDs = new Vector<String>();
+		for(int index = 0; index < ids.size(); index++)
+			questionIDs.add(formDef.getQuestion(((Integer)ids.get(index)).intValue()).getQuestionID());
+		return questionIDs;
+	}
+
+	private int size(Vector vector){
+		return vector == null ? 0 : vector.size();
+	}
+
+	/**
+	 * Checks that a node the copy points to is part of its own document.
+	 */
+	private void assertNodeInCopy(FormDef copy, Element node){
+		if(node == null)
+			return;
+
+		Element root = node;
+		while(root.getParentNode() instanceof Element)
+			root = (Element)root.getParentNode();
+		assertEquals(copy.getDoc().getDocumentElement(), root);
+	}
+}